@@ -0,0 +1,113 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.BaseEncoding;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes and reads a byte array with the streaming ByteArrayToBase64TypeAdapter, and with the JsonSerializer and
+ * JsonDeserializer pair it replaced (which went through a JsonPrimitive tree and Guava's BaseEncoding). Output is
+ * written to a Writer that discards it, so the allocation reported by {@code -prof gc} is the adapter's own; divide
+ * gc.alloc.rate.norm by the size in MB for the allocation per MB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteArrayToBase64Benchmark {
+
+    @Param({ "1024", "1048576" })
+    public int size;
+
+    private Gson streamingGson;
+    private Gson treeGson;
+    private byte[] bytes;
+    private String json;
+
+    @Setup
+    public void setup() {
+        streamingGson = new GsonBuilder().registerTypeAdapter(byte[].class, new ByteArrayToBase64TypeAdapter())
+                .create();
+        treeGson = new GsonBuilder().registerTypeAdapter(byte[].class, new TreeAdapter()).create();
+        bytes = new byte[size];
+        new Random(3).nextBytes(bytes);
+        json = streamingGson.toJson(bytes);
+    }
+
+    @Benchmark
+    public void writeStreaming() {
+        streamingGson.toJson(bytes, byte[].class, DiscardingWriter.INSTANCE);
+    }
+
+    @Benchmark
+    public void writeTree() {
+        treeGson.toJson(bytes, byte[].class, DiscardingWriter.INSTANCE);
+    }
+
+    @Benchmark
+    public byte[] readStreaming() {
+        return streamingGson.fromJson(json, byte[].class);
+    }
+
+    @Benchmark
+    public byte[] readTree() {
+        return treeGson.fromJson(json, byte[].class);
+    }
+
+    /** ByteArrayToBase64TypeAdapter as it was before it was a streaming TypeAdapter. */
+    private static final class TreeAdapter implements JsonSerializer<byte[]>, JsonDeserializer<byte[]> {
+        @Override
+        public byte[] deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
+            return BaseEncoding.base64().decode(json.getAsString());
+        }
+
+        @Override
+        public JsonElement serialize(byte[] src, Type typeOfSrc, JsonSerializationContext context) {
+            return new JsonPrimitive(BaseEncoding.base64().encode(src));
+        }
+    }
+
+    private static final class DiscardingWriter extends Writer {
+        static final DiscardingWriter INSTANCE = new DiscardingWriter();
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void write(String str, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
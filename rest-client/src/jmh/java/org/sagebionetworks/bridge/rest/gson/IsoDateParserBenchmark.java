@@ -0,0 +1,91 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses timestamps and dates in the shapes Bridge emits with IsoDateParser, and with the Joda parsers that
+ * DateTimeTypeAdapter and LocalDateTypeAdapter used before (and still fall back to). Each invocation parses
+ * {@value #COUNT} different values; times are per value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsoDateParserBenchmark {
+    private static final int COUNT = 1024;
+    private static final DateTimeFormatter FORMATTER = ISODateTimeFormat.dateTime().withOffsetParsed();
+
+    /** UTC timestamps end in Z; the others carry one of a few offsets, as activity events from devices do. */
+    @Param({ "true", "false" })
+    public boolean utc;
+
+    private final String[] dateTimes = new String[COUNT];
+    private final String[] dates = new String[COUNT];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(13);
+        int[] offsetHours = { -8, -7, -5, 1, 2, 9 };
+        for (int i = 0; i < COUNT; i++) {
+            DateTimeZone zone = utc ? DateTimeZone.UTC
+                    : DateTimeZone.forOffsetHours(offsetHours[random.nextInt(offsetHours.length)]);
+            DateTime dateTime = new DateTime(1600000000000L + random.nextInt() * 1000L + random.nextInt(1000), zone);
+            dateTimes[i] = FORMATTER.print(dateTime);
+            dates[i] = dateTime.toLocalDate().toString();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void parseDateTime(Blackhole blackhole) {
+        for (String value : dateTimes) {
+            blackhole.consume(IsoDateParser.parseDateTime(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void parseDateTimeWithJoda(Blackhole blackhole) {
+        for (String value : dateTimes) {
+            blackhole.consume(FORMATTER.parseDateTime(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void parseLocalDate(Blackhole blackhole) {
+        for (String value : dates) {
+            blackhole.consume(IsoDateParser.parseLocalDate(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void parseLocalDateWithJoda(Blackhole blackhole) {
+        for (String value : dates) {
+            blackhole.consume(LocalDate.parse(value));
+        }
+    }
+}
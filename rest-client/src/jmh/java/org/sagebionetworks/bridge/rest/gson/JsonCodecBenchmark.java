@@ -0,0 +1,77 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.sagebionetworks.bridge.rest.GsonJsonCodec;
+import org.sagebionetworks.bridge.rest.JacksonJsonCodec;
+import org.sagebionetworks.bridge.rest.JsonCodec;
+import org.sagebionetworks.bridge.rest.RestUtils;
+import org.sagebionetworks.bridge.rest.model.Survey;
+import org.sagebionetworks.bridge.rest.model.Timeline;
+
+/**
+ * Reads and writes two large Bridge payloads with the default GsonJsonCodec and with JacksonJsonCodec: a survey of
+ * 500 polymorphic elements, and a timeline of 2000 scheduled sessions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    @Param({ "gson", "jackson" })
+    public String codecName;
+
+    @Param({ "survey", "timeline" })
+    public String payload;
+
+    private JsonCodec codec;
+    private Type type;
+    private Object value;
+    private byte[] json;
+
+    @Setup
+    public void setup() {
+        codec = "gson".equals(codecName) ? GsonJsonCodec.getDefault() : new JacksonJsonCodec();
+        if ("survey".equals(payload)) {
+            type = Survey.class;
+            json = RestUtils.GSON.toJson(RuntimeTypeAdapterFactoryTest.makeSurvey(500)).getBytes(Charsets.UTF_8);
+        } else {
+            type = Timeline.class;
+            json = LazyFieldsBenchmark.makeTimeline(2000).toString().getBytes(Charsets.UTF_8);
+        }
+        value = RestUtils.GSON.fromJson(new String(json, Charsets.UTF_8), type);
+    }
+
+    @Benchmark
+    public Object read() throws IOException {
+        return codec.fromJson(new Buffer().write(json), type);
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        Buffer buffer = new Buffer();
+        codec.toJson(buffer, value, type);
+        long size = buffer.size();
+        buffer.clear();
+        return size;
+    }
+}
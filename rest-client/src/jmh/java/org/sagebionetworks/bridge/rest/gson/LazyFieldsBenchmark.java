@@ -0,0 +1,135 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.sagebionetworks.bridge.rest.RestUtils;
+import org.sagebionetworks.bridge.rest.model.Timeline;
+
+/**
+ * Reads a timeline with all of its fields decoded as the response is received, and lazily: without using any of its
+ * lazily decoded collections, and using all four of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyFieldsBenchmark {
+
+    /** The number of scheduled sessions; the other collections are a tenth of this size. */
+    @Param({ "100", "2000" })
+    public int size;
+
+    private TypeAdapter<Timeline> adapter;
+    private byte[] json;
+
+    @Setup
+    public void setup() {
+        adapter = RestUtils.GSON.getAdapter(Timeline.class);
+        json = makeTimeline(size).toString().getBytes(Charsets.UTF_8);
+    }
+
+    @Benchmark
+    public Timeline readEagerly() throws IOException {
+        return adapter.fromJson(new InputStreamReader(new ByteArrayInputStream(json), Charsets.UTF_8));
+    }
+
+    @Benchmark
+    public Timeline readLazily() throws IOException {
+        return lazyReader().readLazily(json);
+    }
+
+    @Benchmark
+    public void readLazilyAndUseAllFields(Blackhole blackhole) throws IOException {
+        Timeline timeline = lazyReader().readLazily(json);
+        blackhole.consume(timeline.getSchedule());
+        blackhole.consume(timeline.getAssessments());
+        blackhole.consume(timeline.getSessions());
+        blackhole.consume(timeline.getStudyBursts());
+    }
+
+    @SuppressWarnings("unchecked")
+    private LazyFields.LazyReader<Timeline> lazyReader() {
+        return (LazyFields.LazyReader<Timeline>) adapter;
+    }
+
+    /** A timeline with this many scheduled sessions, and a tenth as many assessments, sessions and study bursts. */
+    static JsonObject makeTimeline(int size) {
+        JsonArray schedule = new JsonArray();
+        for (int i = 0; i < size; i++) {
+            JsonObject session = new JsonObject();
+            session.addProperty("refGuid", "session" + (i % 10));
+            session.addProperty("instanceGuid", "instance" + i);
+            session.addProperty("startEventId", "enrollment");
+            session.addProperty("startDay", i);
+            session.addProperty("endDay", i + 1);
+            session.addProperty("startTime", "08:00");
+            session.addProperty("expiration", "PT12H");
+            session.addProperty("persistent", false);
+            session.addProperty("timeWindowGuid", "window" + (i % 10));
+            session.addProperty("type", "ScheduledSession");
+            schedule.add(session);
+        }
+        JsonArray assessments = new JsonArray();
+        JsonArray sessions = new JsonArray();
+        JsonArray studyBursts = new JsonArray();
+        for (int i = 0; i < size / 10; i++) {
+            JsonObject assessment = new JsonObject();
+            assessment.addProperty("key", "assessment" + i);
+            assessment.addProperty("guid", "assessmentGuid" + i);
+            assessment.addProperty("appId", "api");
+            assessment.addProperty("identifier", "assessment" + i);
+            assessment.addProperty("revision", 1);
+            assessment.addProperty("label", "Assessment " + i);
+            assessment.addProperty("minutesToComplete", 5);
+            assessment.addProperty("type", "AssessmentInfo");
+            assessments.add(assessment);
+
+            JsonObject session = new JsonObject();
+            session.addProperty("guid", "session" + i);
+            session.addProperty("label", "Session " + i);
+            session.addProperty("minutesToComplete", 10);
+            session.addProperty("type", "SessionInfo");
+            sessions.add(session);
+
+            JsonObject studyBurst = new JsonObject();
+            studyBurst.addProperty("identifier", "burst" + i);
+            studyBurst.addProperty("originEventId", "enrollment");
+            studyBurst.addProperty("interval", "P1W");
+            studyBurst.addProperty("occurrences", 4);
+            studyBurst.addProperty("type", "StudyBurstInfo");
+            studyBursts.add(studyBurst);
+        }
+        JsonObject timeline = new JsonObject();
+        timeline.addProperty("duration", "P26W");
+        timeline.add("schedule", schedule);
+        timeline.add("assessments", assessments);
+        timeline.add("sessions", sessions);
+        timeline.add("studyBursts", studyBursts);
+        timeline.addProperty("totalMinutes", size * 10);
+        timeline.addProperty("totalNotifications", size);
+        timeline.addProperty("type", "Timeline");
+        return timeline;
+    }
+}
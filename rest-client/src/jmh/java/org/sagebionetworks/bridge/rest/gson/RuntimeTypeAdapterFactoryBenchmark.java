@@ -0,0 +1,185 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.Streams;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.sagebionetworks.bridge.rest.RestUtils;
+import org.sagebionetworks.bridge.rest.model.Constraints;
+import org.sagebionetworks.bridge.rest.model.StringConstraints;
+import org.sagebionetworks.bridge.rest.model.Survey;
+import org.sagebionetworks.bridge.rest.model.SurveyElement;
+import org.sagebionetworks.bridge.rest.model.SurveyInfoScreen;
+import org.sagebionetworks.bridge.rest.model.SurveyQuestion;
+
+/**
+ * Reads and writes a survey of 500 elements with the streaming RuntimeTypeAdapterFactory, and with the tree-based
+ * implementation it replaced (which parsed each polymorphic object into a JsonElement, and built a tree to write it).
+ * Both use the generated model adapters for everything else. The streaming reader only has to buffer the fields that
+ * come before the type field, so the survey is read both with the type field first and with it last.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuntimeTypeAdapterFactoryBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean typeFirst;
+
+    private Gson treeGson;
+    private Survey survey;
+    private String json;
+
+    @Setup
+    public void setup() {
+        treeGson = new GsonBuilder()
+                .registerTypeAdapterFactory(new GeneratedTypeAdapterFactory(Survey.class.getPackage().getName()))
+                .registerTypeAdapter(byte[].class, new ByteArrayToBase64TypeAdapter())
+                .registerTypeAdapter(LocalDate.class, new LocalDateTypeAdapter())
+                .registerTypeAdapter(DateTime.class, new DateTimeTypeAdapter())
+                .registerTypeAdapterFactory(new TreeTypeAdapterFactory(SurveyElement.class)
+                        .registerSubtype(SurveyQuestion.class).registerSubtype(SurveyInfoScreen.class))
+                .registerTypeAdapterFactory(new TreeTypeAdapterFactory(Constraints.class)
+                        .registerSubtype(StringConstraints.class))
+                .create();
+        survey = RuntimeTypeAdapterFactoryTest.makeSurvey(500);
+        JsonElement element = RestUtils.GSON.toJsonTree(survey);
+        json = RestUtils.GSON.toJson(typeFirst ? moveTypeFirst(element) : moveTypeLast(element));
+    }
+
+    @Benchmark
+    public Survey readStreaming() {
+        return RestUtils.GSON.fromJson(json, Survey.class);
+    }
+
+    @Benchmark
+    public Survey readTree() {
+        return treeGson.fromJson(json, Survey.class);
+    }
+
+    @Benchmark
+    public String writeStreaming() {
+        return RestUtils.GSON.toJson(survey);
+    }
+
+    @Benchmark
+    public String writeTree() {
+        return treeGson.toJson(survey);
+    }
+
+    private static JsonElement moveTypeFirst(JsonElement element) {
+        return moveType(element, true);
+    }
+
+    private static JsonElement moveTypeLast(JsonElement element) {
+        return moveType(element, false);
+    }
+
+    private static JsonElement moveType(JsonElement element, boolean first) {
+        if (element.isJsonArray()) {
+            JsonArray array = new JsonArray();
+            for (JsonElement child : element.getAsJsonArray()) {
+                array.add(moveType(child, first));
+            }
+            return array;
+        }
+        if (!element.isJsonObject()) {
+            return element;
+        }
+        JsonObject object = new JsonObject();
+        JsonElement type = element.getAsJsonObject().get("type");
+        if (first && type != null) {
+            object.add("type", type);
+        }
+        for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+            if (!"type".equals(entry.getKey())) {
+                object.add(entry.getKey(), moveType(entry.getValue(), first));
+            }
+        }
+        if (!first && type != null) {
+            object.add("type", type);
+        }
+        return object;
+    }
+
+    /** The tree-based polymorphic adapter, as RuntimeTypeAdapterFactory was before it read and wrote streams. */
+    private static final class TreeTypeAdapterFactory implements TypeAdapterFactory {
+        private final Class<?> baseType;
+        private final Map<String, Class<?>> labelToSubtype = new LinkedHashMap<>();
+
+        TreeTypeAdapterFactory(Class<?> baseType) {
+            this.baseType = baseType;
+        }
+
+        TreeTypeAdapterFactory registerSubtype(Class<?> subtype) {
+            labelToSubtype.put(subtype.getSimpleName(), subtype);
+            return this;
+        }
+
+        @Override
+        public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> type) {
+            if (type.getRawType() != baseType) {
+                return null;
+            }
+            final Map<String, TypeAdapter<?>> labelToDelegate = new LinkedHashMap<>();
+            final Map<Class<?>, TypeAdapter<?>> subtypeToDelegate = new LinkedHashMap<>();
+            for (Map.Entry<String, Class<?>> entry : labelToSubtype.entrySet()) {
+                TypeAdapter<?> delegate = gson.getDelegateAdapter(this, TypeToken.get(entry.getValue()));
+                labelToDelegate.put(entry.getKey(), delegate);
+                subtypeToDelegate.put(entry.getValue(), delegate);
+            }
+            return new TypeAdapter<R>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public R read(JsonReader in) throws IOException {
+                    JsonElement element = Streams.parse(in);
+                    String label = element.getAsJsonObject().get("type").getAsString();
+                    return ((TypeAdapter<R>) labelToDelegate.get(label)).fromJsonTree(element);
+                }
+
+                @SuppressWarnings("unchecked")
+                @Override
+                public void write(JsonWriter out, R value) throws IOException {
+                    TypeAdapter<R> delegate = (TypeAdapter<R>) subtypeToDelegate.get(value.getClass());
+                    JsonObject jsonObject = delegate.toJsonTree(value).getAsJsonObject();
+                    JsonObject clone = new JsonObject();
+                    for (Map.Entry<String, JsonElement> e : jsonObject.entrySet()) {
+                        clone.add(e.getKey(), e.getValue());
+                    }
+                    clone.add("type", new JsonPrimitive(value.getClass().getSimpleName()));
+                    Streams.write(clone, out);
+                }
+            }.nullSafe();
+        }
+    }
+}
@@ -1,26 +1,34 @@
 package org.sagebionetworks.bridge.rest;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.SocketFactory;
 
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
 import okhttp3.Authenticator;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 import org.sagebionetworks.bridge.rest.api.AuthenticationApi;
 import org.sagebionetworks.bridge.rest.model.ClientInfo;
@@ -33,19 +41,28 @@ import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
  */
 public class ApiClientProvider {
     private static final Interceptor WARNING_INTERCEPTOR = new WarningHeaderInterceptor();
-    private static final Interceptor ERROR_INTERCEPTOR = new ErrorResponseInterceptor();
     private static final Interceptor LOGGING_INTERCEPTOR = new LoggingInterceptor();
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
 
     private final String baseUrl;
     private final String userAgent;
     private final String acceptLanguage;
     private final String appId;
+    private final ConnectionMetrics connectionMetrics;
+    private final OkHttpClient rootHttpClient;
+    private final S3Uploader s3Uploader;
     private final Retrofit unauthenticatedRetrofit;
     private final LoadingCache<Class<?>, ?> unauthenticatedServices;
     private final AuthenticationApi authenticationApi;
     private final SocketFactory socketFactory;
     private final ImmutableList<Interceptor> networkInterceptors;
     private final ImmutableList<Interceptor> applicationInterceptors;
+    private final JsonCodec jsonCodec;
+    private final Interceptor errorInterceptor;
+    private final StreamingConverterFactory streamingConverterFactory;
+    private final Interceptor loggingInterceptor;
+    private final Interceptor retryInterceptor;
 
     /**
      * Creates a builder for accessing services associated with an environment and app.
@@ -87,27 +104,52 @@ public class ApiClientProvider {
     public ApiClientProvider(String baseUrl, String userAgent, String acceptLanguage, String appId,
             SocketFactory socketFactory, List<Interceptor> networkInterceptors,
             List<Interceptor> applicationInterceptors) {
-        checkState(!Strings.isNullOrEmpty(baseUrl));
-        checkState(!Strings.isNullOrEmpty(appId));
-        checkNotNull(networkInterceptors);
-        checkNotNull(applicationInterceptors);
-
-        this.baseUrl = baseUrl;
-        this.userAgent = userAgent;
-        this.acceptLanguage = acceptLanguage;
-        this.appId = appId;
-        this.socketFactory = socketFactory;
+        this(new Builder().withBaseUrl(baseUrl).withUserAgent(userAgent).withAcceptLanguage(acceptLanguage)
+                .withAppId(appId).withSocketFactory(socketFactory).withNetworkInterceptors(networkInterceptors)
+                .withApplicationInterceptors(applicationInterceptors));
+    }
+
+    /**
+     * Creates a provider with the settings of this builder. Subclasses that override {@link #getHttpClientBuilder()}
+     * pass a builder up from their own constructor.
+     *
+     * @param builder
+     *         the provider's settings
+     */
+    protected ApiClientProvider(Builder builder) {
+        checkState(!Strings.isNullOrEmpty(builder.baseUrl));
+        checkState(!Strings.isNullOrEmpty(builder.appId));
+
+        TransportSettings transportSettings = builder.transportSettings;
+        this.baseUrl = builder.baseUrl;
+        this.userAgent = builder.userAgent;
+        this.acceptLanguage = builder.acceptLanguage;
+        this.appId = builder.appId;
+        this.socketFactory = builder.socketFactory;
+        this.jsonCodec = (builder.jsonCodec != null) ? builder.jsonCodec : GsonJsonCodec.getDefault();
+        this.errorInterceptor = new ErrorResponseInterceptor(this.jsonCodec,
+                transportSettings != null && transportSettings.isStacklessRetryableErrors());
+        this.streamingConverterFactory = (builder.encodingSettings != null) ?
+                new StreamingConverterFactory(this.jsonCodec, builder.encodingSettings) : null;
+        this.loggingInterceptor = (builder.loggingSettings != null) ?
+                new LoggingInterceptor(builder.loggingSettings) : LOGGING_INTERCEPTOR;
+        this.retryInterceptor = (transportSettings != null && transportSettings.hasRetrySettings()) ?
+                buildRetryInterceptor(transportSettings) : null;
+        this.connectionMetrics = new ConnectionMetrics();
+        this.rootHttpClient = buildRootHttpClient(transportSettings);
+        this.s3Uploader = new S3Uploader(rootHttpClient,
+                (transportSettings != null) ? transportSettings.getS3TimeoutMillis() : null);
         this.unauthenticatedRetrofit = getRetrofit(
                 getHttpClientBuilder(
-                        networkInterceptors,
-                        applicationInterceptors)
+                        builder.networkInterceptors,
+                        builder.applicationInterceptors)
                         .build());
         this.unauthenticatedServices = CacheBuilder.newBuilder()
                 .build(new RetrofitServiceLoader(unauthenticatedRetrofit));
         authenticationApi = getClient(AuthenticationApi.class);
 
-        this.networkInterceptors = ImmutableList.copyOf(networkInterceptors);
-        this.applicationInterceptors = ImmutableList.copyOf(applicationInterceptors);
+        this.networkInterceptors = ImmutableList.copyOf(builder.networkInterceptors);
+        this.applicationInterceptors = ImmutableList.copyOf(builder.applicationInterceptors);
     }
 
     /**
@@ -139,13 +181,35 @@ public class ApiClientProvider {
     }
 
 
+    /**
+     * Counts of pooled versus newly established connections, across all clients created by this provider.
+     *
+     * @return connection metrics
+     */
+    public ConnectionMetrics getConnectionMetrics() {
+        return connectionMetrics;
+    }
+
+    /**
+     * The codec for the JSON exchanged with the server by all clients created by this provider.
+     *
+     * @return JSON codec
+     */
+    public JsonCodec getJsonCodec() {
+        return jsonCodec;
+    }
+
     /**
      * This provides a OkHttpClient.Builder to be used as a base for Bridge calls. Override to adjust OkHttpClient
      * properties. ApiClientProvider will add Bridge specific configurations.
      * <p>
+     * This method is called once, when the provider is constructed. The resulting client is the root of all clients
+     * created by this provider, which share its connection pool and dispatcher.
+     * <p>
      * Note that you should use the constructor to specify socket factory, interceptors, and network interceptors. Any
      * interceptors and network interceptors added in this method will be overwritten. If an Authenticator is set for
-     * origin servers, it will also be overwritten.
+     * origin servers, or an EventListener is set, it will also be overwritten. If connection pool settings are passed
+     * to the constructor, the connection pool will be overwritten as well.
      *
      * @return base http client builder
      */
@@ -157,39 +221,132 @@ public class ApiClientProvider {
                 .writeTimeout(30, TimeUnit.SECONDS);
     }
 
-    OkHttpClient.Builder getHttpClientBuilder(List<Interceptor> networkInterceptors,
-            List<Interceptor> applicationInterceptors) {
+    private OkHttpClient buildRootHttpClient(TransportSettings transportSettings) {
         OkHttpClient.Builder builder = getHttpClientBuilder();
 
         // reset these because we need to manage them in this class
         builder.networkInterceptors().clear();
         builder.interceptors().clear();
         builder.authenticator(Authenticator.NONE);
+        builder.eventListener(connectionMetrics);
 
         if (socketFactory != null) {
             builder.socketFactory(socketFactory);
         }
+        if (transportSettings != null && transportSettings.hasConnectionPoolSettings()) {
+            int maxIdleConnections = (transportSettings.getMaxIdleConnections() != null) ?
+                    transportSettings.getMaxIdleConnections() : DEFAULT_MAX_IDLE_CONNECTIONS;
+            long keepAliveMillis = (transportSettings.getKeepAliveMillis() != null) ?
+                    transportSettings.getKeepAliveMillis() : DEFAULT_KEEP_ALIVE_MILLIS;
+            builder.connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis, MILLISECONDS));
+        }
+        if (transportSettings != null && transportSettings.hasDispatcherSettings()) {
+            builder.dispatcher(buildDispatcher(transportSettings));
+        }
+        return builder.build();
+    }
+
+    /**
+     * The rate limiter belongs to this provider, and is shared by all the clients it creates (including those of every
+     * ClientManager in a ClientManagerPool for the same app).
+     */
+    private static RetryInterceptor buildRetryInterceptor(TransportSettings transportSettings) {
+        RateLimiter rateLimiter = (transportSettings.getRateLimit() != null) ?
+                RateLimiter.create(transportSettings.getRateLimit()) : null;
+        return new RetryInterceptor(transportSettings.getMaxRetries(), transportSettings.getRetryBackoffMillis(),
+                transportSettings.getMaxRetryDelayMillis(), rateLimiter);
+    }
+
+    private static Dispatcher buildDispatcher(TransportSettings transportSettings) {
+        ExecutorService executor = transportSettings.getDispatcherExecutor();
+        if (executor == null && transportSettings.isVirtualThreads()) {
+            executor = VirtualThreads.newExecutorOrNull();
+        }
+        Dispatcher dispatcher = (executor != null) ? new Dispatcher(executor) : new Dispatcher();
+        if (transportSettings.getMaxRequests() != null) {
+            dispatcher.setMaxRequests(transportSettings.getMaxRequests());
+        }
+        if (transportSettings.getMaxRequestsPerHost() != null) {
+            dispatcher.setMaxRequestsPerHost(transportSettings.getMaxRequestsPerHost());
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Returns the S3Uploader for uploading files to the S3 URLs handed out by Bridge. It shares the connection
+     * pool and dispatcher of the clients created by this provider, so connections to S3 are reused between uploads.
+     *
+     * @return S3 uploader
+     */
+    public S3Uploader getS3Uploader() {
+        return s3Uploader;
+    }
+
+    // Package-scoped for unit tests.
+    OkHttpClient getRootHttpClient() {
+        return rootHttpClient;
+    }
+
+    OkHttpClient.Builder getHttpClientBuilder(List<Interceptor> networkInterceptors,
+            List<Interceptor> applicationInterceptors) {
+        // Derive from the root client so the connection pool, dispatcher and TLS session cache are shared.
+        OkHttpClient.Builder builder = rootHttpClient.newBuilder();
+
         for (Interceptor interceptor : networkInterceptors) {
             builder.addNetworkInterceptor(interceptor);
         }
         for (Interceptor interceptor : applicationInterceptors) {
             builder.addInterceptor(interceptor);
         }
-        return builder
-                .addInterceptor(new HeaderInterceptor(userAgent, acceptLanguage))
+        builder.addInterceptor(new HeaderInterceptor(userAgent, acceptLanguage))
                 .addInterceptor(WARNING_INTERCEPTOR)
-                .addInterceptor(ERROR_INTERCEPTOR)
-                .addInterceptor(LOGGING_INTERCEPTOR);
+                .addInterceptor(errorInterceptor);
+        // Inside the error interceptor, so a 429 or 5xx can be retried before it becomes an exception. Outside the
+        // logging interceptor, so each attempt is logged.
+        if (retryInterceptor != null) {
+            builder.addInterceptor(retryInterceptor);
+        }
+        return builder.addInterceptor(loggingInterceptor);
     }
 
     Retrofit getRetrofit(OkHttpClient client) {
-        return new Retrofit.Builder()
+        return getRetrofit(client, null);
+    }
+
+    Retrofit getRetrofit(OkHttpClient client, UserSessionInfoProvider sessionProvider) {
+        return addConverterFactories(new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client), sessionProvider)
+                .build();
+    }
+
+    Retrofit getAsyncRetrofit(OkHttpClient client) {
+        return getAsyncRetrofit(client, null);
+    }
+
+    Retrofit getAsyncRetrofit(OkHttpClient client, UserSessionInfoProvider sessionProvider) {
+        OkHttpClient.Builder builder = client.newBuilder();
+        // Outermost, so it sees exceptions thrown by every other interceptor.
+        builder.interceptors().add(0, AsyncCallAdapterFactory.INTERCEPTOR);
+        return addConverterFactories(new Retrofit.Builder()
                 .baseUrl(baseUrl)
-                .client(client)
-                .addConverterFactory(GsonConverterFactory.create(RestUtils.GSON))
+                .client(builder.build())
+                .addCallAdapterFactory(new AsyncCallAdapterFactory()), sessionProvider)
                 .build();
     }
 
+    private Retrofit.Builder addConverterFactories(Retrofit.Builder builder, UserSessionInfoProvider sessionProvider) {
+        if (sessionProvider != null) {
+            // Wraps the codec's converter, so the session is taken from the decoded response.
+            builder.addConverterFactory(new SessionCapturingConverterFactory(sessionProvider));
+        }
+        if (streamingConverterFactory != null) {
+            // Ahead of the codec's converters, which would write the selected request bodies to a buffer.
+            builder.addConverterFactory(streamingConverterFactory);
+        }
+        return builder.addConverterFactory(jsonCodec.getConverterFactory());
+    }
+
     /**
      * Loader (basically a factory) for Retrofit service instances.
      */
@@ -222,14 +379,31 @@ public class ApiClientProvider {
     public class AuthenticatedClientProvider {
 
         private final UserSessionInfoProvider userSessionInfoProvider;
+        private final Retrofit authenticatedRetrofit;
         private final LoadingCache<Class<?>, ?> authenticatedServices;
+        private final LoadingCache<Class<?>, ?> asyncServices;
 
         private AuthenticatedClientProvider(final UserSessionInfoProvider userSessionInfoProvider,
                                             final Retrofit authenticatedRetrofit) {
             this.userSessionInfoProvider = userSessionInfoProvider;
+            this.authenticatedRetrofit = authenticatedRetrofit;
 
             this.authenticatedServices = CacheBuilder.newBuilder()
                     .build(new RetrofitServiceLoader(authenticatedRetrofit));
+            // Most clients never make async calls, so don't build the async Retrofit instance until it's needed.
+            final Supplier<Retrofit> asyncRetrofit = Suppliers.memoize(new Supplier<Retrofit>() {
+                @Override
+                public Retrofit get() {
+                    return getAsyncRetrofit(getHttpClient(), userSessionInfoProvider);
+                }
+            });
+            this.asyncServices = CacheBuilder.newBuilder().build(new CacheLoader<Class<?>, Object>() {
+                @SuppressWarnings("NullableProblems")
+                @Override
+                public Object load(Class<?> serviceClass) {
+                    return asyncRetrofit.get().create(serviceClass);
+                }
+            });
         }
 
         // To build the ClientManager on this class, we need to have access to the session that is persisted
@@ -253,6 +427,31 @@ public class ApiClientProvider {
             return (T) authenticatedServices.getUnchecked(service);
         }
 
+        /**
+         * Returns a client whose calls can be enqueued, or passed to {@link AsyncCalls#toFuture(retrofit2.Call)},
+         * without blocking the calling thread. Errors are reported to callbacks and futures as the same
+         * BridgeSDKException subclasses that the synchronous client throws. The async client shares the connection
+         * pool and authentication of this provider.
+         *
+         * @param <T>
+         *         One of the Api classes in the org.sagebionetworks.bridge.rest.api package, or a service interface
+         *         whose methods return ListenableFuture.
+         * @param service
+         *         Class representing the service
+         * @return async service client that is authenticated with the user's credentials
+         */
+        public <T> T getAsyncClient(Class<T> service) {
+            checkNotNull(service);
+
+            //noinspection unchecked
+            return (T) asyncServices.getUnchecked(service);
+        }
+
+        // Package-scoped for unit tests.
+        OkHttpClient getHttpClient() {
+            return (OkHttpClient) authenticatedRetrofit.callFactory();
+        }
+
         /** This will be sent as the User-Agent header for all requests. May be null. */
         public String getUserAgent() {
             return userAgent;
@@ -269,6 +468,9 @@ public class ApiClientProvider {
         private String password;
         private UserSessionInfo session;
         private final List<UserSessionInfoProvider.UserSessionInfoChangeListener> changeListeners = new ArrayList<>();
+        private ScheduledExecutorService sessionRefreshExecutor;
+        private long sessionRefreshAfterMillis;
+        private long sessionMaxIdleMillis;
 
         private AuthenticatedClientProviderBuilder() {
         }
@@ -328,6 +530,40 @@ public class ApiClientProvider {
             return this;
         }
 
+        /**
+         * Refresh sessions in the background before they expire on the server, rather than waiting for a 401
+         * response to reauthenticate. Unlike credentials, this setting is kept for every provider built by this
+         * builder.
+         *
+         * @param refreshAfter
+         *         age after which a session is refreshed
+         * @param maxIdle
+         *         if greater than zero, sessions that have not been used for this long are not refreshed
+         * @param unit
+         *         unit of refreshAfter and maxIdle
+         * @return this builder, for chaining operations
+         * @see UserSessionInfoProvider#startSessionRefresh(ScheduledExecutorService, long, long, TimeUnit)
+         */
+        public AuthenticatedClientProviderBuilder withSessionRefresh(long refreshAfter, long maxIdle, TimeUnit unit) {
+            checkArgument(refreshAfter > 0, "refreshAfter must be positive");
+            checkArgument(maxIdle >= 0, "maxIdle cannot be negative");
+            this.sessionRefreshAfterMillis = unit.toMillis(refreshAfter);
+            this.sessionMaxIdleMillis = unit.toMillis(maxIdle);
+            return this;
+        }
+
+        /**
+         * @param sessionRefreshExecutor
+         *         executor for background session refresh. If not set, a single daemon thread shared by all providers
+         *         is used.
+         * @return this builder, for chaining operations
+         */
+        public AuthenticatedClientProviderBuilder withSessionRefreshExecutor(
+                ScheduledExecutorService sessionRefreshExecutor) {
+            this.sessionRefreshExecutor = sessionRefreshExecutor;
+            return this;
+        }
+
         /**
          * Builds an AuthenticatedClientProvider. The credentials and/or session are cleared out when build() is called, and can
          * be
@@ -342,6 +578,12 @@ public class ApiClientProvider {
             UserSessionInfoProvider sessionProvider =
                     new UserSessionInfoProvider(authenticationApi, appId, email, phone, externalId, password, session,
                             changeListeners);
+            if (sessionRefreshAfterMillis > 0) {
+                ScheduledExecutorService executor = (sessionRefreshExecutor != null) ?
+                        sessionRefreshExecutor : SessionRefreshTask.getDefaultExecutor();
+                sessionProvider.startSessionRefresh(executor, sessionRefreshAfterMillis, sessionMaxIdleMillis,
+                        MILLISECONDS);
+            }
             // reset credentials so same builder can be reused
             email = null;
             phone = null;
@@ -363,9 +605,143 @@ public class ApiClientProvider {
                     applicationInterceptorsWithAuth);
             httpClientBuilder.authenticator(authenticationHandler);
 
-            Retrofit authenticatedRetrofit = getRetrofit(httpClientBuilder.build());
+            Retrofit authenticatedRetrofit = getRetrofit(httpClientBuilder.build(), sessionProvider);
 
             return new AuthenticatedClientProvider(sessionProvider, authenticatedRetrofit);
         }
     }
+
+    /**
+     * Builder for an ApiClientProvider. The base URL and app ID are required; everything else is optional.
+     */
+    public static final class Builder {
+        private String baseUrl;
+        private String userAgent;
+        private String acceptLanguage;
+        private String appId;
+        private SocketFactory socketFactory;
+        private List<Interceptor> networkInterceptors = Collections.emptyList();
+        private List<Interceptor> applicationInterceptors = Collections.emptyList();
+        private TransportSettings transportSettings;
+        private JsonCodec jsonCodec;
+        private EncodingSettings encodingSettings;
+        private LoggingSettings loggingSettings;
+
+        /**
+         * @param baseUrl
+         *      base url for Bridge service
+         * @return builder
+         */
+        public Builder withBaseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        /**
+         * @param userAgent
+         *      user-agent string in Bridge's expected format, see {@link RestUtils#getUserAgent(ClientInfo)}
+         * @return builder
+         */
+        public Builder withUserAgent(String userAgent) {
+            this.userAgent = userAgent;
+            return this;
+        }
+
+        /**
+         * @param acceptLanguage
+         *      comma-separated list of preferred languages for this client (most to least preferred)
+         * @return builder
+         */
+        public Builder withAcceptLanguage(String acceptLanguage) {
+            this.acceptLanguage = acceptLanguage;
+            return this;
+        }
+
+        /**
+         * @param appId
+         *      app identifier
+         * @return builder
+         */
+        public Builder withAppId(String appId) {
+            this.appId = appId;
+            return this;
+        }
+
+        /**
+         * @param socketFactory
+         *      factory to customize how OkHttp creates sockets. If no factory is set, the result is OkHttp's default
+         *      behavior
+         * @return builder
+         */
+        public Builder withSocketFactory(SocketFactory socketFactory) {
+            this.socketFactory = socketFactory;
+            return this;
+        }
+
+        /**
+         * @param networkInterceptors
+         *      additional network interceptors
+         * @return builder
+         */
+        public Builder withNetworkInterceptors(List<Interceptor> networkInterceptors) {
+            this.networkInterceptors = checkNotNull(networkInterceptors);
+            return this;
+        }
+
+        /**
+         * @param applicationInterceptors
+         *      additional application interceptors
+         * @return builder
+         */
+        public Builder withApplicationInterceptors(List<Interceptor> applicationInterceptors) {
+            this.applicationInterceptors = checkNotNull(applicationInterceptors);
+            return this;
+        }
+
+        /**
+         * @param transportSettings
+         *      settings for the connection pool, dispatcher, retries and rate limit shared by all clients of the
+         *      provider
+         * @return builder
+         */
+        public Builder withTransportSettings(TransportSettings transportSettings) {
+            this.transportSettings = transportSettings;
+            return this;
+        }
+
+        /**
+         * @param jsonCodec
+         *      codec for the JSON exchanged with the server. If no codec is set, the default {@link GsonJsonCodec}
+         *      is used
+         * @return builder
+         */
+        public Builder withJsonCodec(JsonCodec jsonCodec) {
+            this.jsonCodec = jsonCodec;
+            return this;
+        }
+
+        /**
+         * @param encodingSettings
+         *      settings for how request bodies are encoded, such as which are streamed
+         * @return builder
+         */
+        public Builder withEncodingSettings(EncodingSettings encodingSettings) {
+            this.encodingSettings = encodingSettings;
+            return this;
+        }
+
+        /**
+         * @param loggingSettings
+         *      settings for how requests and responses are logged at the DEBUG level
+         * @return builder
+         */
+        public Builder withLoggingSettings(LoggingSettings loggingSettings) {
+            this.loggingSettings = loggingSettings;
+            return this;
+        }
+
+        public ApiClientProvider build() {
+            return new ApiClientProvider(this);
+        }
+    }
 }
@@ -0,0 +1,149 @@
+package org.sagebionetworks.bridge.rest;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+/**
+ * Makes the SDK's error handling work for calls that are enqueued rather than executed. OkHttp only delivers
+ * IOExceptions to the callback of an enqueued call; the BridgeSDKExceptions thrown by our interceptors would
+ * otherwise escape on the dispatcher thread and the callback would never be called. The {@link #INTERCEPTOR} is
+ * installed as the outermost interceptor of async clients and wraps those exceptions in an IOException, and the
+ * calls returned by this adapter unwrap them again, so callers see the same exceptions whether a call is executed or
+ * enqueued.
+ * <p>
+ * Besides the {@code Call<T>} return type of the generated APIs, this adapter supports service interfaces declaring a
+ * {@code ListenableFuture<T>} return type, which enqueue the call as soon as the method is invoked.
+ */
+class AsyncCallAdapterFactory extends CallAdapter.Factory {
+
+    static final Interceptor INTERCEPTOR = new Interceptor() {
+        @Override
+        public okhttp3.Response intercept(Chain chain) throws IOException {
+            try {
+                return chain.proceed(chain.request());
+            } catch (RuntimeException e) {
+                throw new WrappedRuntimeException(e);
+            }
+        }
+    };
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        Class<?> rawType = getRawType(returnType);
+        if ((rawType != Call.class && rawType != ListenableFuture.class)
+                || !(returnType instanceof ParameterizedType)) {
+            return null;
+        }
+        final Type responseType = getParameterUpperBound(0, (ParameterizedType) returnType);
+        if (rawType == ListenableFuture.class) {
+            return new CallAdapter<Object, ListenableFuture<?>>() {
+                @Override
+                public Type responseType() {
+                    return responseType;
+                }
+
+                @Override
+                public ListenableFuture<?> adapt(Call<Object> call) {
+                    return AsyncCalls.toFuture(new UnwrappingCall<>(call));
+                }
+            };
+        }
+        return new CallAdapter<Object, Call<?>>() {
+            @Override
+            public Type responseType() {
+                return responseType;
+            }
+
+            @Override
+            public Call<?> adapt(Call<Object> call) {
+                return new UnwrappingCall<>(call);
+            }
+        };
+    }
+
+    /** Carries a RuntimeException thrown by an interceptor through OkHttp's async call machinery. */
+    @SuppressWarnings("serial")
+    static final class WrappedRuntimeException extends IOException {
+        WrappedRuntimeException(RuntimeException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized RuntimeException getCause() {
+            return (RuntimeException) super.getCause();
+        }
+    }
+
+    static Throwable unwrap(Throwable t) {
+        return (t instanceof WrappedRuntimeException) ? t.getCause() : t;
+    }
+
+    static final class UnwrappingCall<T> implements Call<T> {
+        private final Call<T> delegate;
+
+        UnwrappingCall(Call<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            try {
+                return delegate.execute();
+            } catch (WrappedRuntimeException e) {
+                throw e.getCause();
+            }
+        }
+
+        @Override
+        public void enqueue(final Callback<T> callback) {
+            delegate.enqueue(new Callback<T>() {
+                @Override
+                public void onResponse(Call<T> call, Response<T> response) {
+                    callback.onResponse(UnwrappingCall.this, response);
+                }
+
+                @Override
+                public void onFailure(Call<T> call, Throwable t) {
+                    callback.onFailure(UnwrappingCall.this, unwrap(t));
+                }
+            });
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return delegate.isExecuted();
+        }
+
+        @Override
+        public void cancel() {
+            delegate.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return delegate.isCanceled();
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        @Override
+        public Call<T> clone() {
+            return new UnwrappingCall<>(delegate.clone());
+        }
+
+        @Override
+        public Request request() {
+            return delegate.request();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Helpers for making Bridge calls without blocking the calling thread. Calls are enqueued on the OkHttp dispatcher,
+ * so a single thread can have many requests in flight at once.
+ *
+ * <pre>
+ * ForConsentedUsersApi api = manager.getAsyncClient(ForConsentedUsersApi.class);
+ * ListenableFuture&lt;StudyParticipant&gt; future = AsyncCalls.toFuture(api.getUsersParticipantRecord(false));
+ * </pre>
+ */
+public final class AsyncCalls {
+
+    private AsyncCalls() {
+    }
+
+    /**
+     * Enqueue the call and return a future for the body of its response. If the server returns an error, the future
+     * fails with the same BridgeSDKException subclass that executing the call would have thrown (as long as the call
+     * came from an async client; see {@link ClientManager#getAsyncClient(Class)}). Cancelling the future cancels the
+     * call.
+     *
+     * @param <T>
+     *         type of the response body
+     * @param call
+     *         a call that has not been executed
+     * @return future for the response body
+     */
+    public static <T> ListenableFuture<T> toFuture(Call<T> call) {
+        checkNotNull(call);
+
+        CallFuture<T> future = new CallFuture<>(call);
+        call.enqueue(future);
+        return future;
+    }
+
+    private static final class CallFuture<T> extends AbstractFuture<T> implements Callback<T> {
+        private final Call<T> call;
+
+        CallFuture(Call<T> call) {
+            this.call = call;
+        }
+
+        @Override
+        public void onResponse(Call<T> call, Response<T> response) {
+            set(response.body());
+        }
+
+        @Override
+        public void onFailure(Call<T> call, Throwable t) {
+            setException(AsyncCallAdapterFactory.unwrap(t));
+        }
+
+        @Override
+        protected void afterDone() {
+            if (isCancelled()) {
+                call.cancel();
+            }
+        }
+    }
+}
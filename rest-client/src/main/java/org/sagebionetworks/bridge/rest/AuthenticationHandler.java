@@ -50,7 +50,7 @@ class AuthenticationHandler implements Interceptor, Authenticator {
     }
     
     @Override
-    public synchronized Request authenticate(Route route, Response response) throws IOException {
+    public Request authenticate(Route route, Response response) throws IOException {
         Request request = response.request();
         if (tryCount.get() >= MAX_TRIES || !requiresAuth(request, false)) {
             tryCount.set(0);
@@ -62,9 +62,11 @@ class AuthenticationHandler implements Interceptor, Authenticator {
         // We received a 401 from the server... attempt to reauthenticate.
         tryCount.set(tryCount.get() + 1);
 
-        if (!doesSessionHaveTokenAndIsItDifferentFromRequest(request, userSessionInfoProvider.getSession())) {
-            // don't reauthenticate, because the 401 response was not for the current session
-            userSessionInfoProvider.reauthenticate();
+        UserSessionInfo session = userSessionInfoProvider.getSession();
+        if (!doesSessionHaveTokenAndIsItDifferentFromRequest(request, session)) {
+            // Only reauthenticate when the 401 response was for the current session. Concurrent 401s for the same
+            // session share a single reauthentication.
+            userSessionInfoProvider.reauthenticate(session);
         }
 
         // We should now be able to proceed with session headers.
@@ -107,6 +109,18 @@ class AuthenticationHandler implements Interceptor, Authenticator {
     }
     
     private boolean requiresAuth(Request request, boolean includeSignOut) {
+        RouteMetadata route = RouteMetadata.forRequest(request);
+        if (route != null) {
+            return route.isRequiresSession() && (includeSignOut || !route.isAuthRoute());
+        }
+        return requiresAuthByUrl(request, includeSignOut);
+    }
+
+    /**
+     * Guesses from the URL whether a request that was not made through the generated APIs (so has no
+     * {@link RouteMetadata}) requires a session. Calls through the generated APIs never get here.
+     */
+    private static boolean requiresAuthByUrl(Request request, boolean includeSignOut) {
         String url = request.url().toString();
         if (!url.contains(AUTH_PATH)) {
             return true;
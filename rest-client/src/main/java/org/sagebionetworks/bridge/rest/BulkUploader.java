@@ -0,0 +1,500 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.model.UploadRequest;
+import org.sagebionetworks.bridge.rest.model.UploadSession;
+
+/**
+ * Uploads many files to Bridge at once. Each upload goes through the same three steps as
+ * {@link RestUtils#upload(ForConsentedUsersApi, S3Uploader, File)}: requesting an upload session, uploading the file
+ * to S3, and completing the upload session. Each step runs on its own bounded pool of threads, so while one file is
+ * being uploaded to S3, sessions are being requested for the files behind it and completed for the files ahead of it.
+ * Only a limited number of files are in progress at once (see {@link Builder#withMaxFilesInFlight(int)}); further
+ * submissions wait, so upload URLs are not requested long before they can be used, and expire.
+ * <p>
+ * Failures that are likely to be transient are retried with exponential backoff: I/O errors and 429 and 5xx
+ * responses when uploading to S3, and I/O errors when requesting an upload session. 429 and 5xx responses from Bridge
+ * are retried here only if the client does not retry them itself (see {@link Builder#withTransportSettings}), so a
+ * request is never retried at two layers. Completing an upload session is only retried after a 429, which the server
+ * has not processed: after an I/O error or a 5xx response, the server may already have completed the upload, and
+ * completing it again would fail. Such a file is reported as failed, though it may have been uploaded.
+ *
+ * <pre>
+ * try (BulkUploader uploader = new BulkUploader.Builder()
+ *         .withForConsentedUsersApi(manager.getClient(ForConsentedUsersApi.class))
+ *         .withS3Uploader(manager.getS3Uploader())
+ *         .withTransportSettings(manager.getTransportSettings()).build()) {
+ *     for (BulkUploader.Result result : uploader.uploadDirectory(dir)) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class BulkUploader implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(BulkUploader.class);
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ForConsentedUsersApi usersApi;
+    private final S3Uploader s3Uploader;
+    private final ListeningExecutorService requestExecutor;
+    private final ListeningExecutorService uploadExecutor;
+    private final ListeningExecutorService completeExecutor;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final boolean clientRetries;
+    private final Semaphore filesInFlight;
+    private final Set<ListenableFuture<UploadSession>> pendingUploads =
+            Collections.newSetFromMap(new ConcurrentHashMap<ListenableFuture<UploadSession>, Boolean>());
+    private boolean closed;
+
+    private BulkUploader(ForConsentedUsersApi usersApi, S3Uploader s3Uploader, int requestConcurrency,
+            int uploadConcurrency, int completeConcurrency, int maxFilesInFlight, int maxRetries,
+            long retryBackoffMillis, boolean clientRetries) {
+        this.usersApi = usersApi;
+        this.s3Uploader = s3Uploader;
+        this.requestExecutor = newExecutor("request", requestConcurrency);
+        this.uploadExecutor = newExecutor("s3", uploadConcurrency);
+        this.completeExecutor = newExecutor("complete", completeConcurrency);
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.clientRetries = clientRetries;
+        this.filesInFlight = new Semaphore(maxFilesInFlight);
+    }
+
+    private static ListeningExecutorService newExecutor(String stage, int threads) {
+        return MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("bridge-bulk-upload-" + stage + "-%d").setDaemon(true).build()));
+    }
+
+    /**
+     * Queue a file for upload. If the maximum number of files are already in progress, this waits until one of them
+     * has finished.
+     *
+     * @param file
+     *         A File referencing a zip file to upload
+     * @return future for the completed upload session, which fails if the upload fails after all retries, and is
+     *         cancelled if the uploader is closed first
+     * @throws RejectedExecutionException
+     *         if the uploader has been closed
+     */
+    public ListenableFuture<UploadSession> submit(final File file) {
+        checkNotNull(file, "File cannot be null");
+
+        filesInFlight.acquireUninterruptibly();
+        final ListenableFuture<UploadSession> completed;
+        synchronized (pendingUploads) {
+            try {
+                if (closed) {
+                    throw new RejectedExecutionException("BulkUploader has been closed");
+                }
+                completed = startUpload(file);
+            } catch (RejectedExecutionException e) {
+                filesInFlight.release();
+                throw e;
+            }
+            pendingUploads.add(completed);
+        }
+        completed.addListener(new Runnable() {
+            @Override
+            public void run() {
+                pendingUploads.remove(completed);
+                filesInFlight.release();
+            }
+        }, MoreExecutors.directExecutor());
+        return completed;
+    }
+
+    private ListenableFuture<UploadSession> startUpload(final File file) {
+        ListenableFuture<Upload> requested = requestExecutor.submit(new Callable<Upload>() {
+            @Override
+            public Upload call() throws Exception {
+                final UploadRequest request = RestUtils.makeUploadRequestForFile(file);
+                UploadSession session = withRetries(file, Step.REQUEST, new Callable<UploadSession>() {
+                    @Override
+                    public UploadSession call() throws Exception {
+                        return usersApi.requestUploadSession(request).execute().body();
+                    }
+                });
+                return new Upload(file, request, session);
+            }
+        });
+        ListenableFuture<Upload> uploaded = Futures.transformAsync(requested, new AsyncFunction<Upload, Upload>() {
+            @Override
+            public ListenableFuture<Upload> apply(final Upload upload) throws Exception {
+                withRetries(file, Step.UPLOAD, new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        s3Uploader.uploadToS3(upload.file, upload.session.getUrl(),
+                                upload.request.getContentType(), upload.request.getContentMd5());
+                        return null;
+                    }
+                });
+                return Futures.immediateFuture(upload);
+            }
+        }, uploadExecutor);
+        return Futures.transformAsync(uploaded, new AsyncFunction<Upload, UploadSession>() {
+            @Override
+            public ListenableFuture<UploadSession> apply(final Upload upload) throws Exception {
+                withRetries(file, Step.COMPLETE, new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        usersApi.completeUploadSession(upload.session.getId(), false, false).execute();
+                        return null;
+                    }
+                });
+                return Futures.immediateFuture(upload.session);
+            }
+        }, completeExecutor);
+    }
+
+    /**
+     * Upload all the files and wait for the uploads to finish. Files are submitted as earlier files finish, so no
+     * more than the maximum number of files are in progress at once.
+     *
+     * @param files
+     *         files to upload
+     * @return one result per file, in the order of the files. If the uploader is closed before all the files are
+     *         uploaded, the error of the files that didn't finish is a CancellationException.
+     */
+    public List<Result> uploadAll(Iterable<File> files) {
+        checkNotNull(files);
+
+        List<File> submittedFiles = new ArrayList<>();
+        List<ListenableFuture<UploadSession>> futures = new ArrayList<>();
+        boolean rejected = false;
+        for (File file : files) {
+            submittedFiles.add(file);
+            if (!rejected) {
+                try {
+                    futures.add(submit(file));
+                    continue;
+                } catch (RejectedExecutionException e) {
+                    // closed while submitting, so this file and the rest are never uploaded
+                    rejected = true;
+                }
+            }
+            futures.add(null);
+        }
+        List<Result> results = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            File file = submittedFiles.get(i);
+            ListenableFuture<UploadSession> future = futures.get(i);
+            if (future == null) {
+                results.add(new Result(file, null, new CancellationException("BulkUploader has been closed")));
+                continue;
+            }
+            try {
+                results.add(new Result(file, Uninterruptibles.getUninterruptibly(future), null));
+            } catch (ExecutionException e) {
+                results.add(new Result(file, null, e.getCause()));
+            } catch (CancellationException e) {
+                results.add(new Result(file, null, e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Upload all the files in a directory (not including subdirectories), in order of their names, and wait for the
+     * uploads to finish.
+     *
+     * @param directory
+     *         directory containing the files to upload
+     * @return one result per file
+     * @throws IOException
+     *         if the directory cannot be listed
+     */
+    public List<Result> uploadDirectory(File directory) throws IOException {
+        checkNotNull(directory, "directory cannot be null");
+        checkArgument(directory.isDirectory(), "Not a directory: " + directory.getAbsolutePath());
+
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile();
+            }
+        });
+        if (files == null) {
+            throw new IOException("Could not list files in " + directory.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        return uploadAll(Arrays.asList(files));
+    }
+
+    /**
+     * Stops the upload threads. Uploads that have not finished are abandoned, and their futures are cancelled, so
+     * callers waiting on them (including {@link #uploadAll(Iterable)}) return. Further submissions are rejected.
+     */
+    @Override
+    public void close() {
+        synchronized (pendingUploads) {
+            closed = true;
+        }
+        requestExecutor.shutdownNow();
+        uploadExecutor.shutdownNow();
+        completeExecutor.shutdownNow();
+        // Tasks that were still queued never run, so their futures would never complete.
+        for (ListenableFuture<UploadSession> upload : new ArrayList<>(pendingUploads)) {
+            upload.cancel(true);
+        }
+    }
+
+    private enum Step {
+        REQUEST, UPLOAD, COMPLETE
+    }
+
+    private <T> T withRetries(File file, Step step, Callable<T> callable) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return callable.call();
+            } catch (Exception e) {
+                if (attempt >= maxRetries || !isRetryable(step, e)) {
+                    throw e;
+                }
+                long backoffMillis = backoffMillis(retryBackoffMillis, attempt);
+                LOG.info("Upload of " + file.getName() + " failed (" + e.getMessage() + "), retrying in "
+                        + backoffMillis + "ms");
+                Thread.sleep(backoffMillis);
+            }
+        }
+    }
+
+    private boolean isRetryable(Step step, Exception e) {
+        if (step == Step.UPLOAD) {
+            return isTransient(e);
+        }
+        if (e instanceof BridgeSDKException) {
+            // Left to the client's RetryInterceptor when it has one
+            if (clientRetries) {
+                return false;
+            }
+            return (step == Step.REQUEST) ? isTransient(e) :
+                    ((BridgeSDKException) e).getStatusCode() == TOO_MANY_REQUESTS;
+        }
+        return (step == Step.REQUEST) && isTransient(e);
+    }
+
+    static boolean isTransient(Exception e) {
+        if (e instanceof BridgeSDKException) {
+            int statusCode = ((BridgeSDKException) e).getStatusCode();
+            return statusCode == TOO_MANY_REQUESTS || statusCode >= 500;
+        }
+        return (e instanceof IOException) && !(e instanceof FileNotFoundException);
+    }
+
+    /**
+     * The delay before a retry: the initial backoff doubled for each earlier retry, up to a minute. Saturates rather
+     * than overflowing when there are many retries.
+     */
+    static long backoffMillis(long retryBackoffMillis, int attempt) {
+        if (attempt >= Long.SIZE - 1 || retryBackoffMillis > (MAX_BACKOFF_MILLIS >> attempt)) {
+            return MAX_BACKOFF_MILLIS;
+        }
+        return retryBackoffMillis << attempt;
+    }
+
+    private static final class Upload {
+        final File file;
+        final UploadRequest request;
+        final UploadSession session;
+
+        Upload(File file, UploadRequest request, UploadSession session) {
+            this.file = file;
+            this.request = request;
+            this.session = session;
+        }
+    }
+
+    /** The outcome of uploading one file. */
+    public static final class Result {
+        private final File file;
+        private final UploadSession uploadSession;
+        private final Throwable error;
+
+        Result(File file, UploadSession uploadSession, Throwable error) {
+            this.file = file;
+            this.uploadSession = uploadSession;
+            this.error = error;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /** The completed upload session, or null if the upload failed. */
+        public UploadSession getUploadSession() {
+            return uploadSession;
+        }
+
+        /** The reason the upload failed, or null if it succeeded. */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    public static final class Builder {
+        private ForConsentedUsersApi usersApi;
+        private S3Uploader s3Uploader;
+        private int requestConcurrency = 4;
+        private int uploadConcurrency = 8;
+        private int completeConcurrency = 4;
+        private Integer maxFilesInFlight;
+        private int maxRetries = 3;
+        private long retryBackoffMillis = TimeUnit.SECONDS.toMillis(1);
+        private TransportSettings transportSettings;
+
+        /**
+         * @param usersApi
+         *      The ForConsentedUsersApi for the user making the uploads (required)
+         * @return builder
+         */
+        public Builder withForConsentedUsersApi(ForConsentedUsersApi usersApi) {
+            this.usersApi = checkNotNull(usersApi);
+            return this;
+        }
+
+        /**
+         * @param s3Uploader
+         *      The S3Uploader to upload the files with, generally {@link ClientManager#getS3Uploader()}. If not set,
+         *      the default uploader of RestUtils is used.
+         * @return builder
+         */
+        public Builder withS3Uploader(S3Uploader s3Uploader) {
+            this.s3Uploader = checkNotNull(s3Uploader);
+            return this;
+        }
+
+        /**
+         * @param requestConcurrency
+         *      number of upload sessions to request at once (default 4)
+         * @return builder
+         */
+        public Builder withRequestConcurrency(int requestConcurrency) {
+            checkArgument(requestConcurrency > 0, "requestConcurrency must be positive");
+            this.requestConcurrency = requestConcurrency;
+            return this;
+        }
+
+        /**
+         * @param uploadConcurrency
+         *      number of files to upload to S3 at once (default 8)
+         * @return builder
+         */
+        public Builder withUploadConcurrency(int uploadConcurrency) {
+            checkArgument(uploadConcurrency > 0, "uploadConcurrency must be positive");
+            this.uploadConcurrency = uploadConcurrency;
+            return this;
+        }
+
+        /**
+         * @param completeConcurrency
+         *      number of upload sessions to complete at once (default 4)
+         * @return builder
+         */
+        public Builder withCompleteConcurrency(int completeConcurrency) {
+            checkArgument(completeConcurrency > 0, "completeConcurrency must be positive");
+            this.completeConcurrency = completeConcurrency;
+            return this;
+        }
+
+        /**
+         * @param maxFilesInFlight
+         *      number of files that can be in progress at once, from requesting the upload session to completing
+         *      it. Submitting more files waits until one finishes. By default, the sum of the concurrency of the
+         *      three steps, so each step can be kept busy without requesting upload URLs far ahead of their use.
+         * @return builder
+         */
+        public Builder withMaxFilesInFlight(int maxFilesInFlight) {
+            checkArgument(maxFilesInFlight > 0, "maxFilesInFlight must be positive");
+            this.maxFilesInFlight = maxFilesInFlight;
+            return this;
+        }
+
+        /**
+         * @param maxRetries
+         *      number of times each step is retried after a transient failure (default 3)
+         * @return builder
+         */
+        public Builder withMaxRetries(int maxRetries) {
+            checkArgument(maxRetries >= 0, "maxRetries cannot be negative");
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * @param retryBackoff
+         *      delay before the first retry; the delay doubles with each further retry (default 1 second)
+         * @param unit
+         *      unit of retryBackoff
+         * @return builder
+         */
+        public Builder withRetryBackoff(long retryBackoff, TimeUnit unit) {
+            checkArgument(retryBackoff >= 0, "retryBackoff cannot be negative");
+            checkNotNull(unit);
+            this.retryBackoffMillis = unit.toMillis(retryBackoff);
+            return this;
+        }
+
+        /**
+         * @param transportSettings
+         *      The transport settings of the client the ForConsentedUsersApi was created with, generally
+         *      {@link ClientManager#getTransportSettings()}, which may be null. If the client retries requests
+         *      itself, 429 and 5xx responses from Bridge are not retried again here.
+         * @return builder
+         */
+        public Builder withTransportSettings(TransportSettings transportSettings) {
+            this.transportSettings = transportSettings;
+            return this;
+        }
+
+        public BulkUploader build() {
+            checkState(usersApi != null, "ForConsentedUsersApi is required");
+            S3Uploader uploader = (s3Uploader != null) ? s3Uploader : RestUtils.getDefaultS3Uploader();
+            int inFlight = (maxFilesInFlight != null) ? maxFilesInFlight :
+                    requestConcurrency + uploadConcurrency + completeConcurrency;
+            return new BulkUploader(usersApi, uploader, requestConcurrency, uploadConcurrency, completeConcurrency,
+                    inFlight, maxRetries, retryBackoffMillis,
+                    transportSettings != null && transportSettings.getMaxRetries() > 0);
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package org.sagebionetworks.bridge.rest;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableMap;
 
 import org.sagebionetworks.bridge.rest.model.ClientInfo;
@@ -30,6 +36,11 @@ import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
  *      only log messages of WARN level or higher to the console. If you wish to see more details about 
  *      the SDK’s behavior, you can set this property.</dd>
  *      
+ *      <dt>MAX_RETRIES (max.retries in properties file) and RATE_LIMIT (rate.limit in properties file)</dt>
+ *      <dd>The number of times a request the server turns away as too many (429) or unavailable is retried, 
+ *      and the number of requests per second sent to the server by all clients of an app. Optional, and 
+ *      ignored if TransportSettings are provided to the builder.</dd>
+ *      
  *      <dt>LANGUAGES (languages in properties file)</dt>
  *      <dd>A comma-separated list of preferred languages for this client (most to least preferred). Optional.</dd>
  *      
@@ -86,17 +97,28 @@ public class ClientManager {
     private final String hostURL;
     private final boolean includeUserAgent;
     private final String userAgentOverride;
+    private final TransportSettings transportSettings;
+    private final DecodingSettings decodingSettings;
+    private final JsonCodec jsonCodec;
+    private final EncodingSettings encodingSettings;
+    private final LoggingSettings loggingSettings;
+    private final S3Uploader s3Uploader;
     
-    private ClientManager(Config config, ClientInfo clientInfo, List<String> acceptLanguages, SignIn signIn,
-            String hostURL, boolean includeUserAgent, String userAgentOverride) {
-        checkNotNull(HOSTS.get(config.getEnvironment()));
+    private ClientManager(Builder builder, ClientInfo clientInfo, String hostURL, TransportSettings transportSettings,
+            JsonCodec jsonCodec) {
+        checkNotNull(HOSTS.get(builder.config.getEnvironment()));
         
         this.hostURL = hostURL;
-        this.config = config;
+        this.config = builder.config;
         this.clientInfo = clientInfo;
-        this.acceptLanguages = acceptLanguages;
-        this.includeUserAgent = includeUserAgent;
-        this.userAgentOverride = userAgentOverride;
+        this.acceptLanguages = builder.acceptLanguages;
+        this.includeUserAgent = builder.includeUserAgent;
+        this.userAgentOverride = builder.userAgentOverride;
+        this.transportSettings = transportSettings;
+        this.decodingSettings = builder.decodingSettings;
+        this.jsonCodec = jsonCodec;
+        this.encodingSettings = builder.encodingSettings;
+        this.loggingSettings = builder.loggingSettings;
 
         String userAgent;
         if (!includeUserAgent) {
@@ -107,15 +129,44 @@ public class ClientManager {
             userAgent = RestUtils.getUserAgent(clientInfo);
         }
 
-        String acceptLanguage = RestUtils.getAcceptLanguage(acceptLanguages);
-
-        this.authenticatedClientProvider =
-                new ApiClientProvider(hostURL, userAgent, acceptLanguage, signIn.getAppId())
+        SignIn signIn = builder.signIn;
+        ApiClientProvider.Builder apiClientProviderBuilder = new ApiClientProvider.Builder().withBaseUrl(hostURL)
+                .withUserAgent(userAgent).withAcceptLanguage(RestUtils.getAcceptLanguage(acceptLanguages))
+                .withAppId(signIn.getAppId()).withTransportSettings(transportSettings).withJsonCodec(jsonCodec)
+                .withEncodingSettings(encodingSettings).withLoggingSettings(loggingSettings);
+        ApiClientProvider apiClientProvider;
+        if (builder.apiClientProviders == null) {
+            apiClientProvider = apiClientProviderBuilder.build();
+        } else {
+            apiClientProvider = getSharedApiClientProvider(builder.apiClientProviders, signIn.getAppId(),
+                    apiClientProviderBuilder);
+        }
+        ApiClientProvider.AuthenticatedClientProviderBuilder providerBuilder = apiClientProvider
                         .getAuthenticatedClientProviderBuilder()
                         .withPhone(signIn.getPhone())
                         .withEmail(signIn.getEmail())
                         .withExternalId(signIn.getExternalId())
-                        .withPassword(signIn.getPassword()).build();
+                        .withPassword(signIn.getPassword());
+        if (builder.sessionRefreshAfterMillis > 0) {
+            providerBuilder.withSessionRefresh(builder.sessionRefreshAfterMillis, builder.sessionMaxIdleMillis,
+                    MILLISECONDS);
+        }
+        this.authenticatedClientProvider = providerBuilder.build();
+        this.s3Uploader = apiClientProvider.getS3Uploader();
+    }
+
+    private static ApiClientProvider getSharedApiClientProvider(Cache<String, ApiClientProvider> apiClientProviders,
+            String appId, final ApiClientProvider.Builder apiClientProviderBuilder) {
+        try {
+            return apiClientProviders.get(appId, new Callable<ApiClientProvider>() {
+                @Override
+                public ApiClientProvider call() {
+                    return apiClientProviderBuilder.build();
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
     public final UserSessionInfo getSessionOfClients() {
@@ -149,6 +200,31 @@ public class ClientManager {
         return userAgentOverride;
     }
 
+    /** Settings for the connection pool used by clients from this ClientManager. May be null. */
+    public TransportSettings getTransportSettings() {
+        return transportSettings;
+    }
+
+    /** Settings for how responses are decoded by clients from this ClientManager. May be null. */
+    public DecodingSettings getDecodingSettings() {
+        return decodingSettings;
+    }
+
+    /** The codec for the JSON exchanged with the server. Null if the default Gson codec is used. */
+    public JsonCodec getJsonCodec() {
+        return jsonCodec;
+    }
+
+    /** Settings for how request bodies are encoded by clients from this ClientManager. May be null. */
+    public EncodingSettings getEncodingSettings() {
+        return encodingSettings;
+    }
+
+    /** Settings for how requests and responses are logged by clients from this ClientManager. May be null. */
+    public LoggingSettings getLoggingSettings() {
+        return loggingSettings;
+    }
+
     public static String getUrl(Environment env) {
         return HOSTS.get(env);
     }
@@ -164,6 +240,31 @@ public class ClientManager {
         return authenticatedClientProvider.getClient(service);
     }
 
+    /**
+     * Returns a client for making calls without blocking the calling thread. Enqueue its calls, or pass them to
+     * {@link AsyncCalls#toFuture(retrofit2.Call)}; errors are delivered as the same exceptions that the client
+     * returned by {@link #getClient(Class)} throws.
+     *
+     * @param <T>
+     *         One of the Api classes in the org.sagebionetworks.bridge.rest.api package, or a service interface
+     *         whose methods return ListenableFuture.
+     * @param service
+     *         Class representing the service
+     * @return async service client
+     */
+    public <T> T getAsyncClient(Class<T> service) {
+        return authenticatedClientProvider.getAsyncClient(service);
+    }
+
+    /**
+     * Returns the S3Uploader to pass to RestUtils.upload(). It reuses connections to S3 across uploads.
+     *
+     * @return S3 uploader
+     */
+    public S3Uploader getS3Uploader() {
+        return s3Uploader;
+    }
+
     // Package-scoped for unit tests.
     ApiClientProvider.AuthenticatedClientProvider getAuthenticatedClientProvider() {
         return authenticatedClientProvider;
@@ -176,6 +277,14 @@ public class ClientManager {
         private boolean includeUserAgent = true;
         private SignIn signIn;
         private String userAgentOverride;
+        private TransportSettings transportSettings;
+        private DecodingSettings decodingSettings;
+        private JsonCodec jsonCodec;
+        private EncodingSettings encodingSettings;
+        private LoggingSettings loggingSettings;
+        private long sessionRefreshAfterMillis;
+        private long sessionMaxIdleMillis;
+        private Cache<String, ApiClientProvider> apiClientProviders;
 
         /**
          * Provide a configuration object for this ClientManager. A default configuration
@@ -249,6 +358,93 @@ public class ClientManager {
             return this;
         }
 
+        /**
+         * Provide settings for the connection pool shared by all clients from this ClientManager. If not provided,
+         * retry and rate limit settings are read from the configuration (MAX_RETRIES, RATE_LIMIT), and OkHttp's
+         * defaults are used for the rest.
+         * @param transportSettings
+         *      a TransportSettings object
+         * @return builder
+         */
+        public Builder withTransportSettings(TransportSettings transportSettings) {
+            this.transportSettings = transportSettings;
+            return this;
+        }
+
+        /**
+         * Provide settings for how responses are decoded, such as the types to decode lazily. If not provided,
+         * responses are decoded in full when they are received.
+         * @param decodingSettings
+         *      a DecodingSettings object
+         * @return builder
+         */
+        public Builder withDecodingSettings(DecodingSettings decodingSettings) {
+            this.decodingSettings = decodingSettings;
+            return this;
+        }
+
+        /**
+         * Provide the codec used to read and write JSON, in place of the default Gson codec, e.g. a
+         * {@link JacksonJsonCodec}. DecodingSettings configure the default codec, so they can't also be provided.
+         * @param jsonCodec
+         *      a JsonCodec implementation
+         * @return builder
+         */
+        public Builder withJsonCodec(JsonCodec jsonCodec) {
+            this.jsonCodec = jsonCodec;
+            return this;
+        }
+
+        /**
+         * Provide settings for how request bodies are encoded, such as which are written directly to the connection
+         * rather than to a buffer first. If not provided, all request bodies are buffered.
+         * @param encodingSettings
+         *      an EncodingSettings object
+         * @return builder
+         */
+        public Builder withEncodingSettings(EncodingSettings encodingSettings) {
+            this.encodingSettings = encodingSettings;
+            return this;
+        }
+
+        /**
+         * Provide settings for how requests and responses are logged at the DEBUG level, such as how much of each
+         * body is logged and what fraction of calls are logged. If not provided, every call is logged in full.
+         * @param loggingSettings
+         *      a LoggingSettings object
+         * @return builder
+         */
+        public Builder withLoggingSettings(LoggingSettings loggingSettings) {
+            this.loggingSettings = loggingSettings;
+            return this;
+        }
+
+        /**
+         * Refresh the session in the background before it expires on the server, rather than waiting for a 401
+         * response to reauthenticate. Sessions that have not been used for longer than maxIdle are left to expire.
+         * @param refreshAfter
+         *      age after which the session is refreshed
+         * @param maxIdle
+         *      if greater than zero, a session that has not been used for this long is not refreshed
+         * @param unit
+         *      unit of refreshAfter and maxIdle
+         * @return builder
+         */
+        public Builder withSessionRefresh(long refreshAfter, long maxIdle, TimeUnit unit) {
+            this.sessionRefreshAfterMillis = unit.toMillis(refreshAfter);
+            this.sessionMaxIdleMillis = unit.toMillis(maxIdle);
+            return this;
+        }
+
+        /**
+         * ClientManagers built with the same cache share one ApiClientProvider per app, and thus its connection pool.
+         * Only used by ClientManagerPool, whose builder settings are the same for every ClientManager it builds.
+         */
+        Builder withApiClientProviderCache(Cache<String, ApiClientProvider> apiClientProviders) {
+            this.apiClientProviders = apiClientProviders;
+            return this;
+        }
+
         private ClientInfo getDefaultClientInfo() {
             ClientInfo info = new ClientInfo();
             info.setOsName(System.getProperty("os.name"));
@@ -264,6 +460,8 @@ public class ClientManager {
             }
             checkNotNull(signIn, "Sign in must be supplied to ClientManager builder.");
             checkNotNull(signIn.getAppId(), "Sign in must have an appId.");
+            checkState(jsonCodec == null || decodingSettings == null,
+                    "DecodingSettings can't be used with a custom JsonCodec.");
             if (this.config == null) {
                 this.config = new Config();
             }
@@ -312,9 +510,11 @@ public class ClientManager {
                 }
             }
 
+            TransportSettings transport = (transportSettings != null) ? transportSettings :
+                    TransportSettings.fromConfig(config);
             String hostURL = (config.getHost() != null) ? config.getHost() : HOSTS.get(config.getEnvironment());
-            return new ClientManager(config, info, acceptLanguages, signIn, hostURL, includeUserAgent,
-                    userAgentOverride);
+            JsonCodec codec = (decodingSettings != null) ? GsonJsonCodec.create(decodingSettings) : jsonCodec;
+            return new ClientManager(this, info, hostURL, transport, codec);
         }
     }
     
@@ -0,0 +1,144 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+import org.sagebionetworks.bridge.rest.model.SignIn;
+
+/**
+ * <p>A bounded pool of ClientManagers, keyed by sign in credentials. Workers that act on behalf of many participants
+ * can retrieve a ClientManager for each participant from the pool, rather than building a new one for every call. A
+ * pooled ClientManager keeps its session, so repeated calls for the same participant do not sign in again until the
+ * session expires on the server.</p>
+ *
+ * <p>All ClientManagers in the pool are built with the same ClientManager.Builder settings, and share one
+ * ApiClientProvider (and so one connection pool) per app. The least recently used ClientManagers are evicted when
+ * the pool reaches its maximum size, or when they have not been used for the configured idle time. A ClientManager
+ * that is evicted or invalidated stops refreshing its session in the background.</p>
+ */
+public class ClientManagerPool {
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 1000L;
+    private static final long DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES = 30L;
+
+    private final ClientManager.Builder clientManagerBuilder;
+    private final LoadingCache<SignIn, ClientManager> clientManagers;
+
+    /**
+     * Create a pool with the default maximum size (1000) and idle time (30 minutes).
+     *
+     * @param clientManagerBuilder
+     *      a builder configured with all the settings for pooled ClientManagers, other than the sign in. The pool
+     *      takes ownership of this builder, and it should not be used elsewhere.
+     */
+    public ClientManagerPool(ClientManager.Builder clientManagerBuilder) {
+        this(clientManagerBuilder, DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @param clientManagerBuilder
+     *      a builder configured with all the settings for pooled ClientManagers, other than the sign in. The pool
+     *      takes ownership of this builder, and it should not be used elsewhere.
+     * @param maximumSize
+     *      the maximum number of ClientManagers kept in the pool
+     * @param expireAfterAccess
+     *      how long a ClientManager can go unused before it is evicted from the pool
+     * @param unit
+     *      the unit of expireAfterAccess
+     */
+    public ClientManagerPool(ClientManager.Builder clientManagerBuilder, long maximumSize, long expireAfterAccess,
+            TimeUnit unit) {
+        this(clientManagerBuilder, maximumSize, expireAfterAccess, unit, Ticker.systemTicker());
+    }
+
+    // Package-scoped for unit tests.
+    ClientManagerPool(ClientManager.Builder clientManagerBuilder, long maximumSize, long expireAfterAccess,
+            TimeUnit unit, Ticker ticker) {
+        checkNotNull(clientManagerBuilder);
+        checkArgument(maximumSize > 0, "maximumSize must be positive");
+        checkArgument(expireAfterAccess > 0, "expireAfterAccess must be positive");
+        checkNotNull(unit);
+        checkNotNull(ticker);
+
+        Cache<String, ApiClientProvider> apiClientProviders = CacheBuilder.newBuilder().build();
+        this.clientManagerBuilder = clientManagerBuilder.withApiClientProviderCache(apiClientProviders);
+        this.clientManagers = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccess, unit)
+                .ticker(ticker)
+                .removalListener(new ClientManagerRemovalListener())
+                .build(new ClientManagerLoader());
+    }
+
+    /**
+     * Get the ClientManager for these credentials, building one if it is not already in the pool.
+     *
+     * @param signIn
+     *      the credentials of a participant or other account, including the appId
+     * @return a ClientManager for the account
+     */
+    public ClientManager get(SignIn signIn) {
+        checkNotNull(signIn, "Sign in must be supplied to ClientManagerPool.");
+        checkNotNull(signIn.getAppId(), "Sign in must have an appId.");
+
+        return clientManagers.getUnchecked(RestUtils.makeInternalCopy(signIn));
+    }
+
+    /**
+     * Remove the ClientManager for these credentials from the pool, e.g. after the account's password has changed.
+     *
+     * @param signIn
+     *      the credentials used to retrieve the ClientManager
+     */
+    public void invalidate(SignIn signIn) {
+        checkNotNull(signIn);
+        clientManagers.invalidate(RestUtils.makeInternalCopy(signIn));
+    }
+
+    /** Remove all ClientManagers from the pool. */
+    public void invalidateAll() {
+        clientManagers.invalidateAll();
+    }
+
+    /** The number of ClientManagers currently in the pool. */
+    public long size() {
+        clientManagers.cleanUp();
+        return clientManagers.size();
+    }
+
+    private class ClientManagerLoader extends CacheLoader<SignIn, ClientManager> {
+        @SuppressWarnings("NullableProblems") // superclass uses nullity-analysis annotations which we are not using
+        @Override
+        public ClientManager load(SignIn signIn) {
+            // The builder is not thread-safe, and is shared by all loads.
+            synchronized (clientManagerBuilder) {
+                return clientManagerBuilder.withSignIn(signIn).build();
+            }
+        }
+    }
+
+    private static class ClientManagerRemovalListener implements RemovalListener<SignIn, ClientManager> {
+        @Override
+        public void onRemoval(RemovalNotification<SignIn, ClientManager> notification) {
+            // Otherwise the refresh task keeps signing in until the ClientManager is garbage collected.
+            ClientManager clientManager = notification.getValue();
+            if (clientManager != null) {
+                UserSessionInfoProvider provider = clientManager.getAuthenticatedClientProvider()
+                        .getUserSessionInfoProvider();
+                if (provider != null) {
+                    provider.stopSessionRefresh();
+                }
+            }
+        }
+    }
+}
@@ -48,6 +48,10 @@ public class Config {
         HOST,
         LANGUAGES,
         LOG_LEVEL, 
+        
+        // Properties for throttling and retrying requests
+        MAX_RETRIES,
+        RATE_LIMIT,
 
         // Convenience properties to set an account to execute SDK with
         ACCOUNT_APP_ID,
@@ -299,6 +303,14 @@ public class Config {
     public String getHost() {
         return fromProperty(Props.HOST);
     }
+    
+    public String getMaxRetries() {
+        return fromProperty(Props.MAX_RETRIES);
+    }
+    
+    public String getRateLimit() {
+        return fromProperty(Props.RATE_LIMIT);
+    }
 
     /**
      * Method to get any of the values that are defined in the bridge-sdk.properties configuration file.
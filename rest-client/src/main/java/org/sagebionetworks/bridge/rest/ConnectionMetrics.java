@@ -0,0 +1,65 @@
+package org.sagebionetworks.bridge.rest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+/**
+ * Counts how often calls made through an {@link ApiClientProvider} were served by a pooled connection, versus how
+ * often a new connection (with its TCP and TLS handshakes) had to be established.
+ */
+public class ConnectionMetrics extends EventListener {
+
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong connectionsFailed = new AtomicLong();
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        connectionsAcquired.incrementAndGet();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        connectionsCreated.incrementAndGet();
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+            IOException ioe) {
+        connectionsFailed.incrementAndGet();
+    }
+
+    /** Total number of times a call acquired a connection, whether pooled or new. */
+    public long getConnectionsAcquired() {
+        return connectionsAcquired.get();
+    }
+
+    /** Number of new connections that were successfully established. */
+    public long getConnectionsCreated() {
+        return connectionsCreated.get();
+    }
+
+    /** Number of attempts to establish a new connection that failed. */
+    public long getConnectionsFailed() {
+        return connectionsFailed.get();
+    }
+
+    /** Number of times a call was served by a connection that was already in the pool. */
+    public long getPoolHits() {
+        return Math.max(0L, connectionsAcquired.get() - connectionsCreated.get());
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionMetrics [connectionsAcquired=" + getConnectionsAcquired() + ", connectionsCreated="
+                + getConnectionsCreated() + ", connectionsFailed=" + getConnectionsFailed() + ", poolHits="
+                + getPoolHits() + "]";
+    }
+}
@@ -0,0 +1,180 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.annotations.SerializedName;
+
+import org.sagebionetworks.bridge.rest.gson.DeduplicatingTypeAdapterFactory;
+
+/**
+ * Settings for how responses are decoded by the clients created through an {@link ApiClientProvider}. Nothing is
+ * changed from the default decoding unless it is set here.
+ */
+public final class DecodingSettings {
+
+    /** The default for the most distinct strings that are shared between decoded objects. */
+    public static final int DEFAULT_STRING_POOL_SIZE = 10000;
+
+    private final ImmutableSet<Class<?>> lazyTypes;
+    private final ImmutableMap<Class<?>, Set<String>> projections;
+    private final ImmutableMap<Class<?>, Set<String>> deduplicatedFields;
+    private final int stringPoolSize;
+
+    private DecodingSettings(ImmutableSet<Class<?>> lazyTypes, ImmutableMap<Class<?>, Set<String>> projections,
+            ImmutableMap<Class<?>, Set<String>> deduplicatedFields, int stringPoolSize) {
+        this.lazyTypes = lazyTypes;
+        this.projections = projections;
+        this.deduplicatedFields = deduplicatedFields;
+        this.stringPoolSize = stringPoolSize;
+    }
+
+    /** Model types whose large collections are decoded when they are first used, rather than on receipt. */
+    public Set<Class<?>> getLazyTypes() {
+        return lazyTypes;
+    }
+
+    /** The JSON names of the fields that are read, for the model types that are only partly decoded. */
+    public Map<Class<?>, Set<String>> getProjections() {
+        return projections;
+    }
+
+    /** The JSON names of the fields whose string values are shared between decoded objects, by model type. */
+    public Map<Class<?>, Set<String>> getDeduplicatedFields() {
+        return deduplicatedFields;
+    }
+
+    /** The most distinct strings that are shared between decoded objects. */
+    public int getStringPoolSize() {
+        return stringPoolSize;
+    }
+
+    public static final class Builder {
+        private final ImmutableSet.Builder<Class<?>> lazyTypes = ImmutableSet.builder();
+        private final Map<Class<?>, Set<String>> projections = new LinkedHashMap<>();
+        private final Map<Class<?>, Set<String>> deduplicatedFields = new LinkedHashMap<>();
+        private int stringPoolSize = DEFAULT_STRING_POOL_SIZE;
+
+        /**
+         * Decode responses of these types lazily: the response is kept, and the fields marked {@code x-lazy} in the
+         * API spec (such as the schedule, sessions and assessments of a Timeline or ParticipantSchedule, or the
+         * elements of a Survey) are only decoded when their getters are first called. This saves time and memory
+         * for callers that only use some of the fields of a large response. Types with no lazily decoded fields
+         * are decoded as usual. A type that is decoded lazily can't also be projected or have its strings
+         * deduplicated.
+         *
+         * @param types
+         *      model classes, e.g. Timeline.class
+         * @return builder
+         */
+        public Builder withLazyDecoding(Class<?>... types) {
+            for (Class<?> type : types) {
+                lazyTypes.add(checkNotNull(type));
+            }
+            return this;
+        }
+
+        /**
+         * Decode only the named fields of this type, wherever it appears in a response. The values of the other fields
+         * are skipped without being decoded, and are left null (or at their defaults) in the objects returned. This
+         * saves time and memory in bulk scans that only need a few fields, e.g. the ids and timestamps of the
+         * AccountSummary objects in each page of a search. Nested objects are projected by their own type, so to read
+         * only some fields of the items in a list, project the item type. Partly decoded objects should not be sent
+         * back to the server in updates.
+         *
+         * @param type
+         *      model class, e.g. AccountSummary.class
+         * @param fieldNames
+         *      the JSON names of the fields to read
+         * @return builder
+         * @throws IllegalArgumentException
+         *      if the type has no field with one of these names
+         */
+        public Builder withProjection(Class<?> type, String... fieldNames) {
+            checkNotNull(type);
+            Set<String> jsonNames = getJsonNames(type);
+            for (String fieldName : fieldNames) {
+                checkArgument(jsonNames.contains(fieldName), "%s has no field named %s", type.getSimpleName(),
+                        fieldName);
+            }
+            projections.put(type, ImmutableSet.copyOf(fieldNames));
+            return this;
+        }
+
+        /**
+         * Share a single instance of each distinct value of these fields between all the objects decoded, rather than
+         * holding a new String for every record. Values like data groups, study IDs and languages repeat across
+         * thousands of records in a list of participants, so this greatly reduces the memory used to keep a large
+         * roster. The fields must be of type String or List&lt;String&gt;.
+         *
+         * @param type
+         *      model class, e.g. AccountSummary.class
+         * @param fieldNames
+         *      the JSON names of the fields to deduplicate
+         * @return builder
+         * @throws IllegalArgumentException
+         *      if the type has no field with one of these names, or the field is not a String or List&lt;String&gt;
+         */
+        public Builder withStringDeduplication(Class<?> type, String... fieldNames) {
+            checkNotNull(type);
+            Set<String> names = ImmutableSet.copyOf(fieldNames);
+            DeduplicatingTypeAdapterFactory.findFields(type, names);
+            deduplicatedFields.put(type, names);
+            return this;
+        }
+
+        /**
+         * Set the most distinct strings that are shared between decoded objects. Once this many are held, other
+         * values are kept as they were decoded. Defaults to {@link #DEFAULT_STRING_POOL_SIZE}.
+         *
+         * @param stringPoolSize
+         *      the maximum number of shared strings
+         * @return builder
+         */
+        public Builder withStringPoolSize(int stringPoolSize) {
+            checkArgument(stringPoolSize > 0, "stringPoolSize must be positive");
+            this.stringPoolSize = stringPoolSize;
+            return this;
+        }
+
+        /**
+         * @return settings
+         * @throws IllegalStateException
+         *      if a type is both decoded lazily and projected, or decoded lazily with deduplicated strings
+         */
+        public DecodingSettings build() {
+            ImmutableSet<Class<?>> lazyTypes = this.lazyTypes.build();
+            for (Class<?> lazyType : lazyTypes) {
+                checkState(!projections.containsKey(lazyType), "%s can't be both decoded lazily and projected",
+                        lazyType.getSimpleName());
+                for (Class<?> type : deduplicatedFields.keySet()) {
+                    checkState(!type.isAssignableFrom(lazyType),
+                            "%s can't be both decoded lazily and have its strings deduplicated",
+                            lazyType.getSimpleName());
+                }
+            }
+            return new DecodingSettings(lazyTypes, ImmutableMap.copyOf(projections),
+                    ImmutableMap.copyOf(deduplicatedFields), stringPoolSize);
+        }
+
+        private static Set<String> getJsonNames(Class<?> type) {
+            Set<String> names = new HashSet<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                    names.add((serializedName != null) ? serializedName.value() : field.getName());
+                }
+            }
+            return names;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Settings for how request bodies are encoded by the clients created through an {@link ApiClientProvider}. Nothing is
+ * changed from the default encoding unless it is set here.
+ */
+public final class EncodingSettings {
+
+    private final boolean streamAll;
+    private final ImmutableSet<Class<?>> streamedTypes;
+    private final boolean knownContentLength;
+
+    private EncodingSettings(boolean streamAll, ImmutableSet<Class<?>> streamedTypes, boolean knownContentLength) {
+        this.streamAll = streamAll;
+        this.streamedTypes = streamedTypes;
+        this.knownContentLength = knownContentLength;
+    }
+
+    /** True if all request bodies are written directly to the connection. */
+    public boolean isStreamAll() {
+        return streamAll;
+    }
+
+    /** Request body types that are written directly to the connection. */
+    public Set<Class<?>> getStreamedTypes() {
+        return streamedTypes;
+    }
+
+    /** True if streamed request bodies are measured before they are sent, so they have a Content-Length. */
+    public boolean isKnownContentLength() {
+        return knownContentLength;
+    }
+
+    /** True if request bodies of this type are written directly to the connection. */
+    public boolean isStreamed(Class<?> type) {
+        return streamAll || streamedTypes.contains(type);
+    }
+
+    public static final class Builder {
+        private boolean streamAll;
+        private final ImmutableSet.Builder<Class<?>> streamedTypes = ImmutableSet.builder();
+        private boolean knownContentLength;
+
+        /**
+         * Write all request bodies as JSON directly to the connection. By default, a request body is first written to
+         * a buffer in memory, so a large body (such as a report with a lot of data) takes twice the memory while it is
+         * sent. Streamed bodies are sent with chunked encoding, unless {@link #withKnownContentLength(boolean)} is
+         * set. They are written again from the object if the request is retried.
+         *
+         * @return builder
+         */
+        public Builder withStreamingRequestBodies() {
+            this.streamAll = true;
+            return this;
+        }
+
+        /**
+         * Write request bodies of these types as JSON directly to the connection, rather than to a buffer in memory
+         * first. This selects the calls that send these types, e.g. ReportData.class for the report calls.
+         *
+         * @param types
+         *      model classes of request bodies, e.g. ReportData.class
+         * @return builder
+         */
+        public Builder withStreamingRequestBodies(Class<?>... types) {
+            for (Class<?> type : types) {
+                streamedTypes.add(checkNotNull(type));
+            }
+            return this;
+        }
+
+        /**
+         * If true, streamed request bodies are written once to measure their length, and then again to send them,
+         * so they are sent with a Content-Length rather than chunked encoding. This costs a second serialization,
+         * but still doesn't hold the body in memory.
+         *
+         * @param knownContentLength
+         *      true to send streamed bodies with a Content-Length
+         * @return builder
+         */
+        public Builder withKnownContentLength(boolean knownContentLength) {
+            this.knownContentLength = knownContentLength;
+            return this;
+        }
+
+        public EncodingSettings build() {
+            return new EncodingSettings(streamAll, streamedTypes.build(), knownContentLength);
+        }
+    }
+}
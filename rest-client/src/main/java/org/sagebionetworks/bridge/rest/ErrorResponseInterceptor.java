@@ -1,30 +1,40 @@
 package org.sagebionetworks.bridge.rest;
 
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.sagebionetworks.bridge.rest.exceptions.AuthenticationFailedException;
+import org.sagebionetworks.bridge.rest.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.rest.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.rest.exceptions.ConsentRequiredException;
+import org.sagebionetworks.bridge.rest.exceptions.ConstraintViolationException;
+import org.sagebionetworks.bridge.rest.exceptions.EndpointNotFoundException;
+import org.sagebionetworks.bridge.rest.exceptions.EntityAlreadyExistsException;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.rest.exceptions.InvalidEntityException;
+import org.sagebionetworks.bridge.rest.exceptions.LimitExceededException;
+import org.sagebionetworks.bridge.rest.exceptions.NotAuthenticatedException;
+import org.sagebionetworks.bridge.rest.exceptions.NotImplementedException;
+import org.sagebionetworks.bridge.rest.exceptions.PublishedEntityException;
+import org.sagebionetworks.bridge.rest.exceptions.PublishedSurveyException;
+import org.sagebionetworks.bridge.rest.exceptions.UnauthorizedException;
+import org.sagebionetworks.bridge.rest.exceptions.UnsupportedVersionException;
 import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
-import com.google.gson.JsonElement;
-import com.google.gson.reflect.TypeToken;
 
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 /**
  * Convert HTTP bad request and server errors to Java business exceptions.
@@ -33,9 +43,182 @@ import okhttp3.Response;
 class ErrorResponseInterceptor implements Interceptor {
 
     private static final Logger logger = LoggerFactory.getLogger(ErrorResponseInterceptor.class);
-    private static final String EXCEPTION_PACKAGE = "org.sagebionetworks.bridge.rest.exceptions.";
-    private static final Type ERRORS_MAP_TYPE_TOKEN 
-        = new TypeToken<HashMap<String, ArrayList<String>>>() {}.getType();
+
+    /** Creates the exception for an error type. */
+    interface ExceptionFactory {
+        BridgeSDKException create(String message, String url, boolean writableStackTrace);
+    }
+
+    /**
+     * Factories for the exceptions of the error types returned by the server, so that no reflection is needed to map
+     * an error response. InvalidEntityException and ConsentRequiredException carry more than a message, and are
+     * created separately. Types not in the registry are thrown as a BridgeSDKException.
+     */
+    static final Map<String, ExceptionFactory> EXCEPTION_FACTORIES = ImmutableMap.<String, ExceptionFactory>builder()
+            .put("AuthenticationFailedException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new AuthenticationFailedException(message, url);
+                }
+            })
+            .put("BadRequestException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new BadRequestException(message, url);
+                }
+            })
+            .put("BridgeServiceException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    if (!writableStackTrace) {
+                        return new StacklessBridgeServiceException(message, url);
+                    }
+                    return new BridgeServiceException(message, url);
+                }
+            })
+            .put("ConcurrentModificationException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new ConcurrentModificationException(message, url);
+                }
+            })
+            .put("ConstraintViolationException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new ConstraintViolationException(message, url);
+                }
+            })
+            .put("EndpointNotFoundException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new EndpointNotFoundException(message, url);
+                }
+            })
+            .put("EntityAlreadyExistsException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new EntityAlreadyExistsException(message, url);
+                }
+            })
+            .put("EntityNotFoundException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new EntityNotFoundException(message, url);
+                }
+            })
+            .put("LimitExceededException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    if (!writableStackTrace) {
+                        return new StacklessLimitExceededException(message, url);
+                    }
+                    return new LimitExceededException(message, url);
+                }
+            })
+            .put("NotAuthenticatedException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new NotAuthenticatedException(message, url);
+                }
+            })
+            .put("NotImplementedException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new NotImplementedException(message, url);
+                }
+            })
+            .put("PublishedEntityException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new PublishedEntityException(message, url);
+                }
+            })
+            .put("PublishedSurveyException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new PublishedSurveyException(message, url);
+                }
+            })
+            .put("UnauthorizedException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new UnauthorizedException(message, url);
+                }
+            })
+            .put("UnsupportedVersionException", new ExceptionFactory() {
+                @Override
+                public BridgeSDKException create(String message, String url, boolean writableStackTrace) {
+                    return new UnsupportedVersionException(message, url);
+                }
+            })
+            .build();
+
+    /*
+     * The stackless exceptions skip filling in the stack trace, but otherwise behave like the exceptions they extend:
+     * the cause can still be set with initCause(). Overriding fillInStackTrace() works on all Android API levels,
+     * unlike the RuntimeException constructor that takes writableStackTrace.
+     */
+
+    @SuppressWarnings("serial")
+    static class StacklessBridgeSDKException extends BridgeSDKException {
+        StacklessBridgeSDKException(String message, int statusCode, String endpoint) {
+            super(message, statusCode, endpoint);
+        }
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static class StacklessBridgeServiceException extends BridgeServiceException {
+        StacklessBridgeServiceException(String message, String endpoint) {
+            super(message, endpoint);
+        }
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static class StacklessLimitExceededException extends LimitExceededException {
+        StacklessLimitExceededException(String message, String endpoint) {
+            super(message, endpoint);
+        }
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /** The parts of an error response that are used to create the exception. */
+    static class ErrorBody {
+        String type;
+        String message;
+        Map<String, List<String>> errors;
+    }
+
+    private final JsonCodec jsonCodec;
+    private final boolean stacklessRetryableErrors;
+
+    ErrorResponseInterceptor() {
+        this(GsonJsonCodec.getDefault());
+    }
+
+    ErrorResponseInterceptor(JsonCodec jsonCodec) {
+        this(jsonCodec, false);
+    }
+
+    /**
+     * @param stacklessRetryableErrors
+     *      if true, the exceptions for 429 and 5xx responses are created without a stack trace. These can arrive in
+     *      volume and are usually retried, so the cost of filling in the stack trace is wasted.
+     */
+    ErrorResponseInterceptor(JsonCodec jsonCodec, boolean stacklessRetryableErrors) {
+        this.jsonCodec = jsonCodec;
+        this.stacklessRetryableErrors = stacklessRetryableErrors;
+    }
 
     @Override
     public Response intercept(Chain chain) throws IOException {
@@ -51,63 +234,64 @@ class ErrorResponseInterceptor implements Interceptor {
     
     private void throwErrorCodeException(Response response) {
         String url = response.request().url().toString();
+        // This does not return an exception message, it returns session object.
+        if (response.code() == 412) {
+            throw new ConsentRequiredException("Consent required.", url,
+                    readBody(response.body(), UserSessionInfo.class));
+        }
+        ErrorBody error = readBody(response.body(), ErrorBody.class);
+        if (error != null && error.type != null) {
+            throwExceptionOnErrorStatus(url, response.code(), error, null);
+        } else {
+            throwExceptionOnErrorStatus(url, response.code(), null, response.message());
+        }
+    }
+
+    /**
+     * Decodes the body directly from the connection. The codec reads only the properties of the type, and skips the
+     * rest of the body.
+     */
+    private <T> T readBody(ResponseBody body, Class<T> type) {
+        if (body == null) {
+            return null;
+        }
         try {
-            JsonElement node = RestUtils.GSON.fromJson(response.body().string(), JsonElement.class);
-            throwExceptionOnErrorStatus(url, response.code(), node, null);
-        } catch (BridgeSDKException e) {
-            throw e; // rethrow known exceptions
+            return jsonCodec.fromJson(body.source(), type);
         } catch (Throwable t) {
-            throwExceptionOnErrorStatus(url, response.code(), null, response.message());
+            logger.debug("Could not read error response body as " + type.getSimpleName(), t);
+            return null;
+        } finally {
+            body.close();
         }
     }
 
-    private void throwExceptionOnErrorStatus(String url, int statusCode, JsonElement node, String message) {
+    private void throwExceptionOnErrorStatus(String url, int statusCode, ErrorBody error, String message) {
         if (Strings.isNullOrEmpty(message)) {
-            if (node != null && node.getAsJsonObject().get("message") != null) {
-                message = node.getAsJsonObject().get("message").getAsString();
+            if (error != null && error.message != null) {
+                message = error.message;
             } else {
                 // Not having a message is actually pretty bad
                 message = "There has been an error on the server";
             }
         }
-        // This does not return an exception message, it returns session object.
-        if (statusCode == 412) {
-            UserSessionInfo session = null;
-            if (node != null) {
-                session = RestUtils.GSON.fromJson(node, UserSessionInfo.class);
-            }
-            throw new ConsentRequiredException("Consent required.", url, session);
-        }
-        String type = (node != null) ? node.getAsJsonObject().get("type").getAsString() : "Unknown";
+        String type = (error != null) ? error.type : "Unknown";
 
         if ("InvalidEntityException".equals(type)) {
             Map<String, List<String>> errors = Maps.newHashMap();
-            if (node != null && node.getAsJsonObject().get("errors") != null) {
-                errors = RestUtils.GSON.fromJson(node.getAsJsonObject().get("errors"), ERRORS_MAP_TYPE_TOKEN);
+            if (error.errors != null) {
+                errors = error.errors;
             }
             throw new InvalidEntityException(message, errors, url);
         }
         
-        throwBridgeExceptionIfItExists(type, message, url);
-
-        throw new BridgeSDKException(message, statusCode, url);
-    }
-
-    @SuppressWarnings("unchecked")
-    private void throwBridgeExceptionIfItExists(String type, String message, String url) {
-        if (type != null && !"Unknown".equals(type)) {
-            try {
-                
-                Class<? extends BridgeSDKException> clazz = (Class<? extends BridgeSDKException>) Class
-                        .forName(EXCEPTION_PACKAGE + type);
-                Constructor<? extends BridgeSDKException> constructor = clazz.getConstructor(String.class, String.class);
-                BridgeSDKException exception = constructor.newInstance(message, url);
-                throw exception;
-                
-            } catch (NoSuchMethodException | ClassNotFoundException | InvocationTargetException | 
-                    IllegalAccessException | InstantiationException e) {
-                logger.debug("Exception instantiating error payload's type: " + type, e);
-            }
+        boolean writableStackTrace = !(stacklessRetryableErrors && (statusCode == 429 || statusCode >= 500));
+        ExceptionFactory factory = EXCEPTION_FACTORIES.get(type);
+        if (factory != null) {
+            throw factory.create(message, url, writableStackTrace);
         }
+        if (!writableStackTrace) {
+            throw new StacklessBridgeSDKException(message, statusCode, url);
+        }
+        throw new BridgeSDKException(message, statusCode, url);
     }
 }
@@ -0,0 +1,130 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * The default {@link JsonCodec}, which reads and writes JSON with Gson.
+ */
+public final class GsonJsonCodec implements JsonCodec {
+    private static final GsonJsonCodec DEFAULT = new GsonJsonCodec(RestUtils.GSON);
+
+    private final Gson gson;
+    private final Converter.Factory converterFactory;
+
+    /**
+     * @param gson
+     *      a Gson instance configured for the Bridge models, such as {@link RestUtils#GSON}
+     */
+    public GsonJsonCodec(Gson gson) {
+        this(gson, ImmutableSet.<Class<?>>of());
+    }
+
+    private GsonJsonCodec(Gson gson, Set<Class<?>> lazyTypes) {
+        this.gson = checkNotNull(gson);
+        Converter.Factory lazyFactory = lazyTypes.isEmpty() ? null : new LazyConverterFactory(gson, lazyTypes);
+        this.converterFactory = new GsonCodecConverterFactory(lazyFactory, GsonConverterFactory.create(gson));
+    }
+
+    /** The codec that uses {@link RestUtils#GSON}. */
+    public static GsonJsonCodec getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * A codec that decodes responses as described by these settings.
+     *
+     * @param decodingSettings
+     *      lazy decoding, projections and string deduplication to apply
+     */
+    public static GsonJsonCodec create(DecodingSettings decodingSettings) {
+        checkNotNull(decodingSettings);
+        Gson gson = RestUtils.GSON;
+        if (!decodingSettings.getProjections().isEmpty() || !decodingSettings.getDeduplicatedFields().isEmpty()) {
+            gson = RestUtils.createGson(!Boolean.getBoolean(RestUtils.REFLECTIVE_GSON_PROPERTY), decodingSettings);
+        }
+        return new GsonJsonCodec(gson, decodingSettings.getLazyTypes());
+    }
+
+    public Gson getGson() {
+        return gson;
+    }
+
+    @Override
+    public Converter.Factory getConverterFactory() {
+        return converterFactory;
+    }
+
+    @Override
+    public <T> T fromJson(BufferedSource source, Type type) throws IOException {
+        try {
+            return gson.fromJson(new InputStreamReader(source.inputStream(), Charsets.UTF_8), type);
+        } catch (JsonIOException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e);
+        } catch (JsonParseException e) {
+            throw new IOException("Could not read JSON as " + type, e);
+        }
+    }
+
+    @Override
+    public void toJson(BufferedSink sink, Object value, Type type) throws IOException {
+        // Buffered, so the encoder is given large chunks rather than each name and value that Gson writes.
+        Writer writer = new BufferedWriter(new OutputStreamWriter(sink.outputStream(), Charsets.UTF_8));
+        try {
+            gson.toJson(value, type, writer);
+        } catch (JsonIOException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e);
+        }
+        writer.flush();
+    }
+
+    /** Tries the lazily decoding converter for the configured types, then Gson's own converters. */
+    private static class GsonCodecConverterFactory extends Converter.Factory {
+        private final Converter.Factory lazyFactory;
+        private final Converter.Factory gsonFactory;
+
+        GsonCodecConverterFactory(Converter.Factory lazyFactory, Converter.Factory gsonFactory) {
+            this.lazyFactory = lazyFactory;
+            this.gsonFactory = gsonFactory;
+        }
+
+        @Override
+        public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                Retrofit retrofit) {
+            if (lazyFactory != null) {
+                Converter<ResponseBody, ?> converter = lazyFactory.responseBodyConverter(type, annotations, retrofit);
+                if (converter != null) {
+                    return converter;
+                }
+            }
+            return gsonFactory.responseBodyConverter(type, annotations, retrofit);
+        }
+
+        @Override
+        public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations,
+                Annotation[] methodAnnotations, Retrofit retrofit) {
+            return gsonFactory.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit);
+        }
+    }
+}
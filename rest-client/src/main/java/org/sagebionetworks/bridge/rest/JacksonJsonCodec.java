@@ -0,0 +1,301 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMethod;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import com.fasterxml.jackson.databind.jsontype.impl.StdTypeResolverBuilder;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.annotations.SerializedName;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import org.sagebionetworks.bridge.rest.gson.IsoDateParser;
+import org.sagebionetworks.bridge.rest.gson.RuntimeTypeAdapterFactory;
+
+/**
+ * A {@link JsonCodec} that reads and writes JSON with Jackson's streaming data binding, as an alternative to the
+ * default {@link GsonJsonCodec}. Jackson is an optional dependency of the SDK, and must be added to an application
+ * that uses this codec.
+ * <p>
+ * The mapper reads and writes the fields of the models under their {@code @SerializedName} names, leaves out null
+ * fields and ignores unknown ones, writes enums as their API values, and reads the polymorphic models (survey
+ * elements, schedule strategies and constraints) by their type field, as the Gson codec does. Values typed only as
+ * Object, such as a participant's clientData, are read as Jackson reads them, so whole numbers are Integers or Longs
+ * rather than the Doubles that Gson returns. The lazy decoding, projections and string deduplication of
+ * {@link DecodingSettings} are not supported.
+ */
+public final class JacksonJsonCodec implements JsonCodec {
+    private static final MediaType MEDIA_TYPE = MediaType.parse("application/json; charset=UTF-8");
+
+    private final ObjectMapper mapper;
+    private final Converter.Factory converterFactory = new JacksonConverterFactory();
+
+    /** A codec with the mapper returned by {@link #createObjectMapper()}. */
+    public JacksonJsonCodec() {
+        this(createObjectMapper());
+    }
+
+    /**
+     * @param mapper
+     *      a mapper configured for the Bridge models, such as one returned by {@link #createObjectMapper()}
+     */
+    public JacksonJsonCodec(ObjectMapper mapper) {
+        this.mapper = checkNotNull(mapper);
+    }
+
+    /** A new ObjectMapper configured to read and write the Bridge models. */
+    public static ObjectMapper createObjectMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setAnnotationIntrospector(new ModelAnnotationIntrospector());
+        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+        SimpleModule module = new SimpleModule("BridgeModels");
+        module.addSerializer(DateTime.class, new DateTimeSerializer());
+        module.addDeserializer(DateTime.class, new DateTimeDeserializer());
+        module.addSerializer(LocalDate.class, new LocalDateSerializer());
+        module.addDeserializer(LocalDate.class, new LocalDateDeserializer());
+        mapper.registerModule(module);
+
+        for (RuntimeTypeAdapterFactory<?> factory : RestUtils.POLYMORPHIC_TYPES) {
+            for (Map.Entry<String, Class<?>> entry : factory.getLabelToSubtype().entrySet()) {
+                mapper.registerSubtypes(new NamedType(entry.getValue(), entry.getKey()));
+            }
+        }
+        return mapper;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return mapper;
+    }
+
+    @Override
+    public Converter.Factory getConverterFactory() {
+        return converterFactory;
+    }
+
+    @Override
+    public <T> T fromJson(BufferedSource source, Type type) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(source.inputStream())) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() == null) {
+                return null;
+            }
+            return mapper.readerFor(mapper.constructType(type)).readValue(parser);
+        }
+    }
+
+    @Override
+    public void toJson(BufferedSink sink, Object value, Type type) throws IOException {
+        mapper.writerFor(mapper.constructType(type)).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValue(sink.outputStream(), value);
+    }
+
+    private class JacksonConverterFactory extends Converter.Factory {
+        @Override
+        public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                Retrofit retrofit) {
+            final ObjectReader reader = mapper.readerFor(mapper.constructType(type));
+            return new Converter<ResponseBody, Object>() {
+                @Override
+                public Object convert(ResponseBody body) throws IOException {
+                    try {
+                        return reader.readValue(body.byteStream());
+                    } finally {
+                        body.close();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations,
+                Annotation[] methodAnnotations, Retrofit retrofit) {
+            final ObjectWriter writer = mapper.writerFor(mapper.constructType(type));
+            return new Converter<Object, RequestBody>() {
+                @Override
+                public RequestBody convert(Object value) throws IOException {
+                    return RequestBody.create(MEDIA_TYPE, writer.writeValueAsBytes(value));
+                }
+            };
+        }
+    }
+
+    /**
+     * Maps the models as Gson does: fields are named by their {@code @SerializedName} annotations, enums are written
+     * and read through the {@code getValue()} and {@code fromValue(String)} methods generated for them, and the
+     * polymorphic base types are read by their type field.
+     */
+    private static class ModelAnnotationIntrospector extends JacksonAnnotationIntrospector {
+        private static final long serialVersionUID = 1L;
+
+        private final ImmutableMap<Class<?>, String> typeFieldNames;
+
+        ModelAnnotationIntrospector() {
+            ImmutableMap.Builder<Class<?>, String> builder = ImmutableMap.builder();
+            for (RuntimeTypeAdapterFactory<?> factory : RestUtils.POLYMORPHIC_TYPES) {
+                builder.put(factory.getBaseType(), factory.getTypeFieldName());
+            }
+            this.typeFieldNames = builder.build();
+        }
+
+        @Override
+        public PropertyName findNameForSerialization(Annotated a) {
+            PropertyName name = findSerializedName(a);
+            return (name != null) ? name : super.findNameForSerialization(a);
+        }
+
+        @Override
+        public PropertyName findNameForDeserialization(Annotated a) {
+            PropertyName name = findSerializedName(a);
+            return (name != null) ? name : super.findNameForDeserialization(a);
+        }
+
+        @Override
+        public Boolean hasAsValue(Annotated a) {
+            if (isEnumMethod(a, "getValue", 0)) {
+                return Boolean.TRUE;
+            }
+            return super.hasAsValue(a);
+        }
+
+        @Override
+        public JsonCreator.Mode findCreatorAnnotation(MapperConfig<?> config, Annotated a) {
+            if (isEnumMethod(a, "fromValue", 1)) {
+                return JsonCreator.Mode.DELEGATING;
+            }
+            return super.findCreatorAnnotation(config, a);
+        }
+
+        @Override
+        public TypeResolverBuilder<?> findTypeResolver(MapperConfig<?> config, AnnotatedClass ac,
+                JavaType baseType) {
+            // Only the base types, as with RuntimeTypeAdapterFactory: a subtype is read as itself.
+            String typeFieldName = typeFieldNames.get(ac.getRawType());
+            if (typeFieldName == null) {
+                return super.findTypeResolver(config, ac, baseType);
+            }
+            return new StdTypeResolverBuilder().init(JsonTypeInfo.Id.NAME, null)
+                    .inclusion(JsonTypeInfo.As.EXISTING_PROPERTY).typeProperty(typeFieldName).typeIdVisibility(true);
+        }
+
+        private static PropertyName findSerializedName(Annotated a) {
+            SerializedName serializedName = a.getAnnotation(SerializedName.class);
+            return (serializedName != null) ? PropertyName.construct(serializedName.value()) : null;
+        }
+
+        private static boolean isEnumMethod(Annotated a, String name, int parameterCount) {
+            if (!(a instanceof AnnotatedMethod)) {
+                return false;
+            }
+            AnnotatedMethod method = (AnnotatedMethod) a;
+            return method.getDeclaringClass().isEnum() && name.equals(method.getName())
+                    && method.getParameterCount() == parameterCount;
+        }
+    }
+
+    private static class DateTimeSerializer extends StdScalarSerializer<DateTime> {
+        private static final long serialVersionUID = 1L;
+        private static final DateTimeFormatter FORMATTER = ISODateTimeFormat.dateTime().withOffsetParsed();
+
+        DateTimeSerializer() {
+            super(DateTime.class);
+        }
+
+        @Override
+        public void serialize(DateTime value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeString(FORMATTER.print(value));
+        }
+    }
+
+    private static class DateTimeDeserializer extends StdScalarDeserializer<DateTime> {
+        private static final long serialVersionUID = 1L;
+        private static final DateTimeFormatter FORMATTER = ISODateTimeFormat.dateTime().withOffsetParsed();
+
+        DateTimeDeserializer() {
+            super(DateTime.class);
+        }
+
+        @Override
+        public DateTime deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.getCurrentToken() != JsonToken.VALUE_STRING) {
+                return (DateTime) ctxt.handleUnexpectedToken(DateTime.class, p);
+            }
+            String src = p.getText();
+            DateTime dateTime = IsoDateParser.parseDateTime(src);
+            return (dateTime != null) ? dateTime : FORMATTER.parseDateTime(src);
+        }
+    }
+
+    private static class LocalDateSerializer extends StdScalarSerializer<LocalDate> {
+        private static final long serialVersionUID = 1L;
+
+        LocalDateSerializer() {
+            super(LocalDate.class);
+        }
+
+        @Override
+        public void serialize(LocalDate value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeString(value.toString());
+        }
+    }
+
+    private static class LocalDateDeserializer extends StdScalarDeserializer<LocalDate> {
+        private static final long serialVersionUID = 1L;
+
+        LocalDateDeserializer() {
+            super(LocalDate.class);
+        }
+
+        @Override
+        public LocalDate deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.getCurrentToken() != JsonToken.VALUE_STRING) {
+                return (LocalDate) ctxt.handleUnexpectedToken(LocalDate.class, p);
+            }
+            String src = p.getText();
+            LocalDate localDate = IsoDateParser.parseLocalDate(src);
+            return (localDate != null) ? localDate : LocalDate.parse(src);
+        }
+    }
+}
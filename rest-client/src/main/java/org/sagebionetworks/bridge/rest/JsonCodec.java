@@ -0,0 +1,39 @@
+package org.sagebionetworks.bridge.rest;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import retrofit2.Converter;
+
+/**
+ * Reads and writes the JSON exchanged with the Bridge server. The clients created by an {@link ApiClientProvider}
+ * convert request and response bodies through {@link #getConverterFactory()}, and the SDK's own interceptors (which
+ * read sessions and error responses) go through the same codec, so an implementation backed by another JSON library
+ * can replace Gson throughout. The default is {@link GsonJsonCodec}.
+ * <p>
+ * An implementation must be able to read and write the model classes, including the subtypes of the polymorphic
+ * models (see the RuntimeTypeAdapterFactory instances in {@link RestUtils}), and must be thread-safe.
+ */
+public interface JsonCodec {
+
+    /** The factory for the Retrofit converters of API request and response bodies. */
+    Converter.Factory getConverterFactory();
+
+    /**
+     * Read a value of the given type.
+     *
+     * @throws IOException
+     *      if the source can't be read, or doesn't hold JSON for a value of this type
+     */
+    <T> T fromJson(BufferedSource source, Type type) throws IOException;
+
+    /**
+     * Write a value of the given type.
+     *
+     * @throws IOException
+     *      if the sink can't be written
+     */
+    void toJson(BufferedSink sink, Object value, Type type) throws IOException;
+}
@@ -0,0 +1,61 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Set;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import org.sagebionetworks.bridge.rest.gson.LazyFields;
+
+/**
+ * Decodes responses of the configured types with their generated {@link LazyFields.LazyReader}, which keeps the
+ * response bytes and reads the large collections when they are first used. Other types are left to the next
+ * converter.
+ */
+class LazyConverterFactory extends Converter.Factory {
+
+    private final Gson gson;
+    private final Set<Class<?>> lazyTypes;
+
+    LazyConverterFactory(Gson gson, Set<Class<?>> lazyTypes) {
+        this.gson = checkNotNull(gson);
+        this.lazyTypes = checkNotNull(lazyTypes);
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        if (!lazyTypes.contains(type)) {
+            return null;
+        }
+        TypeAdapter<?> adapter = gson.getAdapter((Class<?>) type);
+        if (!(adapter instanceof LazyFields.LazyReader)) {
+            return null;
+        }
+        return new LazyResponseConverter<>((LazyFields.LazyReader<?>) adapter);
+    }
+
+    private static class LazyResponseConverter<T> implements Converter<ResponseBody, T> {
+        private final LazyFields.LazyReader<T> reader;
+
+        LazyResponseConverter(LazyFields.LazyReader<T> reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public T convert(ResponseBody body) throws IOException {
+            try {
+                return reader.readLazily(body.bytes());
+            } finally {
+                body.close();
+            }
+        }
+    }
+}
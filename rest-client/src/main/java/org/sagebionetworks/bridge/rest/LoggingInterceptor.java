@@ -1,31 +1,73 @@
 package org.sagebionetworks.bridge.rest;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.sagebionetworks.bridge.rest.HeaderInterceptor.ACCEPT_LANGUAGE;
 import static org.sagebionetworks.bridge.rest.HeaderInterceptor.BRIDGE_SESSION;
 import static org.sagebionetworks.bridge.rest.HeaderInterceptor.USER_AGENT;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import okhttp3.Interceptor;
 import okhttp3.Request;
+import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
 
 /**
- * Log HTTP request and response information for development (debugging level must be 
- * set to DEBUG).
+ * Log HTTP request and response information for development (debugging level must be
+ * set to DEBUG). The {@link LoggingSettings} bound how much of each body is read, and
+ * which exchanges are logged.
  */
 class LoggingInterceptor implements Interceptor {
-    private static final Logger logger = LoggerFactory.getLogger(LoggingInterceptor.class);
+    private static final Logger LOG = LoggerFactory.getLogger(LoggingInterceptor.class);
+    private static final String PASSWORD_KEY = "password\"";
+    private static final String REDACTED = "[REDACTED]";
+    private static final String TRUNCATED = "...[TRUNCATED]";
+    /**
+     * The most bytes logged of a request body that is streamed to the connection. Such a body is not held in memory,
+     * so it is written again to be logged.
+     */
+    static final long MAX_LOGGED_STREAMED_BYTES = 64 * 1024;
+
+    private final LoggingSettings settings;
+    private final Logger logger;
+
+    LoggingInterceptor() {
+        this(LoggingSettings.DEFAULT);
+    }
+
+    LoggingInterceptor(LoggingSettings settings) {
+        this(settings, LOG);
+    }
+
+    LoggingInterceptor(LoggingSettings settings, Logger logger) {
+        this.settings = checkNotNull(settings);
+        this.logger = checkNotNull(logger);
+    }
 
     @Override
     public Response intercept(Chain chain) throws IOException {
         Request request = chain.request();
-        if (logger.isDebugEnabled()) {
+        if (!logger.isDebugEnabled() || !isSampled(request)) {
+            return chain.proceed(request);
+        }
+        LoggedBody requestBody = null;
+        if ("POST".equals(request.method()) && request.body() != null) {
+            requestBody = readRequestBody(request.body());
+        }
+        if (!settings.isStructuredOutput()) {
             // Build one logging statement that is all the headers, content of one request, this is much easier to
             // follow in the logs.
             StringBuilder sb = new StringBuilder();
@@ -41,41 +83,194 @@ class LoggingInterceptor implements Interceptor {
             } else {
                 sb.append("\n    "+BRIDGE_SESSION + ": <NONE>");
             }
-            if ("POST".equals(request.method())) {
-                String body = requestBodyToString(request);
-                if (body.length() > 0) {
-                    sb.append("\n    BODY: "+redactPasswords(body));
-                }
+            if (requestBody != null && !requestBody.text.isEmpty()) {
+                sb.append("\n    BODY: "+requestBody.text);
             }
             logger.debug(sb.toString());
         }
+        long startNanos = System.nanoTime();
         Response response = chain.proceed(request);
-        if (logger.isDebugEnabled()) {
-            ResponseBody body = response.body();
-            String bodyString = response.body().string();
-            
-            Response newResponse = response.newBuilder()
-                    .body(ResponseBody.create(body.contentType(), bodyString.getBytes())).build();
+        long latencyMillis = NANOSECONDS.toMillis(System.nanoTime() - startNanos);
 
-            StringBuilder sb = new StringBuilder();
+        LoggedBody responseBody = (response.body() != null) ? readResponseBody(response.body()) : null;
+        StringBuilder sb = new StringBuilder();
+        if (settings.isStructuredOutput()) {
+            sb.append("method=").append(request.method());
+            sb.append(" path=").append(request.url().encodedPath());
+            sb.append(" status=").append(response.code());
+            sb.append(" latencyMs=").append(latencyMillis);
+            sb.append(" requestBytes=").append((requestBody != null) ? requestBody.getSize() : "0");
+            sb.append(" responseBytes=").append((responseBody != null) ? responseBody.getSize() : "0");
+            if (requestBody != null && settings.getMaxLoggedBytes() > 0) {
+                sb.append(" requestBody=").append(requestBody.text);
+            }
+            if (responseBody != null && settings.getMaxLoggedBytes() > 0) {
+                sb.append(" responseBody=").append(responseBody.text);
+            }
+        } else {
             sb.append("RESPONSE: " + response.request().method()+" "+request.url().toString());
             sb.append("\n    CODE: "+response.code());
-            sb.append("\n    BODY: "+redactPasswords(bodyString));
-
-            logger.debug(sb.toString());
-            return newResponse;
+            sb.append("\n    BODY: "+((responseBody != null) ? responseBody.text : ""));
         }
+        logger.debug(sb.toString());
         return response;
     }
 
-    private String requestBodyToString(final Request request) throws IOException {
-        Request copy = request.newBuilder().build();
-        Buffer buffer = new Buffer();
-        copy.body().writeTo(buffer);
-        return buffer.readUtf8();
+    private boolean isSampled(Request request) {
+        double rate = settings.getSamplingRate(request.url().encodedPath());
+        return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
     }
-    
-    private String redactPasswords(String string) {
-        return string.replaceAll("password\":\"([^\"]*)\"", "password\":\"[REDACTED]\"");
+
+    /**
+     * Writes the request body to a sink that keeps only the logged bytes. Writing stops once there is more than is
+     * logged, so the body is neither held in memory nor written out in full a second time.
+     */
+    private LoggedBody readRequestBody(RequestBody body) throws IOException {
+        long max = settings.getMaxLoggedBytes();
+        if (body instanceof StreamingRequestBody) {
+            max = Math.min(max, MAX_LOGGED_STREAMED_BYTES);
+        }
+        long contentLength = body.contentLength();
+        CappedSink capped = new CappedSink(max);
+        BufferedSink sink = Okio.buffer(capped);
+        try {
+            body.writeTo(sink);
+            sink.flush();
+        } catch (IOException e) {
+            // Thrown by the sink to stop the body from being written past the logged bytes
+            if (!capped.truncated) {
+                throw e;
+            }
+        }
+        long loggedCount = capped.buffer.size();
+        long byteCount = capped.truncated ? contentLength : loggedCount;
+        return new LoggedBody(redact(capped.buffer, capped.truncated), byteCount, loggedCount);
+    }
+
+    /**
+     * Peeks at the response body without consuming it, so the caller reads the same (unbuffered) body. Only as many
+     * bytes as are logged are read ahead from the connection.
+     */
+    private LoggedBody readResponseBody(ResponseBody body) throws IOException {
+        long max = settings.getMaxLoggedBytes();
+        BufferedSource source = body.source();
+        // Read ahead one more byte than is logged, so we know if the body was truncated
+        boolean truncated = source.request((max < Long.MAX_VALUE) ? max + 1 : max);
+        Buffer peeked = new Buffer();
+        Buffer buffer = source.buffer();
+        buffer.copyTo(peeked, 0, Math.min(buffer.size(), max));
+        long loggedCount = peeked.size();
+        long byteCount = truncated ? body.contentLength() : loggedCount;
+        return new LoggedBody(redact(peeked, truncated), byteCount, loggedCount);
+    }
+
+    /**
+     * Decodes the logged bytes, redacting the value of any "password" property. This is done character by character,
+     * so a password that is cut off where the body is truncated is still redacted.
+     */
+    static String redact(Buffer buffer, boolean truncated) {
+        StringBuilder sb = new StringBuilder();
+        int keyIndex = 0;
+        int state = 0; // 0 = scanning, 1 = after key, 2 = after colon, 3 = in password value
+        boolean escaped = false;
+        while (!buffer.exhausted()) {
+            int c;
+            try {
+                c = buffer.readUtf8CodePoint();
+            } catch (EOFException e) {
+                break; // a multi-byte character cut off by truncation
+            }
+            if (state == 3) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    sb.append(REDACTED).append('"');
+                    state = 0;
+                }
+                continue;
+            }
+            sb.appendCodePoint(c);
+            if (state == 1 || state == 2) {
+                if (Character.isWhitespace(c)) {
+                    continue;
+                } else if (state == 1 && c == ':') {
+                    state = 2;
+                    continue;
+                } else if (state == 2 && c == '"') {
+                    state = 3;
+                    continue;
+                }
+                state = 0;
+            }
+            if (c == PASSWORD_KEY.charAt(keyIndex)) {
+                keyIndex++;
+            } else {
+                keyIndex = (c == PASSWORD_KEY.charAt(0)) ? 1 : 0;
+            }
+            if (keyIndex == PASSWORD_KEY.length()) {
+                keyIndex = 0;
+                state = 1;
+            }
+        }
+        if (state == 3) {
+            sb.append(REDACTED);
+        }
+        if (truncated) {
+            sb.append(TRUNCATED);
+        }
+        return sb.toString();
+    }
+
+    private static class LoggedBody {
+        private final String text;
+        /** -1 if the body was truncated and its length is not known. */
+        private final long byteCount;
+        private final long loggedCount;
+
+        LoggedBody(String text, long byteCount, long loggedCount) {
+            this.text = text;
+            this.byteCount = byteCount;
+            this.loggedCount = loggedCount;
+        }
+
+        String getSize() {
+            return (byteCount >= 0) ? Long.toString(byteCount) : ">" + loggedCount + " (truncated)";
+        }
+    }
+
+    /** Keeps the first max bytes written to it, and fails the write that would go past them. */
+    private static class CappedSink implements Sink {
+        private final Buffer buffer = new Buffer();
+        private final long max;
+        private boolean truncated;
+
+        CappedSink(long max) {
+            this.max = max;
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            long kept = Math.min(byteCount, max - buffer.size());
+            buffer.write(source, kept);
+            if (kept < byteCount) {
+                truncated = true;
+                throw new IOException("Logged bytes of request body exceeded");
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
     }
 }
@@ -0,0 +1,138 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Settings for how requests and responses are logged (at the DEBUG level) by the clients created through an
+ * {@link ApiClientProvider}. By default every exchange is logged with its complete bodies, which is only suitable for
+ * development. These settings bound the cost of logging so it can be left on under load.
+ */
+public final class LoggingSettings {
+
+    static final LoggingSettings DEFAULT = new Builder().build();
+
+    private final long maxLoggedBytes;
+    private final double samplingRate;
+    private final ImmutableMap<String, Double> endpointSamplingRates;
+    private final boolean structuredOutput;
+
+    private LoggingSettings(long maxLoggedBytes, double samplingRate,
+            ImmutableMap<String, Double> endpointSamplingRates, boolean structuredOutput) {
+        this.maxLoggedBytes = maxLoggedBytes;
+        this.samplingRate = samplingRate;
+        this.endpointSamplingRates = endpointSamplingRates;
+        this.structuredOutput = structuredOutput;
+    }
+
+    /** Maximum number of bytes of each request and response body that are read for logging. */
+    public long getMaxLoggedBytes() {
+        return maxLoggedBytes;
+    }
+
+    /** Fraction of exchanges that are logged, for endpoints without their own sampling rate. */
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    /** Sampling rates of specific endpoints, keyed by a segment of their path. */
+    public Map<String, Double> getEndpointSamplingRates() {
+        return endpointSamplingRates;
+    }
+
+    /** True if each exchange is logged as a single line of key=value pairs. */
+    public boolean isStructuredOutput() {
+        return structuredOutput;
+    }
+
+    /**
+     * The fraction of exchanges with this path that are logged. This is the rate of the first endpoint whose path
+     * segment is contained in the path (ignoring case), or the default sampling rate.
+     */
+    public double getSamplingRate(String path) {
+        String lowerCasePath = path.toLowerCase();
+        for (Map.Entry<String, Double> entry : endpointSamplingRates.entrySet()) {
+            if (lowerCasePath.contains(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return samplingRate;
+    }
+
+    public static final class Builder {
+        private long maxLoggedBytes = Long.MAX_VALUE;
+        private double samplingRate = 1.0;
+        private final Map<String, Double> endpointSamplingRates = new LinkedHashMap<>();
+        private boolean structuredOutput;
+
+        /**
+         * Read no more than this many bytes of each request and response body for logging. Longer bodies are logged
+         * truncated; the rest of a response body is left unread for the caller, and only counted for a request body.
+         * Passwords are redacted as the body is read, including a password cut off by the limit. Zero logs no bodies.
+         *
+         * @param maxLoggedBytes
+         *      maximum number of bytes of each body to log
+         * @return builder
+         */
+        public Builder withMaxLoggedBytes(long maxLoggedBytes) {
+            checkArgument(maxLoggedBytes >= 0, "maxLoggedBytes cannot be negative");
+            this.maxLoggedBytes = maxLoggedBytes;
+            return this;
+        }
+
+        /**
+         * Log this fraction of exchanges, chosen at random. The request and response of an exchange are both logged,
+         * or neither.
+         *
+         * @param samplingRate
+         *      rate from 0.0 (log nothing) to 1.0 (log everything, the default)
+         * @return builder
+         */
+        public Builder withSamplingRate(double samplingRate) {
+            checkArgument(samplingRate >= 0.0 && samplingRate <= 1.0, "samplingRate must be between 0 and 1");
+            this.samplingRate = samplingRate;
+            return this;
+        }
+
+        /**
+         * Log this fraction of the exchanges with an endpoint, in place of the default sampling rate. If more than
+         * one endpoint matches a path, the first one set is used.
+         *
+         * @param pathSegment
+         *      segment of the endpoint's path, e.g. "/activityevents"
+         * @param samplingRate
+         *      rate from 0.0 (log nothing) to 1.0 (log everything)
+         * @return builder
+         */
+        public Builder withSamplingRate(String pathSegment, double samplingRate) {
+            checkNotNull(pathSegment);
+            checkArgument(samplingRate >= 0.0 && samplingRate <= 1.0, "samplingRate must be between 0 and 1");
+            endpointSamplingRates.put(pathSegment.toLowerCase(), samplingRate);
+            return this;
+        }
+
+        /**
+         * If true, log each exchange once, after the response is received, as a single line of key=value pairs: the
+         * method, path, status, latency and body sizes, followed by the (redacted, truncated) bodies. Otherwise the
+         * request and response are logged separately, with headers, over several lines.
+         *
+         * @param structuredOutput
+         *      true to log one line per exchange
+         * @return builder
+         */
+        public Builder withStructuredOutput(boolean structuredOutput) {
+            this.structuredOutput = structuredOutput;
+            return this;
+        }
+
+        public LoggingSettings build() {
+            return new LoggingSettings(maxLoggedBytes, samplingRate, ImmutableMap.copyOf(endpointSamplingRates),
+                    structuredOutput);
+        }
+    }
+}
@@ -2,13 +2,15 @@ package org.sagebionetworks.bridge.rest;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static java.util.concurrent.TimeUnit.MINUTES;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.FileNameMap;
-import java.net.URI;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -24,8 +26,12 @@ import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
 import org.sagebionetworks.bridge.rest.api.StudiesApi;
 import org.sagebionetworks.bridge.rest.gson.ByteArrayToBase64TypeAdapter;
 import org.sagebionetworks.bridge.rest.gson.DateTimeTypeAdapter;
+import org.sagebionetworks.bridge.rest.gson.DeduplicatingTypeAdapterFactory;
+import org.sagebionetworks.bridge.rest.gson.GeneratedTypeAdapterFactory;
 import org.sagebionetworks.bridge.rest.gson.LocalDateTypeAdapter;
+import org.sagebionetworks.bridge.rest.gson.ProjectionTypeAdapterFactory;
 import org.sagebionetworks.bridge.rest.gson.RuntimeTypeAdapterFactory;
+import org.sagebionetworks.bridge.rest.gson.StringPool;
 import org.sagebionetworks.bridge.rest.model.ABTestScheduleStrategy;
 import org.sagebionetworks.bridge.rest.model.BloodPressureConstraints;
 import org.sagebionetworks.bridge.rest.model.BooleanConstraints;
@@ -62,7 +68,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
-import com.google.common.io.Files;
+import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
@@ -88,6 +94,7 @@ public class RestUtils {
     private static final Predicate<String> LANG_PREDICATE = Predicates.and(Predicates.notNull(),
             Predicates.containsPattern(".+"));
     private static final String BRIDGE_UPLOAD_MIME_TYPE = "application/zip";
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
     private static final String SYNAPSE_BASE_URL_DEV = "https://repo-dev.dev.sagebase.org/";
     private static final String SYNAPSE_BASE_URL_PROD = "https://repo-prod.prod.sagebase.org/";
     private static final String SYNAPSE_LOGIN_URL = "auth/v1/login";
@@ -126,15 +133,53 @@ public class RestUtils {
             .registerSubtype(YearMonthConstraints.class, YearMonthConstraints.class.getSimpleName())
             .registerSubtype(PostalCodeConstraints.class, PostalCodeConstraints.class.getSimpleName())
             .registerSubtype(YearConstraints.class, YearConstraints.class.getSimpleName());
+
+    /** The polymorphic model types, for JSON codecs that are not built on this Gson instance. */
+    static final List<RuntimeTypeAdapterFactory<?>> POLYMORPHIC_TYPES = ImmutableList.<RuntimeTypeAdapterFactory<?>>
+            of(surveyElementFactory, scheduleStrategyFactory, constraintsFactory);
+    
+    /**
+     * Set this system property to "true" to serialize the models with Gson's reflective adapters, rather than the
+     * streaming adapters generated with the models.
+     */
+    public static final String REFLECTIVE_GSON_PROPERTY = "bridge.sdk.gson.reflective";
+    
+    public static final Gson GSON = createGson(!Boolean.getBoolean(REFLECTIVE_GSON_PROPERTY));
     
-    public static final Gson GSON = new GsonBuilder()
-            .registerTypeAdapter(byte[].class, new ByteArrayToBase64TypeAdapter())
-            .registerTypeAdapter(LocalDate.class, new LocalDateTypeAdapter())
-            .registerTypeAdapter(DateTime.class, new DateTimeTypeAdapter())
-            .registerTypeAdapterFactory(surveyElementFactory)
-            .registerTypeAdapterFactory(scheduleStrategyFactory)
-            .registerTypeAdapterFactory(constraintsFactory)
-            .create();
+    static Gson createGson(boolean useGeneratedAdapters) {
+        return createGson(useGeneratedAdapters, new DecodingSettings.Builder().build());
+    }
+
+    /**
+     * Create a Gson instance that applies the projections and string deduplication of these settings. Projections
+     * need the generated adapters, and have no effect without them.
+     */
+    static Gson createGson(boolean useGeneratedAdapters, DecodingSettings decodingSettings) {
+        GsonBuilder builder = new GsonBuilder();
+        if (useGeneratedAdapters) {
+            // Registered first so the adapters and factories below take precedence over it.
+            String modelPackage = SurveyElement.class.getPackage().getName();
+            builder.registerTypeAdapterFactory(new GeneratedTypeAdapterFactory(modelPackage));
+            if (!decodingSettings.getProjections().isEmpty()) {
+                // Ahead of the polymorphic type factories, which delegate to it for their subtypes.
+                builder.registerTypeAdapterFactory(new ProjectionTypeAdapterFactory(
+                        decodingSettings.getProjections()));
+            }
+        }
+        if (!decodingSettings.getDeduplicatedFields().isEmpty()) {
+            // Wraps the model adapters above, and is ahead of the polymorphic type factories so they delegate to it
+            // for their subtypes.
+            builder.registerTypeAdapterFactory(new DeduplicatingTypeAdapterFactory(
+                    decodingSettings.getDeduplicatedFields(), new StringPool(decodingSettings.getStringPoolSize())));
+        }
+        builder.registerTypeAdapter(byte[].class, new ByteArrayToBase64TypeAdapter())
+                .registerTypeAdapter(LocalDate.class, new LocalDateTypeAdapter())
+                .registerTypeAdapter(DateTime.class, new DateTimeTypeAdapter())
+                .registerTypeAdapterFactory(surveyElementFactory)
+                .registerTypeAdapterFactory(scheduleStrategyFactory)
+                .registerTypeAdapterFactory(constraintsFactory);
+        return builder.create();
+    }
     
     static <T> T last(List<T> list) {
         return (list == null || list.isEmpty()) ? null : list.get(list.size()-1);
@@ -150,7 +195,9 @@ public class RestUtils {
      * @return the object to downcast to the supplied type
      */
     public static <T> T toType(Object object, Class<T> type) {
-        return GSON.fromJson(GSON.toJson(object), type);
+        // Convert through a tree rather than a JSON string, which would have to be written out and parsed again.
+        JsonElement element = (object instanceof JsonElement) ? (JsonElement) object : GSON.toJsonTree(object);
+        return GSON.fromJson(element, type);
     }
     
     /**
@@ -299,12 +346,34 @@ public class RestUtils {
      *      IOException if an issue occurs during upload. Callers are responsible for re-trying the upload
      */
     public static UploadSession upload(ForConsentedUsersApi usersApi, File file) throws IOException {
+        return upload(usersApi, getDefaultS3Uploader(), file);
+    }
+
+    /**
+     * Manages the conversation with the Bridge server and Amazon's S3 service to upload an encrypted zip
+     * file to Bridge, using the given S3Uploader (generally {@link ClientManager#getS3Uploader()}) so that
+     * connections to S3 are reused across uploads.
+     *
+     * @param usersApi
+     *      The ForConsentedUsersApi for the user making the upload
+     * @param s3Uploader
+     *      The S3Uploader to upload the file with
+     * @param file
+     *      A File referencing a zip file to upload
+     * @return
+     *      An UploadSession with information about the upload session
+     * @throws IOException
+     *      IOException if an issue occurs during upload. Callers are responsible for re-trying the upload
+     */
+    public static UploadSession upload(ForConsentedUsersApi usersApi, S3Uploader s3Uploader, File file)
+            throws IOException {
         checkNotNull(usersApi, "ForConsentedUsersApi cannot be null");
+        checkNotNull(s3Uploader, "S3Uploader cannot be null");
         checkNotNull(file, "File cannot be null");
 
         UploadRequest request = makeUploadRequestForFile(file);
         UploadSession session = usersApi.requestUploadSession(request).execute().body();
-        uploadToS3(file, session.getUrl());
+        s3Uploader.uploadToS3(file, session.getUrl(), request.getContentType(), request.getContentMd5());
         usersApi.completeUploadSession(session.getId(), false, false).execute();
         
         return session;
@@ -320,12 +389,18 @@ public class RestUtils {
      *         IOException if an issue occurs during upload. Callers are responsible for re-trying the upload
      */
     public static UploadRequest makeUploadRequestForFile(File file) throws IOException {
+        return makeUploadRequestForFile(file, null);
+    }
+
+    /** Creates an upload request for the given file, using the MD5 if it has already been calculated. */
+    static UploadRequest makeUploadRequestForFile(File file, String contentMd5) throws IOException {
         checkNotNull(file, "File cannot be null");
 
         // File metadata
         long contentLength = file.length();
-        byte[] fileBytes = Files.toByteArray(file);
-        String contentMd5 = Base64.encodeBase64String(DigestUtils.md5(fileBytes));
+        if (contentMd5 == null) {
+            contentMd5 = getContentMd5(file);
+        }
 
         // Create and return request
         UploadRequest request = new UploadRequest();
@@ -337,6 +412,32 @@ public class RestUtils {
         return request;
     }
 
+    /**
+     * Calculates the Base64-encoded MD5 of a file, as expected in the contentMd5 of an UploadRequest and the
+     * Content-MD5 header of the S3 upload. The file is read through a fixed-size buffer, so memory use does not
+     * depend on the size of the file.
+     *
+     * @param file
+     *         File to digest
+     * @return Base64-encoded MD5 of the file contents
+     * @throws IOException
+     *         IOException if the file cannot be read
+     */
+    public static String getContentMd5(File file) throws IOException {
+        checkNotNull(file, "File cannot be null");
+
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        ByteBuffer buffer = ByteBuffer.allocate(DIGEST_BUFFER_SIZE);
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return Base64.encodeBase64String(digest.digest());
+    }
+
     /**
      * Uploads the given file to the given S3 URL. This method assumes the default content type of "application/zip".
      *
@@ -365,37 +466,26 @@ public class RestUtils {
      */
     public static void uploadToS3(File file, String url, String contentType) throws IOException {
         checkNotNull(file, "File cannot be null");
-        checkNotNull(url, "url cannot be null");
-        checkArgument(!url.isEmpty(), "url cannot be empty");
-        checkNotNull(contentType, "contentType cannot be null");
-        checkArgument(!contentType.isEmpty(), "contentType cannot be empty");
-        MediaType contentTypeParsed = MediaType.parse(contentType);
-
-        // File metadata
-        byte[] fileBytes = Files.toByteArray(file);
-        String contentMd5 = Base64.encodeBase64String(DigestUtils.md5(fileBytes));
-
-        // Construct S3 client
-        URI uri = URI.create(url);
-        String baseUrl = uri.getScheme()+"://"+uri.getHost()+"/";
-
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .addInterceptor(new ErrorResponseInterceptor())
-                .addInterceptor(new LoggingInterceptor())
-                .retryOnConnectionFailure(false).build();
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(baseUrl)
-                .client(client).build();
-
-        S3Service s3service = retrofit.create(S3Service.class);
-
-        RequestBody body = RequestBody.create(contentTypeParsed, file);
+        uploadToS3(file, url, contentType, getContentMd5(file));
+    }
 
-        // Upload
-        s3service.uploadToS3(url, body, contentMd5, contentType).execute();
+    /**
+     * Uploads the given file to the given S3 URL, using an MD5 that has already been calculated for the file (e.g.
+     * the contentMd5 of the UploadRequest for the file), so the file is not read an extra time.
+     *
+     * @param file
+     *         File to upload to Bridge
+     * @param url
+     *         S3 URL to upload to, generally as returned by Bridge Upload Session
+     * @param contentType
+     *         MIME type of the uploaded file, must match what was sent in the upload request
+     * @param contentMd5
+     *         Base64-encoded MD5 of the file, must match what was sent in the upload request
+     * @throws IOException
+     *         IOException if an issue occurs during upload. Callers are responsible for re-trying the upload
+     */
+    public static void uploadToS3(File file, String url, String contentType, String contentMd5) throws IOException {
+        getDefaultS3Uploader().uploadToS3(file, url, contentType, contentMd5);
     }
     
     /**
@@ -432,26 +522,11 @@ public class RestUtils {
         revision.setSize(size);
         
         String contentDisposition = "attachment; filename=\""+ revision.getName() +"\"";
-        RequestBody body = RequestBody.create(MediaType.parse(revision.getMimeType()), file);
         
         FileRevision updated = fileApi.createFileRevision(fileGuid, revision).execute().body();
         
-        URI uri = URI.create(updated.getUploadURL());
-        String baseUrl = uri.getScheme()+"://"+uri.getHost()+"/";
-
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(5, MINUTES)
-                .readTimeout(5, MINUTES)
-                .writeTimeout(5, MINUTES)
-                .addInterceptor(new ErrorResponseInterceptor())
-                .addInterceptor(new LoggingInterceptor())
-                .retryOnConnectionFailure(false).build();
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(baseUrl)
-                .client(client).build();
-
-        retrofit.create(HostS3Service.class).uploadToS3(
-                updated.getUploadURL(), body, contentDisposition, updated.getMimeType()).execute();
+        getDefaultS3Uploader().uploadHostedFileToS3(file, updated.getUploadURL(), contentDisposition,
+                updated.getMimeType());
         
         fileApi.finishFileRevision(fileGuid, updated.getCreatedOn()).execute();
         return updated.getDownloadURL();
@@ -476,26 +551,11 @@ public class RestUtils {
         revision.setSize(size);
         
         String contentDisposition = "inline";
-        RequestBody body = RequestBody.create(MediaType.parse(revision.getMimeType()), file);
         
         FileRevision updated = studiesApi.createStudyLogo(studyId, revision).execute().body();
         
-        URI uri = URI.create(updated.getUploadURL());
-        String baseUrl = uri.getScheme()+"://"+uri.getHost()+"/";
-
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(5, MINUTES)
-                .readTimeout(5, MINUTES)
-                .writeTimeout(5, MINUTES)
-                .addInterceptor(new ErrorResponseInterceptor())
-                .addInterceptor(new LoggingInterceptor())
-                .retryOnConnectionFailure(false).build();
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(baseUrl)
-                .client(client).build();
-
-        retrofit.create(HostS3Service.class).uploadToS3(
-                updated.getUploadURL(), body, contentDisposition, updated.getMimeType()).execute();
+        getDefaultS3Uploader().uploadHostedFileToS3(file, updated.getUploadURL(), contentDisposition,
+                updated.getMimeType());
 
         studiesApi.finishStudyLogoUpload(studyId, updated.getCreatedOn()).execute();
         return updated.getDownloadURL();
@@ -595,6 +655,8 @@ public class RestUtils {
         if (signIn != null) {
             signInKey = new SignIn();
             signInKey.email(signIn.getEmail())
+                    .phone(signIn.getPhone())
+                    .externalId(signIn.getExternalId())
                     .password(signIn.getPassword())
                     .appId(signIn.getAppId());
         }
@@ -602,6 +664,15 @@ public class RestUtils {
         return signInKey;
     }
     
+    private static class DefaultS3UploaderHolder {
+        static final S3Uploader INSTANCE = new S3Uploader(new OkHttpClient(), null);
+    }
+
+    /** The S3Uploader used by the static upload methods that aren't given one. */
+    static S3Uploader getDefaultS3Uploader() {
+        return DefaultS3UploaderHolder.INSTANCE;
+    }
+    
     interface SynapseSignIn {
         @POST
         Call<JsonObject> synapseSignIn(@Url String url, @Body RequestBody body);
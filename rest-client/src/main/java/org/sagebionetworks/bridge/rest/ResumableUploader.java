@@ -0,0 +1,240 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonObject;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.UploadJournal.State;
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.api.ParticipantFilesApi;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.model.ParticipantFile;
+import org.sagebionetworks.bridge.rest.model.UploadRequest;
+import org.sagebionetworks.bridge.rest.model.UploadSession;
+
+/**
+ * Uploads files so that an upload interrupted by a network failure or a restart of the app can be resumed. Progress
+ * is recorded in an {@link UploadJournal} after each step, and calling the same method again for the same file
+ * continues from the last step that was confirmed: the upload URL that was already obtained is reused (as long as it
+ * has not expired), the file is not digested again, and an upload that already reached S3 is only completed. The
+ * journal is deleted once the upload has finished. Upload URLs are dropped from the journal once they expire, and
+ * when a journal directory is used, journals of files that no longer exist are deleted.
+ * <p>
+ * The upload URLs handed out by Bridge are presigned for a single PUT of the whole file, so the S3 step itself is
+ * retried as a whole when it fails.
+ */
+public class ResumableUploader {
+    private static final Logger LOG = LoggerFactory.getLogger(ResumableUploader.class);
+
+    private static final String UPLOAD_SESSION = "uploadSession";
+    private static final String PARTICIPANT_FILE = "participantFile";
+    private static final String CONTENT_MD5 = "contentMd5";
+    private static final String CONTENT_TYPE = "contentType";
+    private static final String URL = "url";
+
+    private static final int FORBIDDEN = 403;
+    /** Upload URLs that expire within this time are not reused. */
+    private static final long EXPIRATION_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long DEFAULT_RETRY_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private final S3Uploader s3Uploader;
+    private final File journalDirectory;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+
+    /**
+     * @param s3Uploader
+     *         The S3Uploader to upload files with, generally {@link ClientManager#getS3Uploader()}
+     * @param journalDirectory
+     *         directory for the upload journals, or null to keep each journal next to the file it describes
+     */
+    public ResumableUploader(S3Uploader s3Uploader, File journalDirectory) {
+        this(s3Uploader, journalDirectory, DEFAULT_MAX_RETRIES, DEFAULT_RETRY_BACKOFF_MILLIS);
+        if (journalDirectory != null) {
+            try {
+                UploadJournal.cleanUp(journalDirectory);
+            } catch (IOException e) {
+                LOG.warn("Could not clean up upload journals in " + journalDirectory.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    ResumableUploader(S3Uploader s3Uploader, File journalDirectory, int maxRetries, long retryBackoffMillis) {
+        checkNotNull(s3Uploader, "S3Uploader cannot be null");
+        checkArgument(journalDirectory == null || journalDirectory.isDirectory(),
+                "journalDirectory must be a directory");
+        this.s3Uploader = s3Uploader;
+        this.journalDirectory = journalDirectory;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    /**
+     * Uploads an encrypted zip file to Bridge, resuming a previous attempt to upload the same file if there is one.
+     * This is the resumable equivalent of {@link RestUtils#upload(ForConsentedUsersApi, S3Uploader, File)}.
+     *
+     * @param usersApi
+     *      The ForConsentedUsersApi for the user making the upload
+     * @param file
+     *      A File referencing a zip file to upload
+     * @return
+     *      An UploadSession with information about the upload session. If the upload resumed after the file had
+     *      already been uploaded to S3, the session's url is null: the URL is removed from the journal once used.
+     * @throws IOException
+     *      IOException if an issue occurs during upload. Calling this method again resumes the upload.
+     */
+    public UploadSession upload(ForConsentedUsersApi usersApi, File file) throws IOException {
+        checkNotNull(usersApi, "ForConsentedUsersApi cannot be null");
+        checkNotNull(file, "File cannot be null");
+
+        UploadJournal journal = UploadJournal.open(journalDirectory, file);
+        for (boolean renewed = false; ; renewed = true) {
+            if (journal.getState() == State.REQUESTED) {
+                // The session is dropped from the journal once its URL has expired
+                String sessionJson = journal.get(UPLOAD_SESSION);
+                if (sessionJson == null ||
+                        isExpired(RestUtils.GSON.fromJson(sessionJson, UploadSession.class).getExpires())) {
+                    restart(journal);
+                }
+            }
+            if (journal.getState() == State.NEW) {
+                // The MD5 is kept through restarts, so a large file is only digested once.
+                UploadRequest request = RestUtils.makeUploadRequestForFile(file, journal.get(CONTENT_MD5));
+                UploadSession session = usersApi.requestUploadSession(request).execute().body();
+                journal.put(CONTENT_MD5, request.getContentMd5()).put(CONTENT_TYPE, request.getContentType())
+                        .put(UPLOAD_SESSION, RestUtils.GSON.toJson(session), session.getExpires())
+                        .save(State.REQUESTED);
+            }
+            UploadSession session = RestUtils.GSON.fromJson(journal.get(UPLOAD_SESSION), UploadSession.class);
+            if (journal.getState() == State.REQUESTED) {
+                try {
+                    putWithRetries(file, session.getUrl(), journal.get(CONTENT_TYPE), journal.get(CONTENT_MD5),
+                            null);
+                } catch (BridgeSDKException e) {
+                    if (e.getStatusCode() == FORBIDDEN && !renewed) {
+                        // S3 rejects an upload URL that has expired; get a new one and try again, once.
+                        restart(journal);
+                        continue;
+                    }
+                    throw e;
+                }
+                // The upload URL is used up; keep the rest of the session for the completion step.
+                JsonObject uploadedSession = RestUtils.GSON.toJsonTree(session).getAsJsonObject();
+                uploadedSession.remove(URL);
+                journal.put(UPLOAD_SESSION, uploadedSession.toString()).save(State.UPLOADED);
+            }
+            if (journal.getState() == State.UPLOADED) {
+                usersApi.completeUploadSession(session.getId(), false, false).execute();
+                journal.save(State.COMPLETED);
+            }
+            journal.delete();
+            return session;
+        }
+    }
+
+    /**
+     * Uploads a participant file, resuming a previous attempt to upload the same file if there is one.
+     *
+     * @param filesApi
+     *      The ParticipantFilesApi for the user making the upload
+     * @param fileId
+     *      The ID of the participant file
+     * @param file
+     *      The file to upload
+     * @param mimeType
+     *      The MIME type of the file
+     * @return
+     *      The ParticipantFile created by Bridge
+     * @throws IOException
+     *      IOException if an issue occurs during upload. Calling this method again resumes the upload.
+     */
+    public ParticipantFile uploadParticipantFile(ParticipantFilesApi filesApi, String fileId, File file,
+            String mimeType) throws IOException {
+        checkNotNull(filesApi, "ParticipantFilesApi cannot be null");
+        checkNotNull(fileId, "fileId cannot be null");
+        checkNotNull(file, "File cannot be null");
+        checkNotNull(mimeType, "mimeType cannot be null");
+
+        UploadJournal journal = UploadJournal.open(journalDirectory, file);
+        for (boolean renewed = false; ; renewed = true) {
+            if (journal.getState() == State.REQUESTED) {
+                String participantFileJson = journal.get(PARTICIPANT_FILE);
+                ParticipantFile participantFile = (participantFileJson == null) ? null :
+                        RestUtils.GSON.fromJson(participantFileJson, ParticipantFile.class);
+                if (participantFile == null || !fileId.equals(participantFile.getFileId()) ||
+                        isExpired(participantFile.getExpiresOn())) {
+                    restart(journal);
+                }
+            }
+            if (journal.getState() == State.NEW) {
+                ParticipantFile participantFile = filesApi.createParticipantFile(fileId,
+                        new ParticipantFile().fileId(fileId).mimeType(mimeType)).execute().body();
+                journal.put(CONTENT_TYPE, mimeType)
+                        .put(PARTICIPANT_FILE, RestUtils.GSON.toJson(participantFile),
+                                participantFile.getExpiresOn())
+                        .save(State.REQUESTED);
+            }
+            ParticipantFile participantFile = RestUtils.GSON.fromJson(journal.get(PARTICIPANT_FILE),
+                    ParticipantFile.class);
+            if (journal.getState() == State.REQUESTED) {
+                try {
+                    putWithRetries(file, participantFile.getUploadUrl(), journal.get(CONTENT_TYPE), null, null);
+                } catch (BridgeSDKException e) {
+                    if (e.getStatusCode() == FORBIDDEN && !renewed) {
+                        restart(journal);
+                        continue;
+                    }
+                    throw e;
+                }
+                // There is no completion step for participant files.
+                journal.save(State.COMPLETED);
+            }
+            journal.delete();
+            return participantFile;
+        }
+    }
+
+    private void putWithRetries(File file, String url, String contentType, String contentMd5,
+            String contentDisposition) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (contentMd5 != null) {
+                    s3Uploader.uploadToS3(file, url, contentType, contentMd5);
+                } else {
+                    s3Uploader.uploadHostedFileToS3(file, url, contentDisposition, contentType);
+                }
+                return;
+            } catch (IOException | BridgeSDKException e) {
+                if (attempt >= maxRetries || !BulkUploader.isTransient(e)) {
+                    throw e;
+                }
+                LOG.info("Upload of " + file.getName() + " failed (" + e.getMessage() + "), retrying");
+                try {
+                    Thread.sleep(BulkUploader.backoffMillis(retryBackoffMillis, attempt));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static void restart(UploadJournal journal) {
+        String contentMd5 = journal.get(CONTENT_MD5);
+        journal.reset();
+        journal.put(CONTENT_MD5, contentMd5);
+    }
+
+    private static boolean isExpired(DateTime expiresOn) {
+        return expiresOn != null && expiresOn.minus(EXPIRATION_MARGIN_MILLIS).isBeforeNow();
+    }
+}
@@ -0,0 +1,133 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Throttles requests to a shared rate, and retries requests the server turned away as too many (429) or unavailable
+ * (502, 503, 504). The server does not process a request it rejects with a 429, so these are retried for any call;
+ * a 5xx response is only retried for idempotent calls. The delay before each retry is the server's Retry-After
+ * header if present, otherwise a jittered exponential backoff. If the server asks for a longer wait than the maximum
+ * delay, or the retries are used up, the last response is returned (and mapped to an exception as usual).
+ */
+class RetryInterceptor implements Interceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(RetryInterceptor.class);
+    static final String RETRY_AFTER = "Retry-After";
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final long maxRetryDelayMillis;
+    private final RateLimiter rateLimiter;
+
+    /**
+     * @param maxRetries
+     *      number of times a request is retried, after the first attempt
+     * @param retryBackoffMillis
+     *      upper bound of the delay before the first retry, which doubles with each retry
+     * @param maxRetryDelayMillis
+     *      longest delay before any retry, including a delay requested by the server
+     * @param rateLimiter
+     *      limiter each attempt must acquire a permit from, or null to send requests as they are made
+     */
+    RetryInterceptor(int maxRetries, long retryBackoffMillis, long maxRetryDelayMillis, RateLimiter rateLimiter) {
+        checkArgument(maxRetries >= 0, "maxRetries cannot be negative");
+        checkArgument(retryBackoffMillis > 0, "retryBackoffMillis must be positive");
+        checkArgument(maxRetryDelayMillis >= retryBackoffMillis,
+                "maxRetryDelayMillis cannot be less than retryBackoffMillis");
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+        this.rateLimiter = rateLimiter;
+    }
+
+    // Package-scoped for unit tests.
+    RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        for (int attempt = 0; ; attempt++) {
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+            Response response = chain.proceed(request);
+            if (attempt >= maxRetries || !isRetryable(request, response)) {
+                return response;
+            }
+            long delayMillis = getRetryDelayMillis(response, attempt);
+            if (delayMillis > maxRetryDelayMillis) {
+                return response;
+            }
+            LOG.info(request.method() + " " + request.url().encodedPath() + " returned " + response.code()
+                    + ", retrying in " + delayMillis + "ms");
+            response.close();
+            sleep(delayMillis);
+        }
+    }
+
+    static boolean isRetryable(Request request, Response response) {
+        int code = response.code();
+        if (code == TOO_MANY_REQUESTS) {
+            return true;
+        }
+        if (code != 502 && code != 503 && code != 504) {
+            return false;
+        }
+        RouteMetadata route = RouteMetadata.forRequest(request);
+        return (route != null) ? route.isIdempotent() : isIdempotent(request.method());
+    }
+
+    private static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method) || "DELETE".equals(method)
+                || "OPTIONS".equals(method);
+    }
+
+    /**
+     * The delay the server asked for in a Retry-After header (in seconds, or as an HTTP date), otherwise a random
+     * delay up to the backoff for this attempt ("full jitter"), so clients that failed together do not retry
+     * together.
+     */
+    long getRetryDelayMillis(Response response, int attempt) {
+        String retryAfter = response.header(RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Math.max(0L, Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException e) {
+                Date date = response.headers().getDate(RETRY_AFTER);
+                if (date != null) {
+                    return Math.max(0L, date.getTime() - System.currentTimeMillis());
+                }
+            }
+        }
+        // Beyond 30 doublings the backoff is capped anyway, and shifting further could overflow
+        long backoffMillis = (attempt < 30) ?
+                Math.min(maxRetryDelayMillis, retryBackoffMillis << attempt) : maxRetryDelayMillis;
+        return ThreadLocalRandom.current().nextLong(backoffMillis + 1);
+    }
+
+    // Package-scoped so tests can skip the wait.
+    void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry request");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.sagebionetworks.bridge.rest;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Metadata about an API operation, taken from the swagger spec when the API interfaces are generated. The client
+ * reads this to decide how to handle a call, rather than matching on the request's URL.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RouteInfo {
+
+    /** The operation's ID in the spec, which is also the name of the API method. */
+    String operationId();
+
+    /** True if the spec declares that the operation is called with the Bridge-Session header. */
+    boolean authenticated();
+
+    /** True if the operation returns the caller's new session (x-updates-session in the spec). */
+    boolean updatesSession() default false;
+
+    /** True if the operation ends the caller's session (x-clears-session in the spec). */
+    boolean clearsSession() default false;
+}
@@ -0,0 +1,133 @@
+package org.sagebionetworks.bridge.rest;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import okhttp3.Request;
+import retrofit2.Invocation;
+import retrofit2.http.DELETE;
+import retrofit2.http.GET;
+import retrofit2.http.HEAD;
+import retrofit2.http.OPTIONS;
+import retrofit2.http.PATCH;
+import retrofit2.http.POST;
+import retrofit2.http.PUT;
+
+/**
+ * How a call to an API operation is handled, derived once per API method from its {@link RouteInfo} and HTTP
+ * annotations. Retrofit tags each request with the {@link Invocation} of the API method, so the interceptors look up
+ * this metadata rather than scanning the URL of every request.
+ */
+final class RouteMetadata {
+    private static final String AUTH_PATH = "/auth/";
+    private static final RouteMetadata NONE = new RouteMetadata(false, false, false, false, false);
+    private static final ConcurrentMap<Method, RouteMetadata> ROUTES = new ConcurrentHashMap<>();
+
+    private final boolean requiresSession;
+    private final boolean authRoute;
+    private final boolean updatesSession;
+    private final boolean clearsSession;
+    private final boolean idempotent;
+
+    private RouteMetadata(boolean requiresSession, boolean authRoute, boolean updatesSession, boolean clearsSession,
+            boolean idempotent) {
+        this.requiresSession = requiresSession;
+        this.authRoute = authRoute;
+        this.updatesSession = updatesSession;
+        this.clearsSession = clearsSession;
+        this.idempotent = idempotent;
+    }
+
+    /**
+     * The metadata of the API operation that made this request, or null if the request was not made through one of
+     * the generated API interfaces.
+     */
+    static RouteMetadata forRequest(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        return (invocation == null) ? null : forMethod(invocation.method());
+    }
+
+    /** The metadata of this API method, or null if it has no {@link RouteInfo}. */
+    static RouteMetadata forMethod(Method method) {
+        RouteMetadata route = ROUTES.get(method);
+        if (route == null) {
+            route = create(method.getAnnotation(RouteInfo.class), method.getAnnotations());
+            ROUTES.putIfAbsent(method, route);
+        }
+        return (route == NONE) ? null : route;
+    }
+
+    /** The metadata of the API method with these annotations, or null if it has no {@link RouteInfo}. */
+    static RouteMetadata forAnnotations(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof RouteInfo) {
+                return create((RouteInfo) annotation, annotations);
+            }
+        }
+        return null;
+    }
+
+    private static RouteMetadata create(RouteInfo info, Annotation[] annotations) {
+        if (info == null) {
+            return NONE;
+        }
+        String path = null;
+        boolean idempotent = false;
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof GET) {
+                path = ((GET) annotation).value();
+                idempotent = true;
+            } else if (annotation instanceof HEAD) {
+                path = ((HEAD) annotation).value();
+                idempotent = true;
+            } else if (annotation instanceof PUT) {
+                path = ((PUT) annotation).value();
+                idempotent = true;
+            } else if (annotation instanceof DELETE) {
+                path = ((DELETE) annotation).value();
+                idempotent = true;
+            } else if (annotation instanceof OPTIONS) {
+                path = ((OPTIONS) annotation).value();
+                idempotent = true;
+            } else if (annotation instanceof POST) {
+                path = ((POST) annotation).value();
+            } else if (annotation instanceof PATCH) {
+                path = ((PATCH) annotation).value();
+            }
+        }
+        // Everything outside of the auth API requires a session, whether or not the spec declares it.
+        boolean authRoute = path != null && ("/" + path).contains(AUTH_PATH);
+        return new RouteMetadata(info.authenticated() || !authRoute, authRoute, info.updatesSession(),
+                info.clearsSession(), idempotent);
+    }
+
+    /** True if the request is sent with the caller's session token. */
+    boolean isRequiresSession() {
+        return requiresSession;
+    }
+
+    /**
+     * True if the operation is part of the authentication API (signing in and out, changing apps). The client does
+     * not reauthenticate and retry these calls when they fail with a 401.
+     */
+    boolean isAuthRoute() {
+        return authRoute;
+    }
+
+    /** True if a successful response is the caller's new session. */
+    boolean isUpdatesSession() {
+        return updatesSession;
+    }
+
+    /** True if a successful response ends the caller's session. */
+    boolean isClearsSession() {
+        return clearsSession;
+    }
+
+    /** True if the operation can be repeated without changing the result (GET, HEAD, PUT, DELETE, OPTIONS). */
+    boolean isIdempotent() {
+        return idempotent;
+    }
+}
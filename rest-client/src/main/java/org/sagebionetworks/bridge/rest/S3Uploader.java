@@ -0,0 +1,155 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import retrofit2.Retrofit;
+
+import org.sagebionetworks.bridge.rest.RestUtils.HostS3Service;
+import org.sagebionetworks.bridge.rest.RestUtils.S3Service;
+
+/**
+ * Uploads files to the S3 URLs handed out by Bridge. An S3Uploader is meant to be reused: its HTTP clients keep their
+ * connections (and TLS sessions) to each S3 host alive between uploads. Get one from
+ * {@link ApiClientProvider#getS3Uploader()} or {@link ClientManager#getS3Uploader()}, where it shares the transport
+ * of the Bridge clients.
+ */
+public class S3Uploader {
+    /** Default timeout for uploads of data archives. */
+    static final long DEFAULT_UPLOAD_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    /** Default timeout for uploads of hosted files, which can be considerably larger. */
+    static final long DEFAULT_HOSTED_FILE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int MAX_HOSTS = 16;
+
+    private final OkHttpClient uploadClient;
+    private final OkHttpClient hostedFileClient;
+    private final LoadingCache<String, S3Service> s3Services;
+    private final LoadingCache<String, HostS3Service> hostS3Services;
+
+    /**
+     * @param baseClient
+     *         client whose connection pool and dispatcher are shared by the upload clients
+     * @param timeoutMillis
+     *         connect, read and write timeout for all uploads, or null to use the defaults
+     */
+    S3Uploader(OkHttpClient baseClient, Long timeoutMillis) {
+        checkNotNull(baseClient);
+
+        this.uploadClient = buildClient(baseClient,
+                (timeoutMillis != null) ? timeoutMillis : DEFAULT_UPLOAD_TIMEOUT_MILLIS);
+        this.hostedFileClient = buildClient(baseClient,
+                (timeoutMillis != null) ? timeoutMillis : DEFAULT_HOSTED_FILE_TIMEOUT_MILLIS);
+        this.s3Services = CacheBuilder.newBuilder().maximumSize(MAX_HOSTS)
+                .build(new ServiceLoader<>(uploadClient, S3Service.class));
+        this.hostS3Services = CacheBuilder.newBuilder().maximumSize(MAX_HOSTS)
+                .build(new ServiceLoader<>(hostedFileClient, HostS3Service.class));
+    }
+
+    private static OkHttpClient buildClient(OkHttpClient baseClient, long timeoutMillis) {
+        OkHttpClient.Builder builder = baseClient.newBuilder();
+        builder.interceptors().clear();
+        builder.networkInterceptors().clear();
+        return builder
+                .connectTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .addInterceptor(new ErrorResponseInterceptor())
+                .addInterceptor(new LoggingInterceptor())
+                .retryOnConnectionFailure(false).build();
+    }
+
+    /**
+     * Uploads a data file to an S3 URL returned in a Bridge UploadSession.
+     *
+     * @param file
+     *         File to upload to Bridge
+     * @param url
+     *         S3 URL to upload to, generally as returned by Bridge Upload Session
+     * @param contentType
+     *         MIME type of the uploaded file, must match what was sent in the upload request
+     * @param contentMd5
+     *         Base64-encoded MD5 of the file, must match what was sent in the upload request
+     * @throws IOException
+     *         IOException if an issue occurs during upload. Callers are responsible for re-trying the upload
+     */
+    public void uploadToS3(File file, String url, String contentType, String contentMd5) throws IOException {
+        checkNotNull(file, "File cannot be null");
+        checkNotNull(url, "url cannot be null");
+        checkArgument(!url.isEmpty(), "url cannot be empty");
+        checkNotNull(contentType, "contentType cannot be null");
+        checkArgument(!contentType.isEmpty(), "contentType cannot be empty");
+        checkNotNull(contentMd5, "contentMd5 cannot be null");
+
+        RequestBody body = RequestBody.create(MediaType.parse(contentType), file);
+        s3Services.getUnchecked(getBaseUrl(url)).uploadToS3(url, body, contentMd5, contentType).execute();
+    }
+
+    /**
+     * Uploads a hosted file (e.g. a file revision or a study logo) to the upload URL returned by Bridge.
+     *
+     * @param file
+     *         File to upload
+     * @param url
+     *         S3 URL to upload to, as returned in the FileRevision
+     * @param contentDisposition
+     *         Content-Disposition that S3 should return when the file is downloaded
+     * @param contentType
+     *         MIME type of the file, must match the FileRevision
+     * @throws IOException
+     *         IOException if an issue occurs during upload. Callers are responsible for re-trying the upload
+     */
+    public void uploadHostedFileToS3(File file, String url, String contentDisposition, String contentType)
+            throws IOException {
+        checkNotNull(file, "File cannot be null");
+        checkNotNull(url, "url cannot be null");
+        checkArgument(!url.isEmpty(), "url cannot be empty");
+        checkNotNull(contentType, "contentType cannot be null");
+
+        RequestBody body = RequestBody.create(MediaType.parse(contentType), file);
+        hostS3Services.getUnchecked(getBaseUrl(url)).uploadToS3(url, body, contentDisposition, contentType)
+                .execute();
+    }
+
+    // Package-scoped for unit tests.
+    OkHttpClient getUploadClient() {
+        return uploadClient;
+    }
+
+    // Package-scoped for unit tests.
+    OkHttpClient getHostedFileClient() {
+        return hostedFileClient;
+    }
+
+    static String getBaseUrl(String url) {
+        URI uri = URI.create(url);
+        return uri.getScheme() + "://" + uri.getHost() + "/";
+    }
+
+    private static class ServiceLoader<T> extends CacheLoader<String, T> {
+        private final OkHttpClient client;
+        private final Class<T> serviceClass;
+
+        ServiceLoader(OkHttpClient client, Class<T> serviceClass) {
+            this.client = client;
+            this.serviceClass = serviceClass;
+        }
+
+        @SuppressWarnings("NullableProblems") // superclass uses nullity-analysis annotations which we are not using
+        @Override
+        public T load(String baseUrl) {
+            return new Retrofit.Builder().baseUrl(baseUrl).client(client).build().create(serviceClass);
+        }
+    }
+}
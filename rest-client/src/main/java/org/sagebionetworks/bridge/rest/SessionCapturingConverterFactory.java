@@ -0,0 +1,52 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
+
+/**
+ * Captures the session returned by sign in, participant self-updates and consent calls (the operations marked
+ * x-updates-session in the spec) as the response is converted, so the session is taken from the same object that is
+ * returned to the caller. The response body is only read and parsed once. Other responses are left to the next
+ * converter.
+ */
+class SessionCapturingConverterFactory extends Converter.Factory {
+
+    private final UserSessionInfoProvider userSessionInfoProvider;
+
+    SessionCapturingConverterFactory(UserSessionInfoProvider userSessionInfoProvider) {
+        this.userSessionInfoProvider = checkNotNull(userSessionInfoProvider);
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+            Retrofit retrofit) {
+        if (type != UserSessionInfo.class) {
+            return null;
+        }
+        RouteMetadata route = RouteMetadata.forAnnotations(annotations);
+        if (route == null || !route.isUpdatesSession()) {
+            return null;
+        }
+        final Converter<ResponseBody, UserSessionInfo> delegate = retrofit.nextResponseBodyConverter(this, type,
+                annotations);
+        return new Converter<ResponseBody, UserSessionInfo>() {
+            @Override
+            public UserSessionInfo convert(ResponseBody value) throws IOException {
+                UserSessionInfo session = delegate.convert(value);
+                if (session != null) {
+                    userSessionInfoProvider.setSession(session);
+                }
+                return session;
+            }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package org.sagebionetworks.bridge.rest;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically asks a UserSessionInfoProvider to refresh its session if it is getting old. The task only holds a
+ * weak reference to the provider, and cancels itself once the provider has been garbage collected, so providers
+ * that are discarded (e.g. evicted from a ClientManagerPool) are not kept alive by the scheduler.
+ */
+class SessionRefreshTask implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionRefreshTask.class);
+
+    private static final long MIN_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private static class DefaultExecutorHolder {
+        static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("bridge-session-refresh-%d").setDaemon(true).build());
+    }
+
+    /** The executor used when none is provided, a single daemon thread shared by all providers. */
+    static ScheduledExecutorService getDefaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    private final WeakReference<UserSessionInfoProvider> providerRef;
+    private volatile ScheduledFuture<?> future;
+
+    private SessionRefreshTask(UserSessionInfoProvider provider) {
+        this.providerRef = new WeakReference<>(provider);
+    }
+
+    /**
+     * Schedule a task that checks the provider's session at a fraction of the refresh age, so the session is
+     * refreshed shortly after it becomes older than refreshAfterMillis.
+     */
+    static SessionRefreshTask schedule(ScheduledExecutorService executor, UserSessionInfoProvider provider,
+            long refreshAfterMillis) {
+        long checkIntervalMillis = Math.max(MIN_CHECK_INTERVAL_MILLIS, refreshAfterMillis / 10);
+
+        SessionRefreshTask task = new SessionRefreshTask(provider);
+        task.future = executor.scheduleWithFixedDelay(task, checkIntervalMillis, checkIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        return task;
+    }
+
+    void cancel() {
+        ScheduledFuture<?> scheduled = future;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    @Override
+    public void run() {
+        UserSessionInfoProvider provider = providerRef.get();
+        if (provider == null) {
+            cancel();
+            return;
+        }
+        try {
+            provider.refreshSessionIfStale();
+        } catch (Exception e) {
+            // Never let an exception escape, it would cancel all future executions of this task. The next request
+            // will fall back to reauthenticating when it receives a 401.
+            LOG.warn("Proactive session refresh failed", e);
+        }
+    }
+}
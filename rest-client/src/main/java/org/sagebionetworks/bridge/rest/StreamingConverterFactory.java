@@ -0,0 +1,39 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.RequestBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Converts the request bodies selected by the {@link EncodingSettings} to {@link StreamingRequestBody} instances.
+ * Other request bodies, and all responses, are left to the next converter.
+ */
+class StreamingConverterFactory extends Converter.Factory {
+
+    private final JsonCodec jsonCodec;
+    private final EncodingSettings encodingSettings;
+
+    StreamingConverterFactory(JsonCodec jsonCodec, EncodingSettings encodingSettings) {
+        this.jsonCodec = checkNotNull(jsonCodec);
+        this.encodingSettings = checkNotNull(encodingSettings);
+    }
+
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(final Type type, Annotation[] parameterAnnotations,
+            Annotation[] methodAnnotations, Retrofit retrofit) {
+        if (!encodingSettings.isStreamed(getRawType(type))) {
+            return null;
+        }
+        return new Converter<Object, RequestBody>() {
+            @Override
+            public RequestBody convert(Object value) {
+                return new StreamingRequestBody(jsonCodec, value, type, encodingSettings.isKnownContentLength());
+            }
+        };
+    }
+}
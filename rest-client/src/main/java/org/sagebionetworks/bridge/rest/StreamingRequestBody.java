@@ -0,0 +1,81 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * A JSON request body that is written by the codec directly to the connection, rather than to a buffer in memory
+ * first. The body is written from the object each time it is sent, so the request can be retried.
+ */
+class StreamingRequestBody extends RequestBody {
+    static final MediaType MEDIA_TYPE = MediaType.parse("application/json; charset=UTF-8");
+
+    private final JsonCodec jsonCodec;
+    private final Object value;
+    private final Type type;
+    private final boolean knownContentLength;
+    private long contentLength = -1L;
+
+    StreamingRequestBody(JsonCodec jsonCodec, Object value, Type type, boolean knownContentLength) {
+        this.jsonCodec = checkNotNull(jsonCodec);
+        this.value = value;
+        this.type = checkNotNull(type);
+        this.knownContentLength = knownContentLength;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return MEDIA_TYPE;
+    }
+
+    /** -1 (unknown) unless the body is measured, by writing it to a sink that only counts the bytes. */
+    @Override
+    public long contentLength() throws IOException {
+        if (knownContentLength && contentLength < 0) {
+            CountingSink counter = new CountingSink();
+            BufferedSink sink = Okio.buffer(counter);
+            jsonCodec.toJson(sink, value, type);
+            sink.flush();
+            contentLength = counter.count;
+        }
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        jsonCodec.toJson(sink, value, type);
+    }
+
+    private static class CountingSink implements Sink {
+        private long count;
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            source.skip(byteCount);
+            count += byteCount;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
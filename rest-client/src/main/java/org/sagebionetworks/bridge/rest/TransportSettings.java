@@ -0,0 +1,350 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings for the HTTP transport shared by all clients created through an {@link ApiClientProvider}. All
+ * authenticated clients are derived from a single root OkHttpClient, so they share its connection pool, dispatcher
+ * and TLS session cache. Values that are not set leave OkHttp's defaults (or the values set by an override of
+ * {@link ApiClientProvider#getHttpClientBuilder()}) in place.
+ */
+public final class TransportSettings {
+
+    private final Integer maxIdleConnections;
+    private final Long keepAliveMillis;
+    private final Integer maxRequests;
+    private final Integer maxRequestsPerHost;
+    private final ExecutorService dispatcherExecutor;
+    private final boolean virtualThreads;
+    private final Long s3TimeoutMillis;
+    private final boolean stacklessRetryableErrors;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final long maxRetryDelayMillis;
+    private final Double rateLimit;
+
+    private TransportSettings(Integer maxIdleConnections, Long keepAliveMillis, Integer maxRequests,
+            Integer maxRequestsPerHost, ExecutorService dispatcherExecutor, boolean virtualThreads,
+            Long s3TimeoutMillis, boolean stacklessRetryableErrors, int maxRetries, long retryBackoffMillis,
+            long maxRetryDelayMillis, Double rateLimit) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveMillis = keepAliveMillis;
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.dispatcherExecutor = dispatcherExecutor;
+        this.virtualThreads = virtualThreads;
+        this.s3TimeoutMillis = s3TimeoutMillis;
+        this.stacklessRetryableErrors = stacklessRetryableErrors;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * Settings read from the MAX_RETRIES and RATE_LIMIT configuration properties, or null if neither is set.
+     *
+     * @param config
+     *      the SDK configuration
+     * @return settings, or null
+     * @throws IllegalArgumentException
+     *      if a property is not a valid value; the message names the property
+     */
+    public static TransportSettings fromConfig(Config config) {
+        String maxRetries = config.getMaxRetries();
+        String rateLimit = config.getRateLimit();
+        if (maxRetries == null && rateLimit == null) {
+            return null;
+        }
+        Builder builder = new Builder();
+        if (maxRetries != null) {
+            try {
+                builder.withMaxRetries(Integer.parseInt(maxRetries.trim()));
+            } catch (IllegalArgumentException e) {
+                throw invalidProperty(Config.Props.MAX_RETRIES, maxRetries, e);
+            }
+        }
+        if (rateLimit != null) {
+            try {
+                builder.withRateLimit(Double.parseDouble(rateLimit.trim()));
+            } catch (IllegalArgumentException e) {
+                throw invalidProperty(Config.Props.RATE_LIMIT, rateLimit, e);
+            }
+        }
+        return builder.build();
+    }
+
+    private static IllegalArgumentException invalidProperty(Config.Props property, String value,
+            IllegalArgumentException cause) {
+        return new IllegalArgumentException("Invalid " + property + " value '" + value + "': " + cause.getMessage(),
+                cause);
+    }
+
+    /** Maximum number of idle connections kept in the shared pool, or null for the default. */
+    public Integer getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    /** How long an idle connection is kept alive in the shared pool, in milliseconds, or null for the default. */
+    public Long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    /** Maximum number of async requests executing at once, or null for the default (64). */
+    public Integer getMaxRequests() {
+        return maxRequests;
+    }
+
+    /** Maximum number of async requests executing at once against a single host, or null for the default (5). */
+    public Integer getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /** Executor that runs async requests, or null for the default. */
+    public ExecutorService getDispatcherExecutor() {
+        return dispatcherExecutor;
+    }
+
+    /** True if async requests should run on virtual threads when the JVM supports them. */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Connect, read and write timeout of uploads to S3, in milliseconds, or null for the defaults (30 seconds for
+     * data uploads, 5 minutes for hosted files).
+     */
+    public Long getS3TimeoutMillis() {
+        return s3TimeoutMillis;
+    }
+
+    /** True if the exceptions thrown for 429 and 5xx responses are created without a stack trace. */
+    public boolean isStacklessRetryableErrors() {
+        return stacklessRetryableErrors;
+    }
+
+    /** Number of times a request turned away by the server (429, 502, 503, 504) is retried. Zero by default. */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /** Upper bound of the random delay before the first retry, in milliseconds. Doubles with each retry. */
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    /** Longest delay before a retry, in milliseconds, including a delay requested in a Retry-After header. */
+    public long getMaxRetryDelayMillis() {
+        return maxRetryDelayMillis;
+    }
+
+    /** Requests per second sent to the server by the clients of one ApiClientProvider, or null for no limit. */
+    public Double getRateLimit() {
+        return rateLimit;
+    }
+
+    boolean hasRetrySettings() {
+        return maxRetries > 0 || rateLimit != null;
+    }
+
+    boolean hasConnectionPoolSettings() {
+        return maxIdleConnections != null || keepAliveMillis != null;
+    }
+
+    boolean hasDispatcherSettings() {
+        return maxRequests != null || maxRequestsPerHost != null || dispatcherExecutor != null || virtualThreads;
+    }
+
+    public static final class Builder {
+        private static final long DEFAULT_RETRY_BACKOFF_MILLIS = 500L;
+        private static final long DEFAULT_MAX_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+        private Integer maxIdleConnections;
+        private Long keepAliveMillis;
+        private Integer maxRequests;
+        private Integer maxRequestsPerHost;
+        private ExecutorService dispatcherExecutor;
+        private boolean virtualThreads;
+        private Long s3TimeoutMillis;
+        private boolean stacklessRetryableErrors;
+        private int maxRetries;
+        private long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+        private long maxRetryDelayMillis = DEFAULT_MAX_RETRY_DELAY_MILLIS;
+        private Double rateLimit;
+
+        /**
+         * @param maxIdleConnections
+         *      maximum number of idle connections to keep in the shared connection pool
+         * @return builder
+         */
+        public Builder withMaxIdleConnections(int maxIdleConnections) {
+            checkArgument(maxIdleConnections >= 0, "maxIdleConnections cannot be negative");
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        /**
+         * @param keepAlive
+         *      how long an idle connection is kept in the shared connection pool before it is evicted
+         * @param unit
+         *      unit of keepAlive
+         * @return builder
+         */
+        public Builder withKeepAlive(long keepAlive, TimeUnit unit) {
+            checkArgument(keepAlive > 0, "keepAlive must be positive");
+            checkNotNull(unit);
+            this.keepAliveMillis = unit.toMillis(keepAlive);
+            return this;
+        }
+
+        /**
+         * @param maxRequests
+         *      maximum number of async requests to execute at once; further requests are queued
+         * @return builder
+         */
+        public Builder withMaxRequests(int maxRequests) {
+            checkArgument(maxRequests > 0, "maxRequests must be positive");
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * @param maxRequestsPerHost
+         *      maximum number of async requests to execute at once against a single host. All Bridge calls go to
+         *      the same host, so this is usually the limit that matters.
+         * @return builder
+         */
+        public Builder withMaxRequestsPerHost(int maxRequestsPerHost) {
+            checkArgument(maxRequestsPerHost > 0, "maxRequestsPerHost must be positive");
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * @param dispatcherExecutor
+         *      executor that runs async requests. The caller owns the executor and is responsible for shutting
+         *      it down.
+         * @return builder
+         */
+        public Builder withDispatcherExecutor(ExecutorService dispatcherExecutor) {
+            this.dispatcherExecutor = checkNotNull(dispatcherExecutor);
+            return this;
+        }
+
+        /**
+         * Run async requests on virtual threads, one per request, when the JVM supports them (Java 21 and later).
+         * On older JVMs the default executor is used. Ignored if an executor is set with
+         * {@link #withDispatcherExecutor(ExecutorService)}.
+         *
+         * @param virtualThreads
+         *      true to use virtual threads when available
+         * @return builder
+         */
+        public Builder withVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * @param timeout
+         *      connect, read and write timeout of uploads to S3
+         * @param unit
+         *      unit of timeout
+         * @return builder
+         */
+        public Builder withS3Timeout(long timeout, TimeUnit unit) {
+            checkArgument(timeout > 0, "timeout must be positive");
+            checkNotNull(unit);
+            this.s3TimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Create the exceptions thrown for 429 (LimitExceededException) and 5xx responses without a stack trace.
+         * These errors can arrive in volume under load, and are usually caught and retried, so filling in a stack
+         * trace for each is wasted work. The exception's type, status code, endpoint and message are unchanged.
+         *
+         * @param stacklessRetryableErrors
+         *      true to create these exceptions without a stack trace
+         * @return builder
+         */
+        public Builder withStacklessRetryableErrors(boolean stacklessRetryableErrors) {
+            this.stacklessRetryableErrors = stacklessRetryableErrors;
+            return this;
+        }
+
+        /**
+         * Retry requests the server turns away. A 429 (too many requests) is retried for any call, since the server
+         * did not process it; a 502, 503 or 504 is only retried for idempotent calls (GET, HEAD, PUT, DELETE,
+         * OPTIONS). The delay is the server's Retry-After header when present, otherwise a random delay up to an
+         * exponentially growing backoff. When retries are used up, the error is thrown as usual.
+         *
+         * @param maxRetries
+         *      number of times to retry a request, after the first attempt (zero, the default, never retries)
+         * @return builder
+         */
+        public Builder withMaxRetries(int maxRetries) {
+            checkArgument(maxRetries >= 0, "maxRetries cannot be negative");
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * @param backoff
+         *      upper bound of the random delay before the first retry (500 milliseconds by default), which doubles
+         *      with each retry
+         * @param unit
+         *      unit of backoff
+         * @return builder
+         */
+        public Builder withRetryBackoff(long backoff, TimeUnit unit) {
+            checkArgument(backoff > 0, "backoff must be positive");
+            checkNotNull(unit);
+            this.retryBackoffMillis = unit.toMillis(backoff);
+            return this;
+        }
+
+        /**
+         * @param maxDelay
+         *      longest delay before a retry (30 seconds by default). If the server's Retry-After header asks for a
+         *      longer wait, the request is not retried and the error is thrown to the caller.
+         * @param unit
+         *      unit of maxDelay
+         * @return builder
+         */
+        public Builder withMaxRetryDelay(long maxDelay, TimeUnit unit) {
+            checkArgument(maxDelay > 0, "maxDelay must be positive");
+            checkNotNull(unit);
+            this.maxRetryDelayMillis = unit.toMillis(maxDelay);
+            return this;
+        }
+
+        /**
+         * Limit the rate of requests sent to the server, so bulk work stays within the server's budget rather than
+         * being turned away. The limit is shared by every client created by the same ApiClientProvider, which
+         * includes all the ClientManagers of a ClientManagerPool for the same app. ClientManagers built on their own
+         * each have their own limit. The limit applies to each attempt, including retries. Requests over the rate
+         * wait their turn.
+         *
+         * @param requestsPerSecond
+         *      requests per second to send to the server
+         * @return builder
+         */
+        public Builder withRateLimit(double requestsPerSecond) {
+            checkArgument(requestsPerSecond > 0.0, "requestsPerSecond must be positive");
+            this.rateLimit = requestsPerSecond;
+            return this;
+        }
+
+        public TransportSettings build() {
+            checkArgument(maxRetryDelayMillis >= retryBackoffMillis, "maxRetryDelay cannot be less than retryBackoff");
+            return new TransportSettings(maxIdleConnections, keepAliveMillis, maxRequests, maxRequestsPerHost,
+                    dispatcherExecutor, virtualThreads, s3TimeoutMillis, stacklessRetryableErrors, maxRetries,
+                    retryBackoffMillis, maxRetryDelayMillis, rateLimit);
+        }
+    }
+}
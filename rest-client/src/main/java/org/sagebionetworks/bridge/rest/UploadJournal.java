@@ -0,0 +1,262 @@
+package org.sagebionetworks.bridge.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.google.common.hash.Hashing;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records how far the upload of a file has progressed, in a small properties file next to the file (or in a journal
+ * directory), so that an interrupted upload can pick up where it left off. The journal is named after a hash of the
+ * file's canonical path, so files with the same name in different directories have separate journals, and is tied to
+ * the path, length and modification time of the file; if the file changes, the journal is discarded and the upload
+ * starts over.
+ * <p>
+ * Values that grant access, such as presigned upload URLs, are recorded with their expiration and dropped from the
+ * journal once they expire. Journals are only readable by their owner, where the file system supports it.
+ */
+class UploadJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(UploadJournal.class);
+
+    static final String SUFFIX = ".upload-journal";
+
+    /** The steps of an upload, in order. */
+    enum State {
+        /** Nothing has been recorded. */
+        NEW,
+        /** The upload URL has been obtained from Bridge. */
+        REQUESTED,
+        /** The file has been uploaded to S3. */
+        UPLOADED,
+        /** Bridge has been told the upload is finished. */
+        COMPLETED
+    }
+
+    private static final String FILE_PATH = "filePath";
+    private static final String FILE_LENGTH = "fileLength";
+    private static final String FILE_LAST_MODIFIED = "fileLastModified";
+    private static final String STATE = "state";
+    private static final String EXPIRES_SUFFIX = ".expires";
+
+    private final File journalFile;
+    private final File file;
+    private final String canonicalPath;
+    private final Properties properties;
+
+    private UploadJournal(File journalFile, File file, String canonicalPath, Properties properties) {
+        this.journalFile = journalFile;
+        this.file = file;
+        this.canonicalPath = canonicalPath;
+        this.properties = properties;
+    }
+
+    /**
+     * Load the journal for a file, or start a new one if there is no journal or the file has changed since the
+     * journal was written.
+     */
+    static UploadJournal open(File journalDirectory, File file) throws IOException {
+        checkNotNull(file, "File cannot be null");
+
+        String canonicalPath = file.getCanonicalPath();
+        File journalFile = journalFileFor(journalDirectory, file);
+
+        Properties properties = new Properties();
+        if (journalFile.isFile()) {
+            properties = load(journalFile);
+            if (!canonicalPath.equals(properties.getProperty(FILE_PATH)) ||
+                    !String.valueOf(file.length()).equals(properties.getProperty(FILE_LENGTH)) ||
+                    !String.valueOf(file.lastModified()).equals(properties.getProperty(FILE_LAST_MODIFIED))) {
+                properties.clear();
+            }
+        }
+        UploadJournal journal = new UploadJournal(journalFile, file, canonicalPath, properties);
+        if (properties.isEmpty()) {
+            journal.reset();
+        } else if (removeExpired(properties)) {
+            journal.write();
+        }
+        return journal;
+    }
+
+    /** The journal of a file, in the journal directory or (if that is null) next to the file. */
+    static File journalFileFor(File journalDirectory, File file) throws IOException {
+        String canonicalPath = file.getCanonicalPath();
+        File directory = (journalDirectory != null) ? journalDirectory : new File(canonicalPath).getParentFile();
+        String hash = Hashing.sha256().hashString(canonicalPath, StandardCharsets.UTF_8).toString();
+        return new File(directory, hash + SUFFIX);
+    }
+
+    /**
+     * Remove expired values from the journals in a directory, and delete the journals of files that no longer exist.
+     *
+     * @return the journals that were deleted
+     */
+    static List<File> cleanUp(File journalDirectory) throws IOException {
+        File[] journalFiles = journalDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SUFFIX);
+            }
+        });
+        List<File> deleted = new ArrayList<>();
+        if (journalFiles == null) {
+            return deleted;
+        }
+        for (File journalFile : journalFiles) {
+            Properties properties = load(journalFile);
+            String path = properties.getProperty(FILE_PATH);
+            if (path == null || !new File(path).isFile()) {
+                if (journalFile.delete()) {
+                    deleted.add(journalFile);
+                }
+            } else if (removeExpired(properties)) {
+                write(journalFile, properties);
+            }
+        }
+        return deleted;
+    }
+
+    State getState() {
+        String state = properties.getProperty(STATE);
+        return (state != null) ? State.valueOf(state) : State.NEW;
+    }
+
+    String get(String key) {
+        return properties.getProperty(key);
+    }
+
+    UploadJournal put(String key, String value) {
+        properties.remove(key + EXPIRES_SUFFIX);
+        if (value == null) {
+            properties.remove(key);
+        } else {
+            properties.setProperty(key, value);
+        }
+        return this;
+    }
+
+    /**
+     * Record a value that is only valid until the given time, such as a presigned URL. Once it expires, the value is
+     * removed from the journal the next time the journal is opened or cleaned up.
+     */
+    UploadJournal put(String key, String value, DateTime expiresOn) {
+        put(key, value);
+        if (value != null && expiresOn != null) {
+            properties.setProperty(key + EXPIRES_SUFFIX, String.valueOf(expiresOn.getMillis()));
+        }
+        return this;
+    }
+
+    /** Record that the upload has reached the given state, along with any values set since the last save. */
+    void save(State state) throws IOException {
+        properties.setProperty(STATE, state.name());
+        write();
+    }
+
+    private void write() throws IOException {
+        write(journalFile, properties);
+    }
+
+    private static void write(File journalFile, Properties properties) throws IOException {
+        // Write to a temporary file and rename it, so a crash while writing can't leave a corrupt journal.
+        File tempFile = new File(journalFile.getPath() + ".tmp");
+        if (tempFile.exists() && !tempFile.delete()) {
+            throw new IOException("Could not delete " + tempFile.getAbsolutePath());
+        }
+        if (!tempFile.createNewFile()) {
+            throw new IOException("Could not create " + tempFile.getAbsolutePath());
+        }
+        // Owner only, before anything is written; the journal can hold upload URLs until they expire
+        try {
+            restrictToOwner(tempFile);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            properties.store(out, null);
+        }
+        if (!tempFile.renameTo(journalFile)) {
+            if (!journalFile.delete() || !tempFile.renameTo(journalFile)) {
+                throw new IOException("Could not write upload journal " + journalFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Removes access by other users, and makes sure the owner can read and write the file. Removing access is best
+     * effort: some file systems (such as Windows) have no permissions for other users to remove, and the call fails.
+     */
+    static void restrictToOwner(File file) throws IOException {
+        if (!file.setReadable(false, false) || !file.setWritable(false, false)) {
+            LOG.debug("Could not remove other users' access to " + file.getAbsolutePath());
+        }
+        if (!file.setReadable(true, true) || !file.setWritable(true, true)) {
+            throw new IOException("Could not give the owner access to " + file.getAbsolutePath());
+        }
+    }
+
+    private static Properties load(File journalFile) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(journalFile)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    /** Removes the values that have expired, returning true if there were any. */
+    private static boolean removeExpired(Properties properties) {
+        long now = System.currentTimeMillis();
+        boolean removed = false;
+        for (String name : properties.stringPropertyNames()) {
+            if (name.endsWith(EXPIRES_SUFFIX)) {
+                long expiresOn;
+                try {
+                    expiresOn = Long.parseLong(properties.getProperty(name));
+                } catch (NumberFormatException e) {
+                    expiresOn = 0L;
+                }
+                if (expiresOn <= now) {
+                    properties.remove(name);
+                    properties.remove(name.substring(0, name.length() - EXPIRES_SUFFIX.length()));
+                    removed = true;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /** Forget all progress, e.g. because the upload URL has expired. */
+    void reset() {
+        properties.clear();
+        properties.setProperty(FILE_PATH, canonicalPath);
+        properties.setProperty(FILE_LENGTH, String.valueOf(file.length()));
+        properties.setProperty(FILE_LAST_MODIFIED, String.valueOf(file.lastModified()));
+    }
+
+    /** Remove the journal once the upload is finished. */
+    void delete() {
+        if (journalFile.exists() && !journalFile.delete()) {
+            journalFile.deleteOnExit();
+        }
+    }
+
+    // Package-scoped for unit tests.
+    File getJournalFile() {
+        return journalFile;
+    }
+}
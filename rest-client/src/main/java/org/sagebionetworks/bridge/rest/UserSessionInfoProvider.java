@@ -1,14 +1,25 @@
 package org.sagebionetworks.bridge.rest;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
-import com.google.gson.JsonObject;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
 import org.slf4j.Logger;
@@ -25,6 +36,10 @@ import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
  * Retrieves session information for a Bridge user. It either gets it from the user session interceptor, or if
  * a session doesn't exist (hasn't been captured), it authenticates. The authentication causes the interceptor to
  * capture the session, then you can return it.
+ * <p>
+ * Reading the session does not lock. Sign in and reauthentication are single-flight: if several threads need to
+ * authenticate at the same time (e.g. many requests receive a 401 for the same expired session), only one call is
+ * made to the server, and the other threads wait for and share its result.
  */
 public class UserSessionInfoProvider {
     private static final Logger LOG = LoggerFactory.getLogger(UserSessionInfoProvider.class);
@@ -41,6 +56,15 @@ public class UserSessionInfoProvider {
     private final String password;
     private final List<UserSessionInfoChangeListener> changeListeners;
     private volatile UserSessionInfo session;
+    private volatile Ticker ticker = Ticker.systemTicker();
+    private volatile long sessionUpdatedNanos;
+    private volatile long sessionAccessedNanos;
+    private volatile long refreshAfterNanos;
+    private volatile long maxIdleNanos;
+    private volatile int refreshFailures;
+    private volatile long refreshRetryNanos;
+    private SessionRefreshTask refreshTask;
+    private final AtomicReference<SettableFuture<UserSessionInfo>> pendingAuthentication = new AtomicReference<>();
 
     UserSessionInfoProvider(AuthenticationApi authenticationApi, String appId, String email, Phone phone,
                             String externalId, String password, UserSessionInfo session,
@@ -60,9 +84,96 @@ public class UserSessionInfoProvider {
         this.session = session;
         this.password = password;
         this.changeListeners = ImmutableList.copyOf(changeListeners);
+        this.sessionUpdatedNanos = ticker.read();
+        this.sessionAccessedNanos = sessionUpdatedNanos;
     }
 
-    public synchronized UserSessionInfo getSession() {
+    @VisibleForTesting
+    void setTicker(Ticker ticker) {
+        this.ticker = ticker;
+        this.sessionUpdatedNanos = ticker.read();
+        this.sessionAccessedNanos = sessionUpdatedNanos;
+    }
+
+    /**
+     * Refresh the session in the background on a shared daemon thread, before it can expire on the server. See
+     * {@link #startSessionRefresh(ScheduledExecutorService, long, long, TimeUnit)}.
+     *
+     * @param refreshAfter
+     *         age after which the session is refreshed
+     * @param maxIdle
+     *         if greater than zero, sessions that have not been used for this long are not refreshed
+     * @param unit
+     *         unit of refreshAfter and maxIdle
+     */
+    public void startSessionRefresh(long refreshAfter, long maxIdle, TimeUnit unit) {
+        startSessionRefresh(SessionRefreshTask.getDefaultExecutor(), refreshAfter, maxIdle, unit);
+    }
+
+    /**
+     * Refresh the session in the background, before it can expire on the server. Once the session is older than
+     * refreshAfter, it is renewed with the reauthentication token, so requests are not delayed by a 401 response
+     * followed by a sign in. Sessions that have not been retrieved for longer than maxIdle are left to expire, so
+     * that unused providers do not keep renewing sessions forever.
+     *
+     * @param executor
+     *         executor on which the session is checked and refreshed
+     * @param refreshAfter
+     *         age after which the session is refreshed
+     * @param maxIdle
+     *         if greater than zero, sessions that have not been used for this long are not refreshed
+     * @param unit
+     *         unit of refreshAfter and maxIdle
+     */
+    public synchronized void startSessionRefresh(ScheduledExecutorService executor, long refreshAfter, long maxIdle,
+            TimeUnit unit) {
+        checkNotNull(executor);
+        checkArgument(refreshAfter > 0, "refreshAfter must be positive");
+        checkArgument(maxIdle >= 0, "maxIdle cannot be negative");
+        checkNotNull(unit);
+
+        stopSessionRefresh();
+        this.refreshAfterNanos = unit.toNanos(refreshAfter);
+        this.maxIdleNanos = unit.toNanos(maxIdle);
+        this.refreshTask = SessionRefreshTask.schedule(executor, this, unit.toMillis(refreshAfter));
+    }
+
+    /** Stop refreshing the session in the background. */
+    public synchronized void stopSessionRefresh() {
+        if (refreshTask != null) {
+            refreshTask.cancel();
+            refreshTask = null;
+        }
+    }
+
+    /**
+     * Reauthenticates if the session is older than the refresh age, and has been used recently enough. Called by
+     * the SessionRefreshTask. Unlike a reauthentication after a 401, this never signs in again, and never clears or
+     * replaces the session when it fails: the session may still be valid, and the server's error may be brief. After
+     * a failure, the refresh is retried with a backoff that doubles up to the refresh age.
+     */
+    void refreshSessionIfStale() throws IOException {
+        UserSessionInfo current = session;
+        if (refreshAfterNanos <= 0 || current == null || current.getReauthToken() == null) {
+            return;
+        }
+        long now = ticker.read();
+        if (now - sessionUpdatedNanos < refreshAfterNanos) {
+            return;
+        }
+        if (maxIdleNanos > 0 && now - sessionAccessedNanos > maxIdleNanos) {
+            return;
+        }
+        if (refreshFailures > 0 && now - refreshRetryNanos < 0) {
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(debugString(current.getSessionToken()) + " refreshing session before it expires");
+        }
+        authenticate(current, AuthMode.REFRESH);
+    }
+
+    public UserSessionInfo getSession() {
         return session;
     }
 
@@ -73,16 +184,14 @@ public class UserSessionInfoProvider {
      * @return session info for the user
      * @throws IOException problem while signing in
      */
-    public synchronized UserSessionInfo retrieveSession() throws IOException {
-        if (session != null) {
-            return session;
+    public UserSessionInfo retrieveSession() throws IOException {
+        sessionAccessedNanos = ticker.read();
+        UserSessionInfo current = session;
+        if (current != null) {
+            return current;
         }
         // There's no session, so our only option is to sign in again.
-        if (LOG.isDebugEnabled()) {
-            LOG.debug(debugString("null") + " signing in");
-        }
-        signIn();
-        return session;
+        return authenticate(null, AuthMode.SIGN_IN);
     }
 
     synchronized void setSession(final UserSessionInfo newSession) {
@@ -92,6 +201,8 @@ public class UserSessionInfoProvider {
         }
 
         this.session = mergeReauthToken(this.session, newSession);
+        this.sessionUpdatedNanos = ticker.read();
+        this.refreshFailures = 0;
         for (UserSessionInfoChangeListener listener : changeListeners) {
             try {
                 listener.onChange(this.session);
@@ -104,28 +215,109 @@ public class UserSessionInfoProvider {
     /**
      * The server is only guaranteed to send the reauth token on sign in, it is not sent in all UserSessionInfo
      * responses for security reasons. If the previous session contains a token and the new session does not, copy
-     * over the token from the previous session
+     * over the token from the previous session. Neither session is modified.
      *
      * @param previousSession
      *         older session
      * @param session
-     *         new session, with reauthToken copied over from previousSession if the new session did not have
+     *         new session
+     * @return the new session, or a copy of it with the reauthToken of previousSession if the new session did not have
      *         a reauth token
-     * @return the merged session
      */
     @SuppressWarnings("WeakerAccess")
     public static UserSessionInfo mergeReauthToken(final UserSessionInfo previousSession, final UserSessionInfo session) {
         if (session != null && session.getReauthToken() == null) {
-            if (previousSession != null) {
-                JsonObject el = (JsonObject)RestUtils.GSON.toJsonTree(session);
-                el.addProperty("reauthToken", previousSession.getReauthToken());
-                return RestUtils.toType(el, UserSessionInfo.class);
+            if (previousSession != null && previousSession.getReauthToken() != null) {
+                // reauthToken is read-only in the generated model, so the copy is made field by field by the generated
+                // adapter rather than through JSON.
+                return UserSessionInfo.GsonAdapter.copyWithString(session, "reauthToken",
+                        previousSession.getReauthToken());
             }
         }
         return session;
     }
 
-    synchronized void reauthenticate() throws IOException {
+    void reauthenticate() throws IOException {
+        reauthenticate(session);
+    }
+
+    /**
+     * Reauthenticates, unless the stale session has already been replaced by a session with a different token (for
+     * example, by another thread that received a 401 at the same time). Concurrent callers share a single call to the
+     * server.
+     *
+     * @param staleSession
+     *         the session that was found to be invalid, may be null
+     * @throws IOException problem while authenticating
+     */
+    void reauthenticate(UserSessionInfo staleSession) throws IOException {
+        authenticate(staleSession, AuthMode.REAUTHENTICATE);
+    }
+
+    private enum AuthMode {
+        SIGN_IN, REAUTHENTICATE, REFRESH
+    }
+
+    private UserSessionInfo authenticate(UserSessionInfo staleSession, AuthMode mode) throws IOException {
+        SettableFuture<UserSessionInfo> flight = SettableFuture.create();
+        while (!pendingAuthentication.compareAndSet(null, flight)) {
+            SettableFuture<UserSessionInfo> pending = pendingAuthentication.get();
+            if (pending != null) {
+                UserSessionInfo result = awaitAuthentication(pending);
+                // A failed background refresh leaves the stale session in place, so a reauthentication that waited
+                // for it still has to be made.
+                if (mode != AuthMode.REAUTHENTICATE || result == null || staleSession == null
+                        || !Objects.equal(result.getSessionToken(), staleSession.getSessionToken())) {
+                    return result;
+                }
+            }
+        }
+        try {
+            UserSessionInfo current = session;
+            if (current != null && (staleSession == null || !Objects.equal(current.getSessionToken(),
+                    staleSession.getSessionToken()))) {
+                // The stale session was replaced while this thread was waiting to authenticate.
+                flight.set(current);
+                return current;
+            }
+            if (mode == AuthMode.REFRESH) {
+                doRefresh();
+            } else if (mode == AuthMode.REAUTHENTICATE) {
+                doReauthenticate();
+            } else {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(debugString("null") + " signing in");
+                }
+                signIn();
+            }
+            current = session;
+            flight.set(current);
+            return current;
+        } catch (IOException | RuntimeException | Error e) {
+            if (mode == AuthMode.REFRESH) {
+                // The session is unchanged, so threads that waited for the refresh carry on with it.
+                flight.set(session);
+            } else {
+                flight.setException(e);
+            }
+            throw e;
+        } finally {
+            pendingAuthentication.compareAndSet(flight, null);
+        }
+    }
+
+    private static UserSessionInfo awaitAuthentication(Future<UserSessionInfo> pending) throws IOException {
+        try {
+            return Uninterruptibles.getUninterruptibly(pending);
+        } catch (ExecutionException e) {
+            // Waiters see the same exception as the thread that made the call.
+            Throwable cause = e.getCause();
+            Throwables.propagateIfPossible(cause, IOException.class);
+            throw new IOException(cause);
+        }
+    }
+
+    private void doReauthenticate() throws IOException {
         if (session == null || session.getReauthToken() == null) {
             signIn();
         } else {
@@ -163,6 +355,39 @@ public class UserSessionInfoProvider {
         }
     }
 
+    /**
+     * Reauthenticates for the background refresh. On failure, the session is left as it is, and the next refresh is
+     * delayed.
+     */
+    private void doRefresh() throws IOException {
+        SignIn request = new SignIn().email(email).phone(phone).externalId(externalId)
+                .reauthToken(session.getReauthToken()).appId(appId);
+        try {
+            UserSessionInfo newSession = authenticationApi.reauthenticate(request).execute().body();
+            setSession(newSession);
+        } catch (ConsentRequiredException e) {
+            // successful authentication
+            setSession(e.getSession());
+        } catch (IOException | RuntimeException e) {
+            int failures = refreshFailures + 1;
+            refreshFailures = failures;
+            refreshRetryNanos = ticker.read() + refreshBackoffNanos(refreshAfterNanos, failures);
+            throw e;
+        }
+    }
+
+    /**
+     * The delay before retrying a failed refresh: a tenth of the refresh age (the interval at which sessions are
+     * checked), doubled for each further failure, up to the refresh age.
+     */
+    static long refreshBackoffNanos(long refreshAfterNanos, int failures) {
+        long backoffNanos = refreshAfterNanos / 10;
+        for (int i = 1; i < failures && backoffNanos < refreshAfterNanos; i++) {
+            backoffNanos *= 2;
+        }
+        return Math.min(backoffNanos, refreshAfterNanos);
+    }
+
     private boolean signIn() throws IOException {
         if (Strings.isNullOrEmpty(password)) {
             LOG.warn("Could not signIn, no password provided");
@@ -1,23 +1,106 @@
 package org.sagebionetworks.bridge.rest.gson;
 
-import java.lang.reflect.Type;
-
-import com.google.common.io.BaseEncoding;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
-
-public class ByteArrayToBase64TypeAdapter implements JsonSerializer<byte[]>, JsonDeserializer<byte[]> {
-    public byte[] deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-            throws JsonParseException {
-        return BaseEncoding.base64().decode(json.getAsString());
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes byte arrays as base64 strings, and reads them back. The encoded value is built in a StringBuilder of the
+ * exact size and written as a string value, and decoding goes straight from the string read into a byte array of the
+ * exact size, so a large field isn't copied through a JSON tree and intermediate buffers. Writing a plain string value
+ * (rather than raw JSON) also works with the JsonWriter Gson uses to build trees, e.g. for {@code Gson.toJsonTree}.
+ */
+public class ByteArrayToBase64TypeAdapter extends TypeAdapter<byte[]> {
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .toCharArray();
+    private static final char PAD = '=';
+    private static final int[] DECODE_TABLE = new int[128];
+    static {
+        Arrays.fill(DECODE_TABLE, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE_TABLE[ALPHABET[i]] = i;
+        }
+    }
+
+    @Override
+    public void write(JsonWriter writer, byte[] src) throws IOException {
+        if (src == null) {
+            writer.nullValue();
+            return;
+        }
+        writer.value(encode(src));
+    }
+
+    @Override
+    public byte[] read(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return decode(reader.nextString());
+    }
+
+    /** Encode the bytes as a base64 string. */
+    static String encode(byte[] src) {
+        StringBuilder out = new StringBuilder(4 * ((src.length + 2) / 3));
+        int i = 0;
+        for (int end = src.length - src.length % 3; i < end; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            out.append(ALPHABET[bits >>> 18]).append(ALPHABET[(bits >>> 12) & 0x3f])
+                    .append(ALPHABET[(bits >>> 6) & 0x3f]).append(ALPHABET[bits & 0x3f]);
+        }
+        int remaining = src.length - i;
+        if (remaining > 0) {
+            int bits = (src[i] & 0xff) << 16 | ((remaining == 2) ? (src[i + 1] & 0xff) << 8 : 0);
+            out.append(ALPHABET[bits >>> 18]).append(ALPHABET[(bits >>> 12) & 0x3f])
+                    .append((remaining == 2) ? ALPHABET[(bits >>> 6) & 0x3f] : PAD).append(PAD);
+        }
+        return out.toString();
+    }
+
+    /** Decode a base64 string, with or without padding. */
+    static byte[] decode(String src) {
+        int length = src.length();
+        while (length > 0 && src.charAt(length - 1) == PAD) {
+            length--;
+        }
+        if (length % 4 == 1 || src.length() - length > 2 || (src.length() != length && src.length() % 4 != 0)) {
+            throw new JsonSyntaxException("Invalid base64 length: " + src.length());
+        }
+        byte[] out = new byte[length / 4 * 3 + Math.max(length % 4 - 1, 0)];
+        int pos = 0;
+        int i = 0;
+        for (int end = length - length % 4; i < end; i += 4) {
+            int bits = sextet(src, i) << 18 | sextet(src, i + 1) << 12 | sextet(src, i + 2) << 6 | sextet(src, i + 3);
+            out[pos++] = (byte) (bits >>> 16);
+            out[pos++] = (byte) (bits >>> 8);
+            out[pos++] = (byte) bits;
+        }
+        int remaining = length - i;
+        if (remaining > 0) {
+            int bits = sextet(src, i) << 18 | sextet(src, i + 1) << 12;
+            if (remaining == 3) {
+                bits |= sextet(src, i + 2) << 6;
+            }
+            out[pos++] = (byte) (bits >>> 16);
+            if (remaining == 3) {
+                out[pos] = (byte) (bits >>> 8);
+            }
+        }
+        return out;
     }
 
-    public JsonElement serialize(byte[] src, Type typeOfSrc, JsonSerializationContext context) {
-        return new JsonPrimitive(BaseEncoding.base64().encode(src));
+    private static int sextet(String src, int index) {
+        char c = src.charAt(index);
+        int value = (c < DECODE_TABLE.length) ? DECODE_TABLE[c] : -1;
+        if (value < 0) {
+            throw new JsonSyntaxException("Invalid base64 character '" + c + "' at position " + index);
+        }
+        return value;
     }
-}
\ No newline at end of file
+}
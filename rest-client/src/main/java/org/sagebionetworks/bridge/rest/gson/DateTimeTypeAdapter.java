@@ -17,7 +17,8 @@ public class DateTimeTypeAdapter extends TypeAdapter<DateTime> {
     @Override
     public DateTime read(JsonReader reader) throws IOException {
         String src = reader.nextString();
-        return FORMATTER.parseDateTime(src);
+        DateTime dateTime = IsoDateParser.parseDateTime(src);
+        return (dateTime != null) ? dateTime : FORMATTER.parseDateTime(src);
     }
 
     @Override
@@ -0,0 +1,195 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Replaces the values of the configured String and List&lt;String&gt; fields of a model with the shared instances in
+ * a {@link StringPool} as each object is read. Values such as data groups, study IDs and languages repeat across
+ * thousands of records in a participant roster; sharing them keeps a large cached roster much smaller.
+ * <p>
+ * Fields configured on a type also apply to its subclasses, so fields of a polymorphic type such as SurveyElement can
+ * be configured once for all its subtypes. The factory must be registered ahead of the RuntimeTypeAdapterFactory
+ * instances, which then delegate to it for the subtypes.
+ */
+public final class DeduplicatingTypeAdapterFactory implements TypeAdapterFactory {
+
+    private final Map<Class<?>, Set<String>> fieldsByType;
+    private final StringPool pool;
+
+    /**
+     * @param fieldsByType
+     *      the JSON names of the fields to deduplicate, by model type
+     * @param pool
+     *      the strings shared by all the objects read
+     */
+    public DeduplicatingTypeAdapterFactory(Map<Class<?>, Set<String>> fieldsByType, StringPool pool) {
+        this.fieldsByType = checkNotNull(fieldsByType);
+        this.pool = checkNotNull(pool);
+    }
+
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Set<String> names = new HashSet<>();
+        for (Class<?> c = type.getRawType(); c != null && c != Object.class; c = c.getSuperclass()) {
+            Set<String> typeNames = fieldsByType.get(c);
+            if (typeNames != null) {
+                names.addAll(typeNames);
+            }
+        }
+        if (names.isEmpty()) {
+            return null;
+        }
+        TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+        Map<String, Field> fields = findFields(type.getRawType(), names);
+        if (delegate instanceof ObjectReader) {
+            return new DeduplicatingObjectReader<>(delegate, fields, pool);
+        }
+        return new DeduplicatingAdapter<>(delegate, fields, pool);
+    }
+
+    /**
+     * Find the String or List&lt;String&gt; fields of a type, or its superclasses, with these JSON names.
+     *
+     * @throws IllegalArgumentException
+     *      if there is no such field, or it has another type
+     */
+    public static Map<String, Field> findFields(Class<?> type, Set<String> names) {
+        ImmutableMap.Builder<String, Field> fields = ImmutableMap.builder();
+        for (String name : names) {
+            Field field = findField(type, name);
+            checkArgument(field != null, "%s has no field named %s", type.getSimpleName(), name);
+            checkArgument(field.getType() == String.class || isListOfStrings(field.getGenericType()),
+                    "%s.%s is not a String or List<String>", type.getSimpleName(), name);
+            field.setAccessible(true);
+            fields.put(name, field);
+        }
+        return fields.build();
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                if (name.equals((serializedName != null) ? serializedName.value() : field.getName())) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isListOfStrings(Type type) {
+        if (!(type instanceof ParameterizedType)) {
+            return false;
+        }
+        ParameterizedType parameterized = (ParameterizedType) type;
+        return parameterized.getRawType() == List.class && parameterized.getActualTypeArguments()[0] == String.class;
+    }
+
+    private static class DeduplicatingAdapter<T> extends TypeAdapter<T> {
+        private final TypeAdapter<T> delegate;
+        private final Map<String, Field> fields;
+        private final StringPool pool;
+
+        DeduplicatingAdapter(TypeAdapter<T> delegate, Map<String, Field> fields, StringPool pool) {
+            this.delegate = delegate;
+            this.fields = fields;
+            this.pool = pool;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            delegate.write(out, value);
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            T value = delegate.read(in);
+            if (value != null) {
+                for (String name : fields.keySet()) {
+                    deduplicate(value, name);
+                }
+            }
+            return value;
+        }
+
+        /** Deduplicate the value of the field with this JSON name, if it is one of the configured fields. */
+        void deduplicate(T value, String name) {
+            Field field = fields.get(name);
+            if (field != null) {
+                try {
+                    deduplicate(value, field);
+                } catch (IllegalAccessException e) {
+                    throw new JsonIOException(e);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deduplicate(T value, Field field) throws IllegalAccessException {
+            Object fieldValue = field.get(value);
+            if (fieldValue instanceof String) {
+                field.set(value, pool.intern((String) fieldValue));
+            } else if (fieldValue instanceof List) {
+                for (ListIterator<String> i = ((List<String>) fieldValue).listIterator(); i.hasNext();) {
+                    i.set(pool.intern(i.next()));
+                }
+            }
+        }
+    }
+
+    /** Deduplicates each field as it is read, when the object is read a field at a time. */
+    private static class DeduplicatingObjectReader<T> extends DeduplicatingAdapter<T> implements ObjectReader<T> {
+        private final ObjectReader<T> reader;
+
+        @SuppressWarnings("unchecked")
+        DeduplicatingObjectReader(TypeAdapter<T> delegate, Map<String, Field> fields, StringPool pool) {
+            super(delegate, fields, pool);
+            this.reader = (ObjectReader<T>) delegate;
+        }
+
+        @Override
+        public T newInstance() {
+            return reader.newInstance();
+        }
+
+        @Override
+        public boolean read(T instance, String name, JsonReader in) throws IOException {
+            if (!reader.read(instance, name, in)) {
+                return false;
+            }
+            deduplicate(instance, name);
+            return true;
+        }
+
+        @Override
+        public boolean setString(T instance, String name, String value) {
+            if (!reader.setString(instance, name, value)) {
+                return false;
+            }
+            deduplicate(instance, name);
+            return true;
+        }
+    }
+}
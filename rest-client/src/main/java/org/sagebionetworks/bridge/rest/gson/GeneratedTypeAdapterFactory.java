@@ -0,0 +1,78 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Optional;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Supplies the streaming TypeAdapters that the code generator adds to each model class (as a nested
+ * {@code GsonAdapter} class; see src/main/swagger/gsonAdapter.mustache). These adapters read and write fields
+ * directly, so Gson doesn't fall back to its reflective adapter for the models. The adapter class for a model is looked
+ * up once; types without a generated adapter (enums, models that extend collections, classes outside the model package)
+ * are left to the other factories.
+ * <p>
+ * Register this factory before any factory that should take precedence over it, such as the RuntimeTypeAdapterFactory
+ * instances for polymorphic types (which then delegate to it for the subtypes).
+ */
+public final class GeneratedTypeAdapterFactory implements TypeAdapterFactory {
+    private static final String ADAPTER_CLASS_SUFFIX = "$GsonAdapter";
+
+    private final String packagePrefix;
+    private final ConcurrentMap<Class<?>, Optional<Constructor<?>>> constructors = new ConcurrentHashMap<>();
+
+    /**
+     * @param modelPackage
+     *      the package of the generated model classes
+     */
+    public GeneratedTypeAdapterFactory(String modelPackage) {
+        checkNotNull(modelPackage);
+        this.packagePrefix = modelPackage + ".";
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (type.getType() != rawType || !rawType.getName().startsWith(packagePrefix)) {
+            return null;
+        }
+        Optional<Constructor<?>> constructor = constructors.get(rawType);
+        if (constructor == null) {
+            constructor = findConstructor(rawType);
+            constructors.putIfAbsent(rawType, constructor);
+        }
+        if (!constructor.isPresent()) {
+            return null;
+        }
+        try {
+            return (TypeAdapter<T>) constructor.get().newInstance(gson);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new JsonIOException("Could not create generated adapter for " + rawType.getName(), e);
+        } catch (InvocationTargetException e) {
+            throw new JsonIOException("Could not create generated adapter for " + rawType.getName(), e.getCause());
+        }
+    }
+
+    private static Optional<Constructor<?>> findConstructor(Class<?> rawType) {
+        try {
+            Class<?> adapterClass = Class.forName(rawType.getName() + ADAPTER_CLASS_SUFFIX, false,
+                    rawType.getClassLoader());
+            if (!TypeAdapter.class.isAssignableFrom(adapterClass)) {
+                return Optional.absent();
+            }
+            return Optional.<Constructor<?>>of(adapterClass.getConstructor(Gson.class));
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return Optional.absent();
+        }
+    }
+}
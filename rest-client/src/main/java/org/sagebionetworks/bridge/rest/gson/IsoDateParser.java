@@ -0,0 +1,139 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+/**
+ * Parses the exact ISO 8601 shapes that the Bridge server emits ({@code yyyy-MM-dd'T'HH:mm:ss.SSS} followed by
+ * {@code Z} or {@code +HH:mm}, and {@code yyyy-MM-dd}) without going through Joda's formatter, which is one of the
+ * hottest paths when decoding large lists of records. Anything else, including out-of-range field values, returns null
+ * so the caller can fall back to Joda, which then parses the value or reports the error. Used by the Gson adapters for
+ * DateTime and LocalDate, and by JacksonJsonCodec.
+ */
+public final class IsoDateParser {
+    private static final int DATE_LENGTH = "yyyy-MM-dd".length();
+    private static final int DATE_TIME_LENGTH = "yyyy-MM-ddTHH:mm:ss.SSS".length();
+    private static final int OFFSET_LENGTH = "+HH:mm".length();
+    private static final int MAX_OFFSET_MINUTES = 18 * 60;
+    private static final int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    /** Zones for the offsets that have been parsed, indexed by offset in minutes from -18:00. */
+    private static final AtomicReferenceArray<DateTimeZone> OFFSET_ZONES =
+            new AtomicReferenceArray<>(2 * MAX_OFFSET_MINUTES + 1);
+
+    private IsoDateParser() {
+    }
+
+    /**
+     * @return the DateTime, in a fixed zone with the parsed offset (as Joda's {@code withOffsetParsed()} does), or
+     *      null if the value isn't in the expected shape
+     */
+    public static DateTime parseDateTime(String value) {
+        int length = value.length();
+        if (length != DATE_TIME_LENGTH + 1 && length != DATE_TIME_LENGTH + OFFSET_LENGTH) {
+            return null;
+        }
+        if (!isDateShape(value) || value.charAt(10) != 'T' || value.charAt(13) != ':' || value.charAt(16) != ':'
+                || value.charAt(19) != '.') {
+            return null;
+        }
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = digits(value, 17, 2);
+        int millis = digits(value, 20, 3);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return null;
+        }
+        DateTimeZone zone = parseOffset(value, DATE_TIME_LENGTH);
+        if (zone == null) {
+            return null;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        if (!isValidDate(year, month, day)) {
+            return null;
+        }
+        return new DateTime(year, month, day, hour, minute, second, millis, zone);
+    }
+
+    /**
+     * @return the LocalDate, or null if the value isn't in the expected shape
+     */
+    public static LocalDate parseLocalDate(String value) {
+        if (value.length() != DATE_LENGTH || !isDateShape(value)) {
+            return null;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        if (!isValidDate(year, month, day)) {
+            return null;
+        }
+        return new LocalDate(year, month, day);
+    }
+
+    private static boolean isDateShape(String value) {
+        return value.charAt(4) == '-' && value.charAt(7) == '-';
+    }
+
+    private static boolean isValidDate(int year, int month, int day) {
+        // digits() returns -1 for anything that isn't a digit, which fails these checks too
+        if (year < 0 || month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        if (month == 2) {
+            boolean leapYear = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+            return day <= (leapYear ? 29 : 28);
+        }
+        return day <= DAYS_IN_MONTH[month - 1];
+    }
+
+    private static DateTimeZone parseOffset(String value, int start) {
+        char sign = value.charAt(start);
+        if (sign == 'Z') {
+            return (value.length() == start + 1) ? DateTimeZone.UTC : null;
+        }
+        if ((sign != '+' && sign != '-') || value.charAt(start + 3) != ':') {
+            return null;
+        }
+        int hours = digits(value, start + 1, 2);
+        int minutes = digits(value, start + 4, 2);
+        if (hours < 0 || minutes < 0 || minutes > 59) {
+            return null;
+        }
+        int offsetMinutes = hours * 60 + minutes;
+        if (offsetMinutes > MAX_OFFSET_MINUTES) {
+            return null;
+        }
+        return offsetZone((sign == '-') ? -offsetMinutes : offsetMinutes);
+    }
+
+    private static DateTimeZone offsetZone(int offsetMinutes) {
+        int index = offsetMinutes + MAX_OFFSET_MINUTES;
+        DateTimeZone zone = OFFSET_ZONES.get(index);
+        if (zone == null) {
+            // Racing threads get the same zone back from Joda, so it doesn't matter which one is kept.
+            zone = DateTimeZone.forOffsetMillis((int) TimeUnit.MINUTES.toMillis(offsetMinutes));
+            OFFSET_ZONES.lazySet(index, zone);
+        }
+        return zone;
+    }
+
+    /** @return the value of the digits at the given position, or -1 if any of the characters isn't a digit */
+    private static int digits(String value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,209 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.google.gson.JsonParser;
+import com.google.gson.internal.Streams;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Passes everything written by a subtype's TypeAdapter through to another JsonWriter, except that the subtype's label
+ * is written as the first field of the outermost object, and the type field the subtype writes itself is dropped. This
+ * lets RuntimeTypeAdapterFactory add the label while streaming, instead of serializing the subtype to a tree and
+ * copying it. Writing the label first also means the object can be read back without buffering any of its fields.
+ */
+final class LabelWritingJsonWriter extends JsonWriter {
+    private static final Writer UNUSED_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private final JsonWriter out;
+    private final String typeFieldName;
+    private final String label;
+
+    private int depth;
+    private boolean skipNextValue;
+    private int skipDepth;
+
+    LabelWritingJsonWriter(JsonWriter out, String typeFieldName, String label) {
+        super(UNUSED_WRITER);
+        this.out = out;
+        this.typeFieldName = typeFieldName;
+        this.label = label;
+        setLenient(out.isLenient());
+        setHtmlSafe(out.isHtmlSafe());
+        setSerializeNulls(out.getSerializeNulls());
+    }
+
+    /**
+     * @return true if the value being written replaces the subtype's own type value, and should be dropped
+     */
+    private boolean skipValue() {
+        if (skipDepth > 0) {
+            return true;
+        }
+        if (skipNextValue) {
+            skipNextValue = false;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        return begin(true);
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        return end(true);
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        return begin(false);
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        return end(false);
+    }
+
+    private JsonWriter begin(boolean array) throws IOException {
+        if (skipDepth > 0 || skipNextValue) {
+            skipNextValue = false;
+            skipDepth++;
+            return this;
+        }
+        depth++;
+        if (array) {
+            out.beginArray();
+        } else {
+            out.beginObject();
+            if (depth == 1) {
+                out.name(typeFieldName).value(label);
+            }
+        }
+        return this;
+    }
+
+    private JsonWriter end(boolean array) throws IOException {
+        if (skipDepth > 0) {
+            skipDepth--;
+            return this;
+        }
+        depth--;
+        if (array) {
+            out.endArray();
+        } else {
+            out.endObject();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        if (skipDepth > 0) {
+            return this;
+        }
+        if (depth == 1 && typeFieldName.equals(name)) {
+            skipNextValue = true;
+            return this;
+        }
+        out.name(name);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (!skipValue()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    /**
+     * Raw JSON is parsed and written through the other methods, because the underlying writer may build a tree (as it
+     * does for Gson.toJsonTree), and such a writer can't take raw JSON.
+     */
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        Streams.write(new JsonParser().parse(value), this);
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (!skipValue()) {
+            out.nullValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        if (!skipValue()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        if (!skipValue()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        if (!skipValue()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        if (!skipValue()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (!skipValue()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        // The underlying writer belongs to the caller.
+    }
+}
@@ -0,0 +1,95 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Holds the JSON of a model that was decoded lazily, so that the fields marked {@code x-lazy} in the API spec (large
+ * collections such as a timeline's schedule) can be read when their getters are first called, rather than when the
+ * response is received. The first getter to be called reads all of the deferred fields in one pass over the JSON,
+ * which is then released.
+ * <p>
+ * Models with lazily decoded fields have a generated adapter that implements {@link LazyReader}; see
+ * src/main/swagger/gsonAdapter.mustache.
+ */
+public final class LazyFields {
+
+    /** Implemented by the generated adapters of models that have lazily decoded fields. */
+    public interface LazyReader<T> {
+        /**
+         * Read an object from its JSON, leaving the lazily decoded fields to be read when they are first used.
+         */
+        T readLazily(byte[] json) throws IOException;
+    }
+
+    /** Reads a field of a model, from a reader positioned at the field's value. */
+    public interface FieldReader<T> {
+        /** @return false if the model has no field with this name */
+        boolean read(T instance, String name, JsonReader in) throws IOException;
+    }
+
+    private final FieldReader<?> reader;
+    private final Set<String> deferred = new HashSet<>();
+    private byte[] json;
+
+    public LazyFields(byte[] json, FieldReader<?> reader) {
+        this.json = checkNotNull(json);
+        this.reader = checkNotNull(reader);
+    }
+
+    /** A reader over the JSON of the whole object. */
+    public JsonReader newReader() {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), Charsets.UTF_8));
+    }
+
+    /** Record that a field was skipped and is to be read later. */
+    public synchronized void defer(String name) {
+        deferred.add(name);
+    }
+
+    /** Record that a field has been set, so that its value in the JSON is no longer to be read. */
+    public synchronized void discard(String name) {
+        deferred.remove(name);
+        if (deferred.isEmpty()) {
+            json = null;
+        }
+    }
+
+    /**
+     * Read the deferred fields into the model, unless the named field has already been read. All of the fields still
+     * deferred are read at once, so the JSON is only parsed one more time however many of them are used.
+     *
+     * @throws JsonIOException
+     *      if the fields can't be read; the JSON was already parsed once, so this should not happen
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void load(Object instance, String name) {
+        if (!deferred.contains(name)) {
+            return;
+        }
+        try (JsonReader in = newReader()) {
+            in.beginObject();
+            while (in.hasNext() && !deferred.isEmpty()) {
+                String next = in.nextName();
+                if (deferred.remove(next)) {
+                    ((FieldReader<Object>) reader).read(instance, next, in);
+                } else {
+                    in.skipValue();
+                }
+            }
+        } catch (IOException e) {
+            throw new JsonIOException("Could not read lazily decoded field " + name, e);
+        }
+        deferred.clear();
+        json = null;
+    }
+}
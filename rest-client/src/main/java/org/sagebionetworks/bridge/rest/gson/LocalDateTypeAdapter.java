@@ -13,7 +13,8 @@ public class LocalDateTypeAdapter extends TypeAdapter<LocalDate> {
     @Override
     public LocalDate read(JsonReader reader) throws IOException {
         String src = reader.nextString();
-        return LocalDate.parse(src);
+        LocalDate localDate = IsoDateParser.parseLocalDate(src);
+        return (localDate != null) ? localDate : LocalDate.parse(src);
     }
 
     @Override
@@ -0,0 +1,18 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+/**
+ * Reads an object one field at a time, from a reader that is already inside the object. Implemented by the generated
+ * adapters of the models (see src/main/swagger/gsonAdapter.mustache) and by the adapters that wrap them, so that
+ * RuntimeTypeAdapterFactory can hand the rest of an object to its subtype's adapter once it has read the type field.
+ */
+public interface ObjectReader<T> extends LazyFields.FieldReader<T> {
+    /** A new object, with all its fields at their defaults. */
+    T newInstance();
+
+    /**
+     * Set a String field to a value that has already been read, such as the type of a polymorphic object.
+     *
+     * @return false if the model has no String field with this name
+     */
+    boolean setString(T instance, String name, String value);
+}
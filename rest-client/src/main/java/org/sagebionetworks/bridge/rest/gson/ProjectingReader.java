@@ -0,0 +1,23 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import java.io.IOException;
+import java.util.Set;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Implemented by the generated adapters of the models (see src/main/swagger/gsonAdapter.mustache), so that an object
+ * can be read with only some of its fields.
+ */
+public interface ProjectingReader<T> extends ObjectReader<T> {
+    /**
+     * Read an object, decoding only the named fields. The values of all other fields are skipped without being
+     * decoded, and are left at their defaults.
+     *
+     * @param in
+     *      reader positioned at the object
+     * @param names
+     *      the JSON names of the fields to read, or null to read all fields
+     */
+    T read(JsonReader in, Set<String> names) throws IOException;
+}
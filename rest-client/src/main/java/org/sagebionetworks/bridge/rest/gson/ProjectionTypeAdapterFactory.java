@@ -0,0 +1,92 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads the configured model types with only some of their fields. The values of the other fields are skipped in the
+ * JSON stream without being decoded, which saves most of the work of reading large nested objects that aren't needed.
+ * Objects are written in full.
+ * <p>
+ * This relies on the generated adapters, so it must be registered after the GeneratedTypeAdapterFactory and before
+ * the RuntimeTypeAdapterFactory instances (so they delegate to it for the subtypes). Types without a generated adapter
+ * are read in full.
+ */
+public final class ProjectionTypeAdapterFactory implements TypeAdapterFactory {
+
+    private final Map<Class<?>, Set<String>> projections;
+
+    /**
+     * @param projections
+     *      the JSON names of the fields to read, by model type
+     */
+    public ProjectionTypeAdapterFactory(Map<Class<?>, Set<String>> projections) {
+        this.projections = checkNotNull(projections);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Set<String> names = projections.get(type.getRawType());
+        if (names == null) {
+            return null;
+        }
+        TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+        if (!(delegate instanceof ProjectingReader)) {
+            return null;
+        }
+        return new ProjectingAdapter<>(delegate, (ProjectingReader<T>) delegate, names);
+    }
+
+    static class ProjectingAdapter<T> extends TypeAdapter<T> implements ObjectReader<T> {
+        private final TypeAdapter<T> delegate;
+        private final ProjectingReader<T> reader;
+        private final Set<String> names;
+
+        ProjectingAdapter(TypeAdapter<T> delegate, ProjectingReader<T> reader, Set<String> names) {
+            this.delegate = delegate;
+            this.reader = reader;
+            this.names = names;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            delegate.write(out, value);
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            return reader.read(in, names);
+        }
+
+        @Override
+        public T newInstance() {
+            return reader.newInstance();
+        }
+
+        /** Reads the field if it is one of the projected fields, otherwise returns false so it is skipped. */
+        @Override
+        public boolean read(T instance, String name, JsonReader in) throws IOException {
+            return names.contains(name) && reader.read(instance, name, in);
+        }
+
+        /**
+         * Sets the field whether or not it is projected. This is how RuntimeTypeAdapterFactory sets the type of a
+         * polymorphic object, which the server relies on, and the value has already been read anyway.
+         */
+        @Override
+        public boolean setString(T instance, String name, String value) {
+            return reader.setString(instance, name, value);
+        }
+    }
+}
@@ -20,11 +20,12 @@
 package org.sagebionetworks.bridge.rest.gson;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonPrimitive;
@@ -33,6 +34,7 @@ import com.google.gson.TypeAdapterFactory;
 import com.google.gson.internal.Streams;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 
 public final class RuntimeTypeAdapterFactory<T> implements TypeAdapterFactory {
@@ -73,6 +75,19 @@ public final class RuntimeTypeAdapterFactory<T> implements TypeAdapterFactory {
         return registerSubtype(type, type.getSimpleName());
     }
 
+    public Class<?> getBaseType() {
+        return baseType;
+    }
+
+    public String getTypeFieldName() {
+        return typeFieldName;
+    }
+
+    /** The registered subtypes, by the label that identifies them in the type field. */
+    public Map<String, Class<?>> getLabelToSubtype() {
+        return Collections.unmodifiableMap(labelToSubtype);
+    }
+
     public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> type) {
         if (type.getRawType() != baseType) {
             return null;
@@ -89,22 +104,76 @@ public final class RuntimeTypeAdapterFactory<T> implements TypeAdapterFactory {
         return new TypeAdapter<R>() {
             @Override
             public R read(JsonReader in) throws IOException {
-                JsonElement jsonElement = Streams.parse(in);
-                // This originally removed the element, but we don't want that, we want to preserve it.
-                // There are places in Surveys where the server is looking for the "type" property to deserialize.
-                JsonElement labelJsonElement = jsonElement.getAsJsonObject().get(typeFieldName);
-                if (labelJsonElement == null) {
+                // Read up to the type field. Fields before it (normally there are none) are buffered as trees
+                // until we know which subtype to create.
+                in.beginObject();
+                JsonObject buffered = null;
+                String label = null;
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (typeFieldName.equals(name)) {
+                        label = readLabel(in);
+                        break;
+                    }
+                    if (buffered == null) {
+                        buffered = new JsonObject();
+                    }
+                    buffered.add(name, Streams.parse(in));
+                }
+                if (label == null) {
                     throw new JsonParseException("cannot deserialize " + baseType
                             + " because it does not define a field named " + typeFieldName);
                 }
-                String label = labelJsonElement.getAsString();
                 @SuppressWarnings("unchecked") // registration requires that subtype extends T
                 TypeAdapter<R> delegate = (TypeAdapter<R>) labelToDelegate.get(label);
                 if (delegate == null) {
                     throw new JsonParseException("cannot deserialize " + baseType + " subtype named " + label
                             + "; did you forget to register a subtype?");
                 }
-                return delegate.fromJsonTree(jsonElement);
+                // The type field is preserved in the result, not removed. There are places in Surveys where the
+                // server is looking for the "type" property to deserialize.
+                if (delegate instanceof ObjectReader) {
+                    // The generated adapter, possibly wrapped to project or deduplicate its fields.
+                    @SuppressWarnings("unchecked")
+                    ObjectReader<R> reader = (ObjectReader<R>) delegate;
+                    R instance = reader.newInstance();
+                    reader.setString(instance, typeFieldName, label);
+                    if (buffered != null) {
+                        // Rare enough that the buffered fields are simply written out and read back.
+                        JsonReader bufferedReader = new JsonReader(new StringReader(buffered.toString()));
+                        bufferedReader.beginObject();
+                        readFields(reader, instance, bufferedReader);
+                    }
+                    readFields(reader, instance, in);
+                    in.endObject();
+                    return instance;
+                }
+                // The subtype's adapter can only read a whole object (Gson's reflective adapter, when the generated
+                // adapters are turned off); read the rest of the object into a tree.
+                JsonObject jsonObject = (buffered != null) ? buffered : new JsonObject();
+                jsonObject.add(typeFieldName, new JsonPrimitive(label));
+                while (in.hasNext()) {
+                    jsonObject.add(in.nextName(), Streams.parse(in));
+                }
+                in.endObject();
+                return delegate.fromJsonTree(jsonObject);
+            }
+
+            private void readFields(ObjectReader<R> reader, R instance, JsonReader in) throws IOException {
+                while (in.hasNext()) {
+                    if (!reader.read(instance, in.nextName(), in)) {
+                        in.skipValue();
+                    }
+                }
+            }
+
+            private String readLabel(JsonReader in) throws IOException {
+                JsonToken token = in.peek();
+                if (token != JsonToken.STRING && token != JsonToken.NUMBER && token != JsonToken.BOOLEAN) {
+                    throw new JsonParseException("cannot deserialize " + baseType + " because its "
+                            + typeFieldName + " field is not a string");
+                }
+                return (token == JsonToken.BOOLEAN) ? String.valueOf(in.nextBoolean()) : in.nextString();
             }
 
             @Override
@@ -117,16 +186,7 @@ public final class RuntimeTypeAdapterFactory<T> implements TypeAdapterFactory {
                     throw new JsonParseException(
                             "cannot serialize " + srcType.getName() + "; did you forget to register a subtype?");
                 }
-                JsonObject jsonObject = delegate.toJsonTree(value).getAsJsonObject();
-                JsonObject clone = new JsonObject();
-                for (Map.Entry<String, JsonElement> e : jsonObject.entrySet()) {
-                    if (e.getValue() != null) {
-                        clone.add(e.getKey(), e.getValue());
-                    }
-
-                }
-                clone.add(typeFieldName, new JsonPrimitive(label));
-                Streams.write(clone, out);
+                delegate.write(new LabelWritingJsonWriter(out, typeFieldName, label), value);
             }
         }.nullSafe();
     }
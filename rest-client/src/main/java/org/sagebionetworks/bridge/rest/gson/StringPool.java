@@ -0,0 +1,47 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A bounded table of strings, used to share one instance of each of the values that repeat across many decoded
+ * objects. Once the table is full, new values are returned as they are rather than added, so a field with many
+ * distinct values can't make it grow without limit.
+ */
+public final class StringPool {
+
+    private final int maxSize;
+    private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize
+     *      the most strings the pool holds
+     */
+    public StringPool(int maxSize) {
+        checkArgument(maxSize > 0, "maxSize must be positive");
+        this.maxSize = maxSize;
+    }
+
+    /** The pooled instance equal to this string, adding it to the pool if there is room. */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = strings.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (strings.size() >= maxSize) {
+            return value;
+        }
+        pooled = strings.putIfAbsent(value, value);
+        return (pooled != null) ? pooled : value;
+    }
+
+    /** The number of strings in the pool. */
+    public int size() {
+        return strings.size();
+    }
+}
@@ -2,10 +2,24 @@ package org.sagebionetworks.bridge.rest;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.spy;
 
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
 import org.junit.Before;
 import org.junit.Test;
+import org.powermock.reflect.Whitebox;
 import org.sagebionetworks.bridge.rest.api.AuthenticationApi;
 import org.sagebionetworks.bridge.rest.model.SignIn;
 
@@ -37,5 +51,142 @@ public class ApiClientProviderTest {
 
         assertEquals(USER_AGENT, provider.getUserAgent());
     }
+
+    @Test
+    public void authenticatedProvidersShareRootTransport() {
+        ApiClientProvider apiClientProvider = new ApiClientProvider(BASE_URL, USER_AGENT, "en", "test-app");
+        OkHttpClient root = apiClientProvider.getRootHttpClient();
+
+        OkHttpClient client1 = apiClientProvider.getAuthenticatedClientProviderBuilder()
+                .withEmail("email1@email.com").withPassword("password").build().getHttpClient();
+        OkHttpClient client2 = apiClientProvider.getAuthenticatedClientProviderBuilder()
+                .withEmail("email2@email.com").withPassword("password").build().getHttpClient();
+
+        assertNotSame(client1, client2);
+        assertSame(root.connectionPool(), client1.connectionPool());
+        assertSame(root.connectionPool(), client2.connectionPool());
+        assertSame(root.dispatcher(), client1.dispatcher());
+        assertSame(root.dispatcher(), client2.dispatcher());
+        
+        // Each client has its own authenticator; the root client has none.
+        assertNotSame(client1.authenticator(), client2.authenticator());
+        assertEquals(0, root.interceptors().size());
+    }
+    
+    @Test
+    public void transportSettingsConfigureConnectionPool() {
+        TransportSettings settings = new TransportSettings.Builder().withMaxIdleConnections(20)
+                .withKeepAlive(30, TimeUnit.SECONDS).build();
+        ApiClientProvider apiClientProvider = new ApiClientProvider.Builder().withBaseUrl(BASE_URL)
+                .withUserAgent(USER_AGENT).withAcceptLanguage("en").withAppId("test-app")
+                .withTransportSettings(settings).build();
+
+        OkHttpClient client = apiClientProvider.getAuthenticatedClientProviderBuilder()
+                .withEmail("email@email.com").withPassword("password").build().getHttpClient();
+
+        assertSame(apiClientProvider.getRootHttpClient().connectionPool(), client.connectionPool());
+        assertConnectionPool(client.connectionPool(), 20, TimeUnit.SECONDS.toNanos(30));
+        // Unauthenticated clients share the same pool
+        assertSame(client.connectionPool(), apiClientProvider.getHttpClientBuilder(
+                Collections.<Interceptor>emptyList(), Collections.<Interceptor>emptyList()).build().connectionPool());
+    }
+
+    @Test
+    public void transportSettingsKeepDefaultsThatAreNotSet() {
+        TransportSettings settings = new TransportSettings.Builder().withMaxIdleConnections(12).build();
+        ApiClientProvider apiClientProvider = new ApiClientProvider.Builder().withBaseUrl(BASE_URL)
+                .withUserAgent(USER_AGENT).withAcceptLanguage("en").withAppId("test-app")
+                .withTransportSettings(settings).build();
+
+        OkHttpClient root = apiClientProvider.getRootHttpClient();
+        assertConnectionPool(root.connectionPool(), 12, TimeUnit.MINUTES.toNanos(5));
+        // No dispatcher settings, so OkHttp's default limits are unchanged
+        assertEquals(64, root.dispatcher().getMaxRequests());
+        assertEquals(5, root.dispatcher().getMaxRequestsPerHost());
+    }
+
+    private static void assertConnectionPool(ConnectionPool pool, int maxIdleConnections, long keepAliveNanos) {
+        // OkHttp does not expose the pool's configuration
+        assertEquals(maxIdleConnections, (int) Whitebox.<Integer>getInternalState(pool, "maxIdleConnections"));
+        assertEquals(keepAliveNanos, (long) Whitebox.<Long>getInternalState(pool, "keepAliveDurationNs"));
+    }
     
+    @Test
+    public void clientsUseJsonCodec() {
+        JsonCodec codec = new GsonJsonCodec(RestUtils.GSON);
+        ApiClientProvider apiClientProvider = new ApiClientProvider.Builder().withBaseUrl(BASE_URL)
+                .withUserAgent(USER_AGENT).withAcceptLanguage("en").withAppId("test-app").withJsonCodec(codec)
+                .build();
+        OkHttpClient client = apiClientProvider.getRootHttpClient();
+
+        assertSame(codec, apiClientProvider.getJsonCodec());
+        assertTrue(apiClientProvider.getRetrofit(client).converterFactories()
+                .contains(codec.getConverterFactory()));
+        assertTrue(apiClientProvider.getAsyncRetrofit(client).converterFactories()
+                .contains(codec.getConverterFactory()));
+    }
+
+    @Test
+    public void defaultJsonCodec() {
+        ApiClientProvider apiClientProvider = new ApiClientProvider(BASE_URL, USER_AGENT, "en", "test-app");
+        assertSame(GsonJsonCodec.getDefault(), apiClientProvider.getJsonCodec());
+    }
+
+    @Test
+    public void transportSettingsConfigureDispatcher() {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            TransportSettings settings = new TransportSettings.Builder().withMaxRequests(500)
+                    .withMaxRequestsPerHost(200).withDispatcherExecutor(executor).build();
+            ApiClientProvider apiClientProvider = new ApiClientProvider.Builder().withBaseUrl(BASE_URL)
+                    .withUserAgent(USER_AGENT).withAcceptLanguage("en").withAppId("test-app")
+                    .withTransportSettings(settings).build();
+
+            OkHttpClient client = apiClientProvider.getAuthenticatedClientProviderBuilder()
+                    .withEmail("email@email.com").withPassword("password").build().getHttpClient();
+
+            assertSame(apiClientProvider.getRootHttpClient().dispatcher(), client.dispatcher());
+            assertEquals(500, client.dispatcher().getMaxRequests());
+            assertEquals(200, client.dispatcher().getMaxRequestsPerHost());
+            assertSame(executor, client.dispatcher().executorService());
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void virtualThreadsFallBackToDefaultExecutor() {
+        TransportSettings settings = new TransportSettings.Builder().withVirtualThreads(true)
+                .withMaxRequestsPerHost(100).build();
+        ApiClientProvider apiClientProvider = new ApiClientProvider.Builder().withBaseUrl(BASE_URL)
+                .withUserAgent(USER_AGENT).withAcceptLanguage("en").withAppId("test-app")
+                .withTransportSettings(settings).build();
+
+        Dispatcher dispatcher = apiClientProvider.getRootHttpClient().dispatcher();
+        assertEquals(100, dispatcher.getMaxRequestsPerHost());
+        // Either a virtual thread executor, or OkHttp's default one on JVMs without virtual threads
+        assertNotNull(dispatcher.executorService());
+        assertEquals(VirtualThreads.isAvailable(),
+                !(dispatcher.executorService() instanceof ThreadPoolExecutor));
+    }
+    
+    @Test
+    public void connectionMetricsCountPoolHits() {
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        
+        metrics.connectEnd(null, null, null, null);
+        metrics.connectionAcquired(null, null);
+        metrics.connectionAcquired(null, null);
+        metrics.connectionAcquired(null, null);
+        metrics.connectFailed(null, null, null, null, null);
+        
+        assertEquals(3, metrics.getConnectionsAcquired());
+        assertEquals(1, metrics.getConnectionsCreated());
+        assertEquals(1, metrics.getConnectionsFailed());
+        assertEquals(2, metrics.getPoolHits());
+        
+        ApiClientProvider apiClientProvider = new ApiClientProvider(BASE_URL, USER_AGENT, "en", "test-app");
+        assertNotNull(apiClientProvider.getConnectionMetrics());
+        assertEquals(0, apiClientProvider.getConnectionMetrics().getPoolHits());
+    }
 }
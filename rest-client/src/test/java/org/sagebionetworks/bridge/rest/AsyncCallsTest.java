@@ -0,0 +1,135 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.SignIn;
+
+public class AsyncCallsTest {
+
+    interface TestService {
+        @GET("v3/test")
+        Call<ResponseBody> get();
+
+        @GET("v3/test")
+        ListenableFuture<ResponseBody> getFuture();
+    }
+
+    private int responseCode;
+    private CountDownLatch release;
+    private TestService service;
+
+    @Before
+    public void before() {
+        release = new CountDownLatch(0);
+        // Stands in for the network and the ErrorResponseInterceptor.
+        Interceptor server = new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Uninterruptibles.awaitUninterruptibly(release);
+                if (responseCode == 404) {
+                    throw new EntityNotFoundException("Not found", chain.request().url().toString());
+                }
+                return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1)
+                        .code(responseCode).message("OK")
+                        .body(ResponseBody.create(MediaType.parse("text/plain"), "body")).build();
+            }
+        };
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(AsyncCallAdapterFactory.INTERCEPTOR)
+                .addInterceptor(server).build();
+        service = new Retrofit.Builder().baseUrl("https://webservices.sagebridge.org/").client(client)
+                .addCallAdapterFactory(new AsyncCallAdapterFactory()).build().create(TestService.class);
+    }
+
+    @Test
+    public void futureCompletesWithBody() throws Exception {
+        responseCode = 200;
+        ListenableFuture<ResponseBody> future = AsyncCalls.toFuture(service.get());
+
+        assertEquals("body", future.get(5, TimeUnit.SECONDS).string());
+    }
+
+    @Test
+    public void futureFailsWithBridgeException() throws Exception {
+        responseCode = 404;
+        ListenableFuture<ResponseBody> future = AsyncCalls.toFuture(service.get());
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Should have thrown exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof EntityNotFoundException);
+        }
+    }
+
+    @Test
+    public void futureReturnTypeIsSupported() throws Exception {
+        responseCode = 200;
+        assertEquals("body", service.getFuture().get(5, TimeUnit.SECONDS).string());
+
+        responseCode = 404;
+        try {
+            service.getFuture().get(5, TimeUnit.SECONDS);
+            fail("Should have thrown exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof EntityNotFoundException);
+        }
+    }
+
+    @Test
+    public void executeStillThrowsBridgeException() throws Exception {
+        responseCode = 404;
+        try {
+            service.get().execute();
+            fail("Should have thrown exception");
+        } catch (EntityNotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void cancellingFutureCancelsCall() {
+        responseCode = 200;
+        release = new CountDownLatch(1);
+        Call<ResponseBody> call = service.get();
+        ListenableFuture<ResponseBody> future = AsyncCalls.toFuture(call);
+
+        assertTrue(future.cancel(false));
+        assertTrue(call.isCanceled());
+        release.countDown();
+    }
+
+    @Test
+    public void clientManagerReturnsAsyncClient() {
+        ClientManager manager = new ClientManager.Builder().withSignIn(new SignIn().appId("test-app")
+                .email("email@email.com").password("password")).build();
+
+        TestService asyncService = manager.getAsyncClient(TestService.class);
+        assertSame(asyncService, manager.getAsyncClient(TestService.class));
+        assertTrue(asyncService.get() instanceof AsyncCallAdapterFactory.UnwrappingCall);
+        assertFalse(manager.getClient(TestService.class).get() instanceof AsyncCallAdapterFactory.UnwrappingCall);
+    }
+}
@@ -0,0 +1,246 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import retrofit2.Call;
+
+import org.sagebionetworks.bridge.rest.api.AuthenticationApi;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.model.SignIn;
+import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
+
+/**
+ * Stress tests for concurrent authentication. Many threads receive a 401 for the same session at once, and only one
+ * reauthentication call should be made.
+ */
+public class AuthenticationConcurrencyTest {
+
+    private static final int THREADS = 32;
+    private static final int ROUNDS = 20;
+
+    private AuthenticationApi authenticationApi;
+    private UserSessionInfoProvider provider;
+    private AuthenticationHandler handler;
+    private ExecutorService executor;
+    private AtomicInteger reauthCount;
+
+    @Before
+    public void before() throws Exception {
+        authenticationApi = mock(AuthenticationApi.class);
+        provider = new UserSessionInfoProvider(authenticationApi, "test-app", "email@email.com", null, null,
+                "password", makeSession(0),
+                Collections.<UserSessionInfoProvider.UserSessionInfoChangeListener>emptyList());
+        handler = new AuthenticationHandler(provider);
+        executor = Executors.newFixedThreadPool(THREADS);
+        reauthCount = new AtomicInteger();
+
+        doAnswer(new Answer<Call<UserSessionInfo>>() {
+            @Override
+            public Call<UserSessionInfo> answer(InvocationOnMock invocation) throws Throwable {
+                return makeReauthCall();
+            }
+        }).when(authenticationApi).reauthenticate(any(SignIn.class));
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrent401sReauthenticateOnce() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            final String staleToken = provider.getSession().getSessionToken();
+            List<Future<Request>> futures = runConcurrently(new Callable<Request>() {
+                @Override
+                public Request call() throws Exception {
+                    // intercept() resets the try count at the start of each request
+                    handler.tryCount.set(0);
+                    return handler.authenticate(null, make401Response(staleToken));
+                }
+            });
+
+            String newToken = "sessionToken" + (round + 1);
+            assertEquals(round + 1, reauthCount.get());
+            assertEquals(newToken, provider.getSession().getSessionToken());
+            for (Future<Request> future : futures) {
+                Request retry = future.get();
+                assertNotNull(retry);
+                assertEquals(newToken, retry.header(HeaderInterceptor.BRIDGE_SESSION));
+            }
+        }
+        verify(authenticationApi, times(ROUNDS)).reauthenticate(any(SignIn.class));
+    }
+
+    @Test
+    public void concurrentFailedReauthIsSharedByAllWaiters() throws Exception {
+        final BridgeSDKException failure = new BridgeSDKException("reauth failed", 500);
+        doAnswer(new Answer<Call<UserSessionInfo>>() {
+            @Override
+            public Call<UserSessionInfo> answer(InvocationOnMock invocation) throws Throwable {
+                reauthCount.incrementAndGet();
+                @SuppressWarnings("unchecked")
+                Call<UserSessionInfo> call = mock(Call.class);
+                doAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        Thread.sleep(50);
+                        throw failure;
+                    }
+                }).when(call).execute();
+                return call;
+            }
+        }).when(authenticationApi).reauthenticate(any(SignIn.class));
+        // Sign in fails too, so the reauth exception is what everyone sees
+        @SuppressWarnings("unchecked")
+        Call<UserSessionInfo> signInCall = mock(Call.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                throw new BridgeSDKException("sign in failed", 500);
+            }
+        }).when(signInCall).execute();
+        doReturn(signInCall).when(authenticationApi).signInV4(any(SignIn.class));
+
+        final UserSessionInfo stale = provider.getSession();
+        List<Future<Request>> futures = runConcurrently(new Callable<Request>() {
+            @Override
+            public Request call() throws Exception {
+                provider.reauthenticate(stale);
+                return null;
+            }
+        });
+
+        int failures = 0;
+        for (Future<Request> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof BridgeSDKException);
+                failures++;
+            }
+        }
+        assertEquals(THREADS, failures);
+        // Waiters that arrived while the call was in flight did not make their own call.
+        assertTrue(reauthCount.get() < THREADS);
+    }
+
+    @Test
+    public void sessionReadsDoNotBlockWhileAuthenticating() throws Exception {
+        final CountDownLatch reauthStarted = new CountDownLatch(1);
+        final CountDownLatch releaseReauth = new CountDownLatch(1);
+        doAnswer(new Answer<Call<UserSessionInfo>>() {
+            @Override
+            public Call<UserSessionInfo> answer(InvocationOnMock invocation) throws Throwable {
+                @SuppressWarnings("unchecked")
+                Call<UserSessionInfo> call = mock(Call.class);
+                doAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        reauthStarted.countDown();
+                        releaseReauth.await();
+                        return retrofit2.Response.success(makeSession(1));
+                    }
+                }).when(call).execute();
+                return call;
+            }
+        }).when(authenticationApi).reauthenticate(any(SignIn.class));
+
+        Future<?> reauth = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                provider.reauthenticate();
+                return null;
+            }
+        });
+        assertTrue(reauthStarted.await(5, TimeUnit.SECONDS));
+
+        // While the reauth call is in flight, reads return the current session immediately.
+        assertEquals("sessionToken0", provider.getSession().getSessionToken());
+        assertEquals("sessionToken0", provider.retrieveSession().getSessionToken());
+
+        releaseReauth.countDown();
+        reauth.get(5, TimeUnit.SECONDS);
+        assertEquals("sessionToken1", provider.getSession().getSessionToken());
+    }
+
+    private <T> List<Future<T>> runConcurrently(final Callable<T> callable) throws Exception {
+        final CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    startGate.await();
+                    return callable.call();
+                }
+            }));
+        }
+        startGate.countDown();
+        for (Future<T> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // inspected by the caller
+            }
+        }
+        return futures;
+    }
+
+    private Call<UserSessionInfo> makeReauthCall() throws Exception {
+        final int count = reauthCount.incrementAndGet();
+        @SuppressWarnings("unchecked")
+        Call<UserSessionInfo> call = mock(Call.class);
+        doAnswer(new Answer<retrofit2.Response<UserSessionInfo>>() {
+            @Override
+            public retrofit2.Response<UserSessionInfo> answer(InvocationOnMock invocation) throws Throwable {
+                // Hold the call open long enough for the other threads to pile up behind it.
+                Thread.sleep(50);
+                return retrofit2.Response.success(makeSession(count));
+            }
+        }).when(call).execute();
+        return call;
+    }
+
+    private static UserSessionInfo makeSession(int count) {
+        UserSessionInfo session = new UserSessionInfo();
+        Tests.setVariableValueInObject(session, "sessionToken", "sessionToken" + count);
+        Tests.setVariableValueInObject(session, "reauthToken", "reauthToken" + count);
+        return session;
+    }
+
+    private static Response make401Response(String sessionToken) {
+        Request request = new Request.Builder().url("https://webservices.sagebridge.org/v3/activities")
+                .header(HeaderInterceptor.BRIDGE_SESSION, sessionToken).build();
+        return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(401)
+                .message("Unauthorized").build();
+    }
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -163,7 +164,7 @@ public class AuthenticationHandlerTest {
         Request request = authHandler.authenticate(route, response);
         
         assertNotNull(request);
-        verify(userSessionInfoProvider).reauthenticate();
+        verify(userSessionInfoProvider).reauthenticate(any(UserSessionInfo.class));
         verify(builder).header(HeaderInterceptor.BRIDGE_SESSION, "sessionToken");
     }
     
@@ -198,7 +199,7 @@ public class AuthenticationHandlerTest {
         Request request = authHandler.authenticate(route, response);
         
         assertNull(request);
-        verify(userSessionInfoProvider, never()).reauthenticate();
+        verify(userSessionInfoProvider, never()).reauthenticate(any(UserSessionInfo.class));
         verify(builder, never()).header(HeaderInterceptor.BRIDGE_SESSION, "sessionToken");
     }
 
@@ -223,7 +224,7 @@ public class AuthenticationHandlerTest {
         Request request = spyAuthHandler.authenticate(route, response);
 
         assertNotNull(request);
-        verify(userSessionInfoProvider, never()).reauthenticate();
+        verify(userSessionInfoProvider, never()).reauthenticate(any(UserSessionInfo.class));
         verify(builder).header(HeaderInterceptor.BRIDGE_SESSION, "sessionToken");
     }
 
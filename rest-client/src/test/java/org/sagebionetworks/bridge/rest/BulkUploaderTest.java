@@ -0,0 +1,377 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import retrofit2.Call;
+import retrofit2.Response;
+
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.exceptions.LimitExceededException;
+import org.sagebionetworks.bridge.rest.model.UploadRequest;
+import org.sagebionetworks.bridge.rest.model.UploadSession;
+import org.sagebionetworks.bridge.rest.model.UploadValidationStatus;
+
+public class BulkUploaderTest {
+
+    private File directory;
+    private ForConsentedUsersApi usersApi;
+    private S3Uploader s3Uploader;
+    private BulkUploader bulkUploader;
+    private AtomicInteger sessionCount;
+
+    @Before
+    public void before() throws Exception {
+        directory = Files.createTempDir();
+        for (int i = 0; i < 20; i++) {
+            Files.write(("file " + i).getBytes(), new File(directory, String.format("file%02d.zip", i)));
+        }
+        usersApi = mock(ForConsentedUsersApi.class);
+        s3Uploader = mock(S3Uploader.class);
+        sessionCount = new AtomicInteger();
+
+        doAnswer(new Answer<Call<UploadSession>>() {
+            @Override
+            public Call<UploadSession> answer(InvocationOnMock invocation) throws Throwable {
+                UploadSession session = new UploadSession();
+                int count = sessionCount.incrementAndGet();
+                Tests.setVariableValueInObject(session, "id", "upload" + count);
+                Tests.setVariableValueInObject(session, "url", "https://s3.amazonaws.com/upload" + count);
+                return makeCall(session);
+            }
+        }).when(usersApi).requestUploadSession(any(UploadRequest.class));
+        Call<UploadValidationStatus> completeCall = makeCall(new UploadValidationStatus());
+        doReturn(completeCall).when(usersApi).completeUploadSession(anyString(), eq(false), eq(false));
+
+        bulkUploader = new BulkUploader.Builder().withForConsentedUsersApi(usersApi).withS3Uploader(s3Uploader)
+                .withRetryBackoff(1, TimeUnit.MILLISECONDS).build();
+    }
+
+    @After
+    public void after() {
+        bulkUploader.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void uploadsAllFilesInDirectory() throws Exception {
+        List<BulkUploader.Result> results = bulkUploader.uploadDirectory(directory);
+
+        assertEquals(20, results.size());
+        for (int i = 0; i < 20; i++) {
+            BulkUploader.Result result = results.get(i);
+            assertTrue(result.isSuccess());
+            assertEquals(String.format("file%02d.zip", i), result.getFile().getName());
+            assertNull(result.getError());
+        }
+        verify(usersApi, times(20)).requestUploadSession(any(UploadRequest.class));
+        verify(s3Uploader, times(20)).uploadToS3(any(File.class), anyString(), eq("application/zip"),
+                anyString());
+        verify(usersApi, times(20)).completeUploadSession(anyString(), eq(false), eq(false));
+    }
+
+    @Test
+    public void retriesTransientFailures() throws Exception {
+        File file = new File(directory, "file00.zip");
+        doThrow(new IOException("connection reset")).doThrow(new BridgeSDKException("Slow down", 503))
+                .doNothing().when(s3Uploader)
+                .uploadToS3(eq(file), anyString(), anyString(), anyString());
+        @SuppressWarnings("unchecked")
+        Call<UploadSession> failedCall = mock(Call.class);
+        doThrow(new IOException("connection reset")).when(failedCall).execute();
+        UploadSession uploadSession = new UploadSession();
+        Tests.setVariableValueInObject(uploadSession, "id", "upload1");
+        Tests.setVariableValueInObject(uploadSession, "url", "https://s3.amazonaws.com/upload1");
+        Call<UploadSession> requestCall = makeCall(uploadSession);
+        doReturn(failedCall).doReturn(requestCall).when(usersApi).requestUploadSession(any(UploadRequest.class));
+
+        UploadSession session = bulkUploader.submit(file).get(10, TimeUnit.SECONDS);
+
+        assertEquals("upload1", session.getId());
+        verify(usersApi, times(2)).requestUploadSession(any(UploadRequest.class));
+        verify(s3Uploader, times(3)).uploadToS3(eq(file), anyString(), anyString(), anyString());
+        verify(usersApi, times(1)).completeUploadSession("upload1", false, false);
+    }
+
+    @Test
+    public void retriesBridgeErrorResponses() throws Exception {
+        File file = new File(directory, "file00.zip");
+        UploadSession uploadSession = new UploadSession();
+        Tests.setVariableValueInObject(uploadSession, "id", "upload1");
+        Tests.setVariableValueInObject(uploadSession, "url", "https://s3.amazonaws.com/upload1");
+        @SuppressWarnings("unchecked")
+        Call<UploadSession> requestCall = mock(Call.class);
+        doThrow(new LimitExceededException("Too many requests", "v3/uploads"))
+                .doThrow(new BridgeSDKException("Bad gateway", 502)).doReturn(Response.success(uploadSession))
+                .when(requestCall).execute();
+        doReturn(requestCall).when(usersApi).requestUploadSession(any(UploadRequest.class));
+        @SuppressWarnings("unchecked")
+        Call<UploadValidationStatus> completeCall = mock(Call.class);
+        doThrow(new LimitExceededException("Too many requests", "v3/uploads/upload1/complete"))
+                .doReturn(Response.success(null)).when(completeCall).execute();
+        doReturn(completeCall).when(usersApi).completeUploadSession(anyString(), eq(false), eq(false));
+
+        List<BulkUploader.Result> results = bulkUploader.uploadAll(Collections.singletonList(file));
+
+        // The client has no RetryInterceptor, so these are retried here
+        assertTrue(results.get(0).isSuccess());
+        verify(requestCall, times(3)).execute();
+        verify(completeCall, times(2)).execute();
+    }
+
+    @Test
+    public void doesNotRetryCompletionTheServerMayHaveProcessed() throws Exception {
+        File file0 = new File(directory, "file00.zip");
+        File file1 = new File(directory, "file01.zip");
+        @SuppressWarnings("unchecked")
+        Call<UploadValidationStatus> resetCall = mock(Call.class);
+        doThrow(new IOException("connection reset")).when(resetCall).execute();
+        @SuppressWarnings("unchecked")
+        Call<UploadValidationStatus> failedCall = mock(Call.class);
+        doThrow(new BridgeSDKException("Bad gateway", 502)).when(failedCall).execute();
+        doReturn(resetCall).when(usersApi).completeUploadSession(eq("upload1"), eq(false), eq(false));
+        doReturn(failedCall).when(usersApi).completeUploadSession(eq("upload2"), eq(false), eq(false));
+
+        BulkUploader uploader = new BulkUploader.Builder().withForConsentedUsersApi(usersApi)
+                .withS3Uploader(s3Uploader).withRequestConcurrency(1).withRetryBackoff(1, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            List<BulkUploader.Result> results = uploader.uploadAll(Arrays.asList(file0, file1));
+
+            assertTrue(results.get(0).getError() instanceof IOException);
+            assertEquals(502, ((BridgeSDKException) results.get(1).getError()).getStatusCode());
+        } finally {
+            uploader.close();
+        }
+        verify(resetCall, times(1)).execute();
+        verify(failedCall, times(1)).execute();
+    }
+
+    @Test
+    public void leavesBridgeErrorResponsesToClientRetries() throws Exception {
+        File file = new File(directory, "file00.zip");
+        @SuppressWarnings("unchecked")
+        Call<UploadSession> throttledCall = mock(Call.class);
+        doThrow(new LimitExceededException("Too many requests", "v3/uploads")).when(throttledCall).execute();
+        doReturn(throttledCall).when(usersApi).requestUploadSession(any(UploadRequest.class));
+
+        TransportSettings transportSettings = new TransportSettings.Builder().withMaxRetries(2).build();
+        BulkUploader uploader = new BulkUploader.Builder().withForConsentedUsersApi(usersApi)
+                .withS3Uploader(s3Uploader).withTransportSettings(transportSettings)
+                .withRetryBackoff(1, TimeUnit.MILLISECONDS).build();
+        try {
+            List<BulkUploader.Result> results = uploader.uploadAll(Collections.singletonList(file));
+
+            assertTrue(results.get(0).getError() instanceof LimitExceededException);
+        } finally {
+            uploader.close();
+        }
+        // The client's RetryInterceptor already retried it
+        verify(throttledCall, times(1)).execute();
+    }
+
+    @Test
+    public void closeCancelsUnfinishedUploads() throws Exception {
+        final CountDownLatch requested = new CountDownLatch(1);
+        doAnswer(new Answer<Call<UploadSession>>() {
+            @Override
+            public Call<UploadSession> answer(InvocationOnMock invocation) throws Throwable {
+                requested.countDown();
+                new CountDownLatch(1).await(); // until interrupted by close()
+                return null;
+            }
+        }).when(usersApi).requestUploadSession(any(UploadRequest.class));
+        final BulkUploader uploader = new BulkUploader.Builder().withForConsentedUsersApi(usersApi)
+                .withS3Uploader(s3Uploader).withRequestConcurrency(1).withMaxRetries(0).build();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<BulkUploader.Result>> future = executor.submit(new Callable<List<BulkUploader.Result>>() {
+                @Override
+                public List<BulkUploader.Result> call() throws Exception {
+                    return uploader.uploadAll(Arrays.asList(new File(directory, "file00.zip"),
+                            new File(directory, "file01.zip"), new File(directory, "file02.zip")));
+                }
+            });
+            assertTrue(requested.await(10, TimeUnit.SECONDS));
+            uploader.close();
+
+            // The queued uploads never started, but uploadAll still returns
+            List<BulkUploader.Result> results = future.get(10, TimeUnit.SECONDS);
+            for (BulkUploader.Result result : results) {
+                assertFalse(result.isSuccess());
+            }
+            assertTrue(results.get(2).getError() instanceof CancellationException);
+        } finally {
+            executor.shutdownNow();
+        }
+        try {
+            uploader.submit(new File(directory, "file03.zip"));
+            fail("Should have thrown exception");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void uploadAllAfterCloseReportsCancelledFiles() throws Exception {
+        bulkUploader.close();
+
+        List<BulkUploader.Result> results = bulkUploader.uploadAll(Arrays.asList(new File(directory, "file00.zip"),
+                new File(directory, "file01.zip")));
+
+        assertEquals(2, results.size());
+        assertEquals("file00.zip", results.get(0).getFile().getName());
+        assertEquals("file01.zip", results.get(1).getFile().getName());
+        for (BulkUploader.Result result : results) {
+            assertTrue(result.getError() instanceof CancellationException);
+        }
+        verify(usersApi, never()).requestUploadSession(any(UploadRequest.class));
+    }
+
+    @Test
+    public void limitsFilesInFlight() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        doAnswer(new Answer<Call<UploadSession>>() {
+            @Override
+            public Call<UploadSession> answer(InvocationOnMock invocation) throws Throwable {
+                int count = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), count));
+                }
+                UploadSession session = new UploadSession();
+                Tests.setVariableValueInObject(session, "id", "upload" + sessionCount.incrementAndGet());
+                Tests.setVariableValueInObject(session, "url", "https://s3.amazonaws.com/upload");
+                return makeCall(session);
+            }
+        }).when(usersApi).requestUploadSession(any(UploadRequest.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(5); // S3 is the slow step
+                return null;
+            }
+        }).when(s3Uploader).uploadToS3(any(File.class), anyString(), anyString(), anyString());
+        doAnswer(new Answer<Call<UploadValidationStatus>>() {
+            @Override
+            public Call<UploadValidationStatus> answer(InvocationOnMock invocation) throws Throwable {
+                inFlight.decrementAndGet();
+                return makeCall(new UploadValidationStatus());
+            }
+        }).when(usersApi).completeUploadSession(anyString(), eq(false), eq(false));
+
+        try (BulkUploader uploader = new BulkUploader.Builder().withForConsentedUsersApi(usersApi)
+                .withS3Uploader(s3Uploader).withRequestConcurrency(4).withUploadConcurrency(1)
+                .withMaxFilesInFlight(3).build()) {
+            List<BulkUploader.Result> results = uploader.uploadDirectory(directory);
+            for (BulkUploader.Result result : results) {
+                assertTrue(result.isSuccess());
+            }
+        }
+        // Sessions are not requested for the whole batch ahead of the (slow) uploads to S3
+        assertTrue("max in flight was " + maxInFlight.get(), maxInFlight.get() <= 3);
+        verify(usersApi, times(20)).requestUploadSession(any(UploadRequest.class));
+    }
+
+    @Test
+    public void backoffSaturatesInsteadOfOverflowing() {
+        assertEquals(1000L, BulkUploader.backoffMillis(1000L, 0));
+        assertEquals(8000L, BulkUploader.backoffMillis(1000L, 3));
+        assertEquals(TimeUnit.MINUTES.toMillis(1), BulkUploader.backoffMillis(1000L, 6));
+        assertEquals(TimeUnit.MINUTES.toMillis(1), BulkUploader.backoffMillis(1000L, 54));
+        assertEquals(TimeUnit.MINUTES.toMillis(1), BulkUploader.backoffMillis(1000L, 200));
+        assertEquals(TimeUnit.MINUTES.toMillis(1), BulkUploader.backoffMillis(Long.MAX_VALUE / 2, 1));
+    }
+
+    @Test
+    public void reportsPermanentFailuresPerFile() throws Exception {
+        File badFile = new File(directory, "file03.zip");
+        doThrow(new BadRequestException("Bad request", "s3")).when(s3Uploader)
+                .uploadToS3(eq(badFile), anyString(), anyString(), anyString());
+
+        List<BulkUploader.Result> results = bulkUploader.uploadDirectory(directory);
+
+        for (BulkUploader.Result result : results) {
+            if (result.getFile().equals(badFile)) {
+                assertFalse(result.isSuccess());
+                assertNull(result.getUploadSession());
+                assertTrue(result.getError() instanceof BadRequestException);
+            } else {
+                assertTrue(result.isSuccess());
+            }
+        }
+        // Not retried, and never completed
+        verify(s3Uploader, times(1)).uploadToS3(eq(badFile), anyString(), anyString(), anyString());
+        verify(usersApi, times(19)).completeUploadSession(anyString(), eq(false), eq(false));
+    }
+
+    @Test
+    public void givesUpAfterMaxRetries() throws Exception {
+        File file = new File(directory, "file00.zip");
+        doThrow(new IOException("connection reset")).when(s3Uploader)
+                .uploadToS3(eq(file), anyString(), anyString(), anyString());
+
+        List<BulkUploader.Result> results = bulkUploader.uploadAll(Collections.singletonList(file));
+
+        assertTrue(results.get(0).getError() instanceof IOException);
+        verify(s3Uploader, times(4)).uploadToS3(eq(file), anyString(), anyString(), anyString());
+        verify(usersApi, never()).completeUploadSession(anyString(), eq(false), eq(false));
+    }
+
+    @Test
+    public void transientFailures() {
+        assertTrue(BulkUploader.isTransient(new IOException()));
+        assertTrue(BulkUploader.isTransient(new LimitExceededException("Too many requests", "v3/uploads")));
+        assertTrue(BulkUploader.isTransient(new BridgeSDKException("Service unavailable", 503)));
+        assertFalse(BulkUploader.isTransient(new FileNotFoundException()));
+        assertFalse(BulkUploader.isTransient(new BadRequestException("Bad request", "v3/uploads")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Call<T> makeCall(T body) throws IOException {
+        Call<T> call = mock(Call.class);
+        doReturn(Response.success(body)).when(call).execute();
+        return call;
+    }
+}
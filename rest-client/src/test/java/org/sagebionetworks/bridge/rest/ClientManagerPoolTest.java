@@ -0,0 +1,120 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import org.sagebionetworks.bridge.rest.model.SignIn;
+
+public class ClientManagerPoolTest {
+
+    private static final SignIn SIGN_IN_1 = new SignIn().appId("test-app").email("email1@email.com")
+            .password("password");
+    private static final SignIn SIGN_IN_2 = new SignIn().appId("test-app").email("email2@email.com")
+            .password("password");
+
+    private AtomicLong nanos;
+    private ClientManagerPool pool;
+
+    @Before
+    public void before() {
+        nanos = new AtomicLong();
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        pool = new ClientManagerPool(new ClientManager.Builder(), 2, 10, TimeUnit.MINUTES, ticker);
+    }
+
+    @Test
+    public void returnsSameClientManagerForEqualCredentials() {
+        ClientManager manager = pool.get(SIGN_IN_1);
+        SignIn copy = new SignIn().appId("test-app").email("email1@email.com").password("password");
+
+        assertSame(manager, pool.get(copy));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void clientManagersForSameAppShareTransport() {
+        ClientManager manager1 = pool.get(SIGN_IN_1);
+        ClientManager manager2 = pool.get(SIGN_IN_2);
+
+        assertNotSame(manager1, manager2);
+        assertNotSame(manager1.getAuthenticatedClientProvider(), manager2.getAuthenticatedClientProvider());
+        assertSame(manager1.getAuthenticatedClientProvider().getHttpClient().connectionPool(),
+                manager2.getAuthenticatedClientProvider().getHttpClient().connectionPool());
+    }
+
+    @Test
+    public void clientManagersForDifferentAppsDoNotShareTransport() {
+        ClientManager manager1 = pool.get(SIGN_IN_1);
+        ClientManager manager2 = pool.get(new SignIn().appId("other-app").email("email1@email.com")
+                .password("password"));
+
+        assertNotSame(manager1.getAuthenticatedClientProvider().getHttpClient().connectionPool(),
+                manager2.getAuthenticatedClientProvider().getHttpClient().connectionPool());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ClientManager manager1 = pool.get(SIGN_IN_1);
+        pool.get(SIGN_IN_2);
+        pool.get(SIGN_IN_1);
+        pool.get(new SignIn().appId("test-app").email("email3@email.com").password("password"));
+
+        assertEquals(2, pool.size());
+        assertSame(manager1, pool.get(SIGN_IN_1));
+    }
+
+    @Test
+    public void evictsIdleClientManagers() {
+        ClientManager manager = pool.get(SIGN_IN_1);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        assertSame(manager, pool.get(SIGN_IN_1));
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        assertEquals(0, pool.size());
+        assertNotSame(manager, pool.get(SIGN_IN_1));
+    }
+
+    @Test
+    public void invalidate() {
+        ClientManager manager = pool.get(SIGN_IN_1);
+        pool.invalidate(SIGN_IN_1);
+
+        assertEquals(0, pool.size());
+        assertNotSame(manager, pool.get(SIGN_IN_1));
+    }
+
+    @Test
+    public void evictedClientManagersStopRefreshingSessions() {
+        pool = new ClientManagerPool(new ClientManager.Builder().withSessionRefresh(10, 0, TimeUnit.MINUTES), 1, 10,
+                TimeUnit.MINUTES);
+        UserSessionInfoProvider provider1 = pool.get(SIGN_IN_1).getAuthenticatedClientProvider()
+                .getUserSessionInfoProvider();
+        assertNotNull(Whitebox.getInternalState(provider1, "refreshTask"));
+
+        // Evicts the first ClientManager
+        UserSessionInfoProvider provider2 = pool.get(SIGN_IN_2).getAuthenticatedClientProvider()
+                .getUserSessionInfoProvider();
+        assertNull(Whitebox.getInternalState(provider1, "refreshTask"));
+        assertNotNull(Whitebox.getInternalState(provider2, "refreshTask"));
+
+        pool.invalidate(SIGN_IN_2);
+        assertNull(Whitebox.getInternalState(provider2, "refreshTask"));
+    }
+}
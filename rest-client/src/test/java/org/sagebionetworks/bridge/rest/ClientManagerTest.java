@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doReturn;
 
@@ -52,6 +53,21 @@ public class ClientManagerTest {
         assertEquals("debug", manager.getConfig().getLogLevel());
     }
     
+    @Test
+    public void transportSettingsFromConfigAreReadForEachBuild() {
+        doReturn(new SignIn().appId("app-identifier").email("account@email.com").password("account-password"))
+                .when(config).getAccountSignIn();
+        doReturn(Environment.PRODUCTION).when(config).getEnvironment();
+        doReturn("1").when(config).getSdkVersion();
+        doReturn("2").when(config).getMaxRetries();
+        ClientManager.Builder builder = new ClientManager.Builder().withConfig(config);
+
+        assertEquals(2, builder.build().getTransportSettings().getMaxRetries());
+
+        doReturn("5").when(config).getMaxRetries();
+        assertEquals(5, builder.build().getTransportSettings().getMaxRetries());
+    }
+
     @Test
     public void testClientInfoLoadedFromPropsFile() {
         SignIn signIn = new SignIn().appId("app-identifier").email("account@email.com")
@@ -136,4 +152,32 @@ public class ClientManagerTest {
         assertNotNull(manager.getClientInfo());
         assertEquals("user-agent-override/1", manager.getAuthenticatedClientProvider().getUserAgent());
     }
+
+    @Test
+    public void decodingSettingsConfigureDefaultCodec() {
+        SignIn signIn = new SignIn().appId("app-identifier").email("account@email.com")
+                .password("account-password");
+        DecodingSettings settings = new DecodingSettings.Builder().withLazyDecoding(ClientInfo.class).build();
+        ClientManager manager = new ClientManager.Builder().withSignIn(signIn).withDecodingSettings(settings)
+                .build();
+        assertSame(settings, manager.getDecodingSettings());
+        assertTrue(manager.getJsonCodec() instanceof GsonJsonCodec);
+    }
+
+    @Test
+    public void customJsonCodec() {
+        SignIn signIn = new SignIn().appId("app-identifier").email("account@email.com")
+                .password("account-password");
+        JsonCodec codec = new GsonJsonCodec(RestUtils.GSON);
+        ClientManager manager = new ClientManager.Builder().withSignIn(signIn).withJsonCodec(codec).build();
+        assertSame(codec, manager.getJsonCodec());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void customJsonCodecCannotUseDecodingSettings() {
+        SignIn signIn = new SignIn().appId("app-identifier").email("account@email.com")
+                .password("account-password");
+        new ClientManager.Builder().withSignIn(signIn).withJsonCodec(new GsonJsonCodec(RestUtils.GSON))
+                .withDecodingSettings(new DecodingSettings.Builder().build()).build();
+    }
 }
@@ -0,0 +1,212 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.rest.model.AccountSummary;
+import org.sagebionetworks.bridge.rest.model.AccountSummaryList;
+import org.sagebionetworks.bridge.rest.model.Survey;
+import org.sagebionetworks.bridge.rest.model.SurveyElement;
+import org.sagebionetworks.bridge.rest.model.SurveyQuestion;
+
+public class DecodingSettingsTest {
+
+    private static final String ACCOUNTS_JSON = Tests.unescapeJson("{'items':[{'id':'userId',"
+            + "'createdOn':'2021-01-02T03:04:05.000Z','firstName':'First','attributes':{'a':'b'},"
+            + "'roles':['developer'],'orgMembership':'orgId','type':'AccountSummary'}],"
+            + "'total':1,'type':'PagedResourceList'}");
+
+    private static final String SURVEY_JSON = Tests.unescapeJson("{'guid':'surveyGuid','name':'Survey',"
+            + "'elements':[{'guid':'elementGuid','identifier':'q1','prompt':'How are you?',"
+            + "'constraints':{'dataType':'string','maxLength':10,'type':'StringConstraints'},"
+            + "'type':'SurveyQuestion'}],'type':'Survey'}");
+
+    @Test
+    public void readsOnlyProjectedFields() {
+        DecodingSettings settings = new DecodingSettings.Builder()
+                .withProjection(AccountSummary.class, "id", "createdOn").build();
+        Gson gson = RestUtils.createGson(true, settings);
+
+        AccountSummaryList list = gson.fromJson(ACCOUNTS_JSON, AccountSummaryList.class);
+
+        // Types that aren't projected are read in full
+        assertEquals(Integer.valueOf(1), list.getTotal());
+        AccountSummary summary = list.getItems().get(0);
+        assertEquals("userId", summary.getId());
+        assertEquals(1609556645000L, summary.getCreatedOn().getMillis());
+        assertNull(summary.getFirstName());
+        assertNull(summary.getOrgMembership());
+        assertTrue(summary.getAttributes() == null || summary.getAttributes().isEmpty());
+        assertTrue(summary.getRoles() == null || summary.getRoles().isEmpty());
+    }
+
+    @Test
+    public void projectsSubtypesOfPolymorphicTypes() {
+        DecodingSettings settings = new DecodingSettings.Builder()
+                .withProjection(SurveyQuestion.class, "identifier", "type").build();
+        Gson gson = RestUtils.createGson(true, settings);
+
+        Survey survey = gson.fromJson(SURVEY_JSON, Survey.class);
+
+        assertEquals("surveyGuid", survey.getGuid());
+        SurveyQuestion question = (SurveyQuestion) survey.getElements().get(0);
+        assertEquals("q1", question.getIdentifier());
+        assertNull(question.getPrompt());
+        assertNull(question.getConstraints());
+    }
+
+    @Test
+    public void projectedSubtypeKeepsItsType() {
+        // The type field is not in the projection
+        DecodingSettings settings = new DecodingSettings.Builder()
+                .withProjection(SurveyQuestion.class, "identifier").build();
+        Gson gson = RestUtils.createGson(true, settings);
+
+        Survey survey = gson.fromJson(SURVEY_JSON, Survey.class);
+
+        SurveyQuestion question = (SurveyQuestion) survey.getElements().get(0);
+        assertEquals("q1", question.getIdentifier());
+        assertEquals("SurveyQuestion", question.getType());
+        assertNull(question.getGuid());
+        assertNull(question.getPrompt());
+    }
+
+    @Test
+    public void projectionHasNoEffectWithoutGeneratedAdapters() {
+        DecodingSettings settings = new DecodingSettings.Builder()
+                .withProjection(AccountSummary.class, "id").build();
+        Gson gson = RestUtils.createGson(false, settings);
+
+        AccountSummaryList list = gson.fromJson(ACCOUNTS_JSON, AccountSummaryList.class);
+
+        assertEquals("First", list.getItems().get(0).getFirstName());
+    }
+
+    @Test
+    public void projectedObjectsAreWrittenInFull() {
+        DecodingSettings settings = new DecodingSettings.Builder()
+                .withProjection(AccountSummary.class, "id").build();
+        Gson gson = RestUtils.createGson(true, settings);
+        AccountSummaryList list = RestUtils.GSON.fromJson(ACCOUNTS_JSON, AccountSummaryList.class);
+
+        assertEquals(RestUtils.GSON.toJson(list), gson.toJson(list));
+    }
+
+    @Test
+    public void build() {
+        DecodingSettings settings = new DecodingSettings.Builder()
+                .withLazyDecoding(Survey.class)
+                .withProjection(AccountSummary.class, "id", "createdOn").build();
+
+        assertEquals(ImmutableSet.of(Survey.class), settings.getLazyTypes());
+        assertEquals(ImmutableSet.of("id", "createdOn"), settings.getProjections().get(AccountSummary.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void buildRejectsProjectedLazyType() {
+        new DecodingSettings.Builder().withLazyDecoding(Survey.class).withProjection(Survey.class, "guid").build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void buildRejectsDeduplicatedLazyType() {
+        new DecodingSettings.Builder().withLazyDecoding(Survey.class).withStringDeduplication(Survey.class, "name")
+                .build();
+    }
+
+    @Test
+    public void projectionIncludesInheritedFields() {
+        DecodingSettings settings = new DecodingSettings.Builder()
+                .withProjection(AccountSummaryList.class, "items", "total").build();
+
+        assertEquals(ImmutableSet.of("items", "total"), settings.getProjections().get(AccountSummaryList.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void projectionRejectsUnknownField() {
+        new DecodingSettings.Builder().withProjection(AccountSummary.class, "id", "createdon");
+    }
+
+    @Test
+    public void deduplicatesStrings() {
+        DecodingSettings settings = new DecodingSettings.Builder()
+                .withStringDeduplication(AccountSummary.class, "orgMembership", "dataGroups").build();
+        Gson gson = RestUtils.createGson(true, settings);
+        String json = Tests.unescapeJson("{'items':[{'id':'user1','orgMembership':'orgId','dataGroups':['a','b']},"
+                + "{'id':'user2','orgMembership':'orgId','dataGroups':['b','a']}]}");
+
+        List<AccountSummary> items = gson.fromJson(json, AccountSummaryList.class).getItems();
+
+        assertSame(items.get(0).getOrgMembership(), items.get(1).getOrgMembership());
+        assertSame(items.get(0).getDataGroups().get(0), items.get(1).getDataGroups().get(1));
+        assertSame(items.get(0).getDataGroups().get(1), items.get(1).getDataGroups().get(0));
+        // Other fields are left alone
+        assertEquals("user1", items.get(0).getId());
+        assertEquals(ImmutableList.of("b", "a"), items.get(1).getDataGroups());
+    }
+
+    @Test
+    public void deduplicatesWithReflectiveAdapters() {
+        DecodingSettings settings = new DecodingSettings.Builder()
+                .withStringDeduplication(AccountSummary.class, "orgMembership").build();
+        Gson gson = RestUtils.createGson(false, settings);
+        String json = Tests.unescapeJson("{'items':[{'orgMembership':'orgId'},{'orgMembership':'orgId'}]}");
+
+        List<AccountSummary> items = gson.fromJson(json, AccountSummaryList.class).getItems();
+
+        assertSame(items.get(0).getOrgMembership(), items.get(1).getOrgMembership());
+    }
+
+    @Test
+    public void deduplicatesFieldsOfPolymorphicSubtypes() {
+        String json = Tests.unescapeJson("{'elements':[{'type':'SurveyQuestion','identifier':'q'},"
+                + "{'identifier':'q','type':'SurveyQuestion'},{'type':'SurveyInfoScreen','identifier':'q'}]}");
+        for (boolean useGeneratedAdapters : new boolean[] { true, false }) {
+            // Fields of the base type apply to all its subtypes
+            DecodingSettings settings = new DecodingSettings.Builder()
+                    .withStringDeduplication(SurveyElement.class, "type")
+                    .withStringDeduplication(SurveyQuestion.class, "identifier").build();
+            Gson gson = RestUtils.createGson(useGeneratedAdapters, settings);
+
+            List<SurveyElement> elements = gson.fromJson(json, Survey.class).getElements();
+
+            assertSame(elements.get(0).getType(), elements.get(1).getType());
+            assertSame(elements.get(0).getIdentifier(), elements.get(1).getIdentifier());
+            assertEquals("SurveyInfoScreen", elements.get(2).getType());
+            assertNotSame(elements.get(0).getIdentifier(), elements.get(2).getIdentifier());
+        }
+    }
+
+    @Test
+    public void stringPoolIsBounded() {
+        DecodingSettings settings = new DecodingSettings.Builder()
+                .withStringDeduplication(AccountSummary.class, "orgMembership").withStringPoolSize(1).build();
+        Gson gson = RestUtils.createGson(true, settings);
+        String json = Tests.unescapeJson("{'items':[{'orgMembership':'org1'},{'orgMembership':'org2'},"
+                + "{'orgMembership':'org2'}]}");
+
+        List<AccountSummary> items = gson.fromJson(json, AccountSummaryList.class).getItems();
+
+        assertEquals("org2", items.get(1).getOrgMembership());
+        assertNotSame(items.get(1).getOrgMembership(), items.get(2).getOrgMembership());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deduplicationRejectsUnknownField() {
+        new DecodingSettings.Builder().withStringDeduplication(AccountSummary.class, "orgmembership");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deduplicationRejectsFieldsThatAreNotStrings() {
+        new DecodingSettings.Builder().withStringDeduplication(AccountSummary.class, "createdOn");
+    }
+}
@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.rest;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doReturn;
 
@@ -18,12 +19,14 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import org.sagebionetworks.bridge.rest.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.rest.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.rest.exceptions.ConsentRequiredException;
 import org.sagebionetworks.bridge.rest.exceptions.EndpointNotFoundException;
 import org.sagebionetworks.bridge.rest.exceptions.EntityAlreadyExistsException;
 import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.rest.exceptions.InvalidEntityException;
+import org.sagebionetworks.bridge.rest.exceptions.LimitExceededException;
 import org.sagebionetworks.bridge.rest.exceptions.NotAuthenticatedException;
 import org.sagebionetworks.bridge.rest.exceptions.NotImplementedException;
 import org.sagebionetworks.bridge.rest.exceptions.PublishedSurveyException;
@@ -35,6 +38,7 @@ import okhttp3.Interceptor.Chain;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.Buffer;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({Request.class, Response.class, Chain.class, HttpUrl.class, ResponseBody.class})
@@ -78,7 +82,7 @@ public class ErrorResponseInterceptorTest {
     public void notImplementedException() throws Exception {
         doReturn(501).when(response).code();
         String json = Tests.unescapeJson("{'message':'This service has not been implemented.','type':'NotImplementedException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
         
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -94,7 +98,7 @@ public class ErrorResponseInterceptorTest {
     public void publishedSurvey400() throws Exception {
         doReturn(400).when(response).code();
         String json = Tests.unescapeJson("{'message':'A published survey cannot be updated or deleted (only closed).','type':'PublishedSurveyException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
 
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -110,7 +114,7 @@ public class ErrorResponseInterceptorTest {
     public void badRequest400() throws Exception {
         doReturn(400).when(response).code();
         String json = Tests.unescapeJson("{'message':'Bad request','type':'BadRequestException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
 
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -127,7 +131,7 @@ public class ErrorResponseInterceptorTest {
         // Play sends responses like these if you call an unrecognized URL.
         doReturn(404).when(response).code();
         String json = Tests.unescapeJson("{'message':'Endpoint not found.','type':'EndpointNotFoundException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
 
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -143,7 +147,7 @@ public class ErrorResponseInterceptorTest {
     public void notAuthenticated401() throws Exception {
         doReturn(401).when(response).code();
         String json = Tests.unescapeJson("{'message':'Not signed in.','type':'NotAuthenticatedException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
 
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -159,7 +163,7 @@ public class ErrorResponseInterceptorTest {
     public void unauthorized403() throws Exception {
         doReturn(403).when(response).code();
         String json = Tests.unescapeJson("{'message':'Caller does not have permission to access this service.','type':'UnauthorizedException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
 
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -175,7 +179,7 @@ public class ErrorResponseInterceptorTest {
     public void interceptEntityNotFoundException() throws IOException {
         doReturn(404).when(response).code();
         String json = Tests.unescapeJson("{'message':'User not found.','type':'EntityNotFoundException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
         
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -194,7 +198,7 @@ public class ErrorResponseInterceptorTest {
                 "'http://endpoint/','message':'General error message','type':'InvalidEntityException'}");
         
         doReturn(400).when(response).code();
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
             interceptor.intercept(chain);
@@ -215,7 +219,7 @@ public class ErrorResponseInterceptorTest {
     public void entityAlreadyExists409() throws Exception {
         doReturn(409).when(response).code();
         String json = Tests.unescapeJson("{'message':'Survey already exists','type':'EntityAlreadyExistsException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
 
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -231,7 +235,7 @@ public class ErrorResponseInterceptorTest {
     public void concurrentModification409() throws Exception {
         doReturn(409).when(response).code();
         String json = Tests.unescapeJson("{'message':'Survey has the wrong version number','type':'ConcurrentModificationException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
 
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -247,7 +251,7 @@ public class ErrorResponseInterceptorTest {
     public void unsupportedVersion410() throws Exception {
         doReturn(410).when(response).code();
         String json = Tests.unescapeJson("{'message':'This app version is not supported. Please update.','type':'UnsupportedVersionException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
 
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -263,7 +267,7 @@ public class ErrorResponseInterceptorTest {
     @Test
     public void consentRequired412NoSession() throws Exception {
         doReturn(412).when(response).code();
-        doReturn("Missing session info!").when(body).string();
+        doReturn(source("Missing session info!")).when(body).source();
         doReturn("Missing session info!").when(response).message();
 
         try {
@@ -280,7 +284,7 @@ public class ErrorResponseInterceptorTest {
     public void serverError500() throws Exception {
         doReturn(500).when(response).code();
         String json = Tests.unescapeJson("{'message':'Something went terribly wrong!','type':'BridgeServerException'}");
-        doReturn(json).when(body).string();
+        doReturn(source(json)).when(body).source();
 
         try {
             ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor();
@@ -296,7 +300,7 @@ public class ErrorResponseInterceptorTest {
     public void serviceUnavailable503() throws Exception {
         // This might happen if the load balancer is overloaded.
         doReturn(503).when(response).code();
-        doReturn("503 Service Unavailable").when(body).string();
+        doReturn(source("503 Service Unavailable")).when(body).source();
         doReturn("Load balancer error message").when(response).message();
 
         try {
@@ -314,7 +318,7 @@ public class ErrorResponseInterceptorTest {
     public void unknownErrorInvalidBodyNoMessage() throws Exception {
         // This might happen if the load balancer is overloaded.
         doReturn(500).when(response).code();
-        doReturn("Invalid response body").when(body).string();
+        doReturn(source("Invalid response body")).when(body).source();
         doReturn(null).when(response).message();
 
         try {
@@ -332,7 +336,7 @@ public class ErrorResponseInterceptorTest {
     public void unknownErrorInvalidBodyHTML() throws Exception {
         // This might happen if the load balancer is overloaded.
         doReturn(400).when(response).code();
-        doReturn("<!doctype html><html lang=\"en\"><head><title>The HTML5 Herald</title></head><body></body></html>").when(body).string();
+        doReturn(source("<!doctype html><html lang=\"en\"><head><title>The HTML5 Herald</title></head><body></body></html>")).when(body).source();
         doReturn(null).when(response).message();
 
         try {
@@ -343,5 +347,92 @@ public class ErrorResponseInterceptorTest {
             assertEquals(400, e.getStatusCode());
             assertEquals("There has been an error on the server", e.getMessage());
         }
-    }    
+    }
+
+    @Test
+    public void limitExceededWithoutStackTrace() throws Exception {
+        doReturn(429).when(response).code();
+        String json = Tests.unescapeJson("{'message':'Too many requests','type':'LimitExceededException'}");
+        doReturn(source(json)).when(body).source();
+
+        try {
+            ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor(GsonJsonCodec.getDefault(), true);
+            interceptor.intercept(chain);
+            fail("Should have thrown exception");
+        } catch(LimitExceededException e) {
+            assertEquals(429, e.getStatusCode());
+            assertEquals("Too many requests", e.getMessage());
+            assertEquals(0, e.getStackTrace().length);
+        }
+    }
+
+    @Test
+    public void serverErrorCauseCanBeSet() throws Exception {
+        for (boolean stackless : new boolean[] { false, true }) {
+            doReturn(500).when(response).code();
+            String json = Tests.unescapeJson("{'message':'Server error','type':'BridgeServiceException'}");
+            doReturn(source(json)).when(body).source();
+
+            try {
+                ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor(GsonJsonCodec.getDefault(),
+                        stackless);
+                interceptor.intercept(chain);
+                fail("Should have thrown exception");
+            } catch(BridgeServiceException e) {
+                assertEquals(stackless, e.getStackTrace().length == 0);
+                RuntimeException cause = new RuntimeException("reauth failed");
+                e.initCause(cause);
+                assertSame(cause, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void unknownServerErrorWithoutStackTraceCauseCanBeSet() throws Exception {
+        doReturn(503).when(response).code();
+        doReturn(source("")).when(body).source();
+        doReturn("Service Unavailable").when(response).message();
+
+        try {
+            ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor(GsonJsonCodec.getDefault(), true);
+            interceptor.intercept(chain);
+            fail("Should have thrown exception");
+        } catch(BridgeSDKException e) {
+            assertEquals(503, e.getStatusCode());
+            assertEquals(0, e.getStackTrace().length);
+            RuntimeException cause = new RuntimeException("reauth failed");
+            e.initCause(cause);
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    @Test
+    public void nonRetryableErrorKeepsStackTrace() throws Exception {
+        doReturn(404).when(response).code();
+        String json = Tests.unescapeJson("{'message':'Not found','type':'EntityNotFoundException'}");
+        doReturn(source(json)).when(body).source();
+
+        try {
+            ErrorResponseInterceptor interceptor = new ErrorResponseInterceptor(GsonJsonCodec.getDefault(), true);
+            interceptor.intercept(chain);
+            fail("Should have thrown exception");
+        } catch(EntityNotFoundException e) {
+            assertTrue(e.getStackTrace().length > 0);
+        }
+    }
+
+    @Test
+    public void registryCreatesEachExceptionType() throws Exception {
+        for (Map.Entry<String, ErrorResponseInterceptor.ExceptionFactory> entry :
+                ErrorResponseInterceptor.EXCEPTION_FACTORIES.entrySet()) {
+            BridgeSDKException e = entry.getValue().create("message", "http://someurl/", true);
+            assertEquals(entry.getKey(), e.getClass().getSimpleName());
+            assertEquals("message", e.getMessage());
+            assertEquals("http://someurl/", e.getRestEndpoint());
+        }
+    }
+
+    private static Buffer source(String body) {
+        return new Buffer().writeUtf8(body);
+    }
 }
@@ -0,0 +1,72 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.rest.model.SurveyElement;
+import org.sagebionetworks.bridge.rest.model.SurveyQuestion;
+import org.sagebionetworks.bridge.rest.model.Timeline;
+import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
+
+public class GsonJsonCodecTest {
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private final GsonJsonCodec codec = GsonJsonCodec.getDefault();
+
+    @Test
+    public void defaultUsesRestUtilsGson() {
+        assertSame(RestUtils.GSON, codec.getGson());
+    }
+
+    @Test
+    public void roundTripsPolymorphicTypes() throws Exception {
+        SurveyQuestion question = new SurveyQuestion();
+        question.setIdentifier("q1");
+        question.setPrompt("How are you?");
+
+        Buffer buffer = new Buffer();
+        codec.toJson(buffer, question, SurveyElement.class);
+        String json = buffer.snapshot().utf8();
+        SurveyElement element = codec.fromJson(buffer, SurveyElement.class);
+
+        assertEquals(RestUtils.GSON.toJson(question, SurveyElement.class), json);
+        assertTrue(element instanceof SurveyQuestion);
+        assertEquals("How are you?", ((SurveyQuestion) element).getPrompt());
+    }
+
+    @Test
+    public void readsEmptySourceAsNull() throws Exception {
+        assertNull(codec.fromJson(new Buffer(), UserSessionInfo.class));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidJsonThrowsIOException() throws Exception {
+        codec.fromJson(new Buffer().writeUtf8("<html></html>"), UserSessionInfo.class);
+    }
+
+    @Test
+    public void createdCodecAppliesDecodingSettings() throws Exception {
+        GsonJsonCodec lazyCodec = GsonJsonCodec.create(new DecodingSettings.Builder()
+                .withLazyDecoding(Timeline.class).build());
+        ResponseBody body = ResponseBody.create(MediaType.parse("application/json"),
+                Tests.unescapeJson("{'duration':'P1W','schedule':[]}"));
+
+        Timeline timeline = (Timeline) lazyCodec.getConverterFactory()
+                .responseBodyConverter(Timeline.class, NO_ANNOTATIONS, null).convert(body);
+
+        assertEquals("P1W", timeline.getDuration());
+        assertTrue(timeline.getSchedule().isEmpty());
+        // No projections or deduplication, so the shared Gson is used
+        assertSame(RestUtils.GSON, lazyCodec.getGson());
+    }
+}
@@ -0,0 +1,123 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+
+import com.google.gson.JsonParser;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import retrofit2.Converter;
+
+import org.sagebionetworks.bridge.rest.model.ConsentSignature;
+import org.sagebionetworks.bridge.rest.model.SharingScope;
+import org.sagebionetworks.bridge.rest.model.StringConstraints;
+import org.sagebionetworks.bridge.rest.model.Survey;
+import org.sagebionetworks.bridge.rest.model.SurveyElement;
+import org.sagebionetworks.bridge.rest.model.SurveyInfoScreen;
+import org.sagebionetworks.bridge.rest.model.SurveyQuestion;
+import org.sagebionetworks.bridge.rest.model.UIHint;
+import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
+
+public class JacksonJsonCodecTest {
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private final JacksonJsonCodec codec = new JacksonJsonCodec();
+
+    @Test
+    public void readsWhatGsonWrites() throws Exception {
+        Survey survey = makeSurvey();
+
+        Survey read = codec.fromJson(new Buffer().writeUtf8(RestUtils.GSON.toJson(survey)), Survey.class);
+
+        assertEquals(survey, read);
+        assertTrue(read.getElements().get(0) instanceof SurveyQuestion);
+        assertTrue(((SurveyQuestion) read.getElements().get(0)).getConstraints() instanceof StringConstraints);
+        assertTrue(read.getElements().get(1) instanceof SurveyInfoScreen);
+    }
+
+    @Test
+    public void writesWhatGsonReads() throws Exception {
+        Survey survey = makeSurvey();
+
+        Buffer buffer = new Buffer();
+        codec.toJson(buffer, survey, Survey.class);
+
+        assertEquals(survey, RestUtils.GSON.fromJson(buffer.readUtf8(), Survey.class));
+    }
+
+    @Test
+    public void writesEnumsDatesAndNamesAsGsonDoes() throws Exception {
+        ConsentSignature signature = new ConsentSignature().name("Name").birthdate(LocalDate.parse("1990-01-02"))
+                .scope(SharingScope.SPONSORS_AND_PARTNERS);
+        Tests.setVariableValueInObject(signature, "signedOn",
+                new DateTime(2020, 8, 28, 14, 28, 13, 386, DateTimeZone.forOffsetHours(-7)));
+
+        Buffer buffer = new Buffer();
+        codec.toJson(buffer, signature, ConsentSignature.class);
+
+        assertEquals(RestUtils.GSON.toJsonTree(signature), new JsonParser().parse(buffer.readUtf8()));
+    }
+
+    @Test
+    public void readsUnknownEnumValuesAndFields() throws Exception {
+        String json = Tests.unescapeJson("{'sharingScope':'not_a_scope','newField':{'a':[1]},'firstName':'First'}");
+
+        UserSessionInfo session = codec.fromJson(new Buffer().writeUtf8(json), UserSessionInfo.class);
+
+        assertNull(session.getSharingScope());
+        assertEquals("First", session.getFirstName());
+    }
+
+    @Test
+    public void readsEmptySourceAsNull() throws Exception {
+        assertNull(codec.fromJson(new Buffer(), UserSessionInfo.class));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidJsonThrowsIOException() throws Exception {
+        codec.fromJson(new Buffer().writeUtf8("<html></html>"), UserSessionInfo.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void convertsRequestAndResponseBodies() throws Exception {
+        Survey survey = makeSurvey();
+        Converter<Survey, RequestBody> requestConverter = (Converter<Survey, RequestBody>) codec
+                .getConverterFactory().requestBodyConverter(Survey.class, NO_ANNOTATIONS, NO_ANNOTATIONS, null);
+        Converter<ResponseBody, ?> responseConverter = codec.getConverterFactory()
+                .responseBodyConverter(Survey.class, NO_ANNOTATIONS, null);
+
+        RequestBody requestBody = requestConverter.convert(survey);
+        Buffer buffer = new Buffer();
+        requestBody.writeTo(buffer);
+
+        assertEquals(MediaType.parse("application/json; charset=UTF-8"), requestBody.contentType());
+        assertEquals(survey, responseConverter.convert(ResponseBody.create(requestBody.contentType(),
+                buffer.readByteArray())));
+    }
+
+    private static Survey makeSurvey() {
+        SurveyQuestion question = new SurveyQuestion();
+        question.setGuid("questionGuid");
+        question.setIdentifier("q1");
+        question.setPrompt("What is your name?");
+        question.setUiHint(UIHint.TEXTFIELD);
+        question.setConstraints(new StringConstraints().maxLength(100));
+        SurveyInfoScreen screen = new SurveyInfoScreen();
+        screen.setGuid("screenGuid");
+        screen.setIdentifier("info");
+        screen.setTitle("Thank you");
+        return new Survey().guid("surveyGuid").name("Survey").identifier("survey").addElementsItem(question)
+                .addElementsItem(screen);
+    }
+}
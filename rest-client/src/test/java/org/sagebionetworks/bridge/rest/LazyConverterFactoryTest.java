@@ -0,0 +1,128 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+import retrofit2.Converter;
+
+import org.sagebionetworks.bridge.rest.model.ScheduledSession;
+import org.sagebionetworks.bridge.rest.model.Survey;
+import org.sagebionetworks.bridge.rest.model.SurveyElement;
+import org.sagebionetworks.bridge.rest.model.SurveyQuestion;
+import org.sagebionetworks.bridge.rest.model.Timeline;
+import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
+
+public class LazyConverterFactoryTest {
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private static final String TIMELINE_JSON = Tests.unescapeJson("{'duration':'P2W',"
+            + "'schedule':[{'refGuid':'sessionGuid','instanceGuid':'instanceGuid','startDay':0,'endDay':6}],"
+            + "'assessments':[],'totalMinutes':30,'totalNotifications':2,'type':'Timeline'}");
+
+    private static final String SURVEY_JSON = Tests.unescapeJson("{'guid':'surveyGuid','name':'Survey',"
+            + "'elements':[{'guid':'elementGuid','identifier':'q1','prompt':'How are you?',"
+            + "'type':'SurveyQuestion'}],'type':'Survey'}");
+
+    private final LazyConverterFactory factory = new LazyConverterFactory(RestUtils.GSON,
+            ImmutableSet.<Class<?>>of(Timeline.class, Survey.class, UserSessionInfo.class));
+
+    @Test
+    public void readsCollectionsWhenFirstUsed() throws Exception {
+        Timeline timeline = convert(Timeline.class, TIMELINE_JSON);
+
+        assertEquals("P2W", timeline.getDuration());
+        assertEquals(Integer.valueOf(30), timeline.getTotalMinutes());
+        assertNull(getFieldValue(timeline, "schedule"));
+
+        List<ScheduledSession> schedule = timeline.getSchedule();
+        assertEquals(1, schedule.size());
+        assertEquals("instanceGuid", schedule.get(0).getInstanceGuid());
+        assertEquals(Integer.valueOf(6), schedule.get(0).getEndDay());
+        // Read only once
+        assertTrue(schedule == timeline.getSchedule());
+
+        assertTrue(timeline.getAssessments().isEmpty());
+        // Fields missing from the JSON are left null
+        assertNull(timeline.getSessions());
+    }
+
+    @Test
+    public void readsAllCollectionsOnFirstUse() throws Exception {
+        Timeline timeline = convert(Timeline.class, TIMELINE_JSON);
+        timeline.getSchedule();
+
+        assertTrue(((List<?>) getFieldValue(timeline, "assessments")).isEmpty());
+        assertNull(getFieldValue(timeline, "assessmentsLazy"));
+    }
+
+    @Test
+    public void matchesEagerlyDecodedObject() throws Exception {
+        Timeline lazy = convert(Timeline.class, TIMELINE_JSON);
+        Timeline eager = RestUtils.GSON.fromJson(TIMELINE_JSON, Timeline.class);
+
+        assertEquals(eager, convert(Timeline.class, TIMELINE_JSON));
+        assertEquals(eager.hashCode(), convert(Timeline.class, TIMELINE_JSON).hashCode());
+        assertEquals(RestUtils.GSON.toJson(eager), RestUtils.GSON.toJson(lazy));
+    }
+
+    @Test
+    public void readsPolymorphicElementsWhenFirstUsed() throws Exception {
+        Survey survey = convert(Survey.class, SURVEY_JSON);
+
+        assertEquals("surveyGuid", survey.getGuid());
+        // Survey initializes its elements to an empty list
+        assertTrue(((List<?>) getFieldValue(survey, "elements")).isEmpty());
+
+        SurveyElement element = survey.getElements().get(0);
+        assertTrue(element instanceof SurveyQuestion);
+        assertEquals("How are you?", ((SurveyQuestion) element).getPrompt());
+    }
+
+    @Test
+    public void settingFieldDiscardsPendingValue() throws Exception {
+        Survey survey = convert(Survey.class, SURVEY_JSON);
+        survey.setElements(ImmutableList.<SurveyElement>of());
+
+        assertTrue(survey.getElements().isEmpty());
+    }
+
+    @Test
+    public void addingItemReadsPendingValueFirst() throws Exception {
+        Survey survey = convert(Survey.class, SURVEY_JSON);
+        survey.addElementsItem(new SurveyQuestion());
+
+        assertEquals(2, survey.getElements().size());
+    }
+
+    @Test
+    public void leavesOtherTypesToNextConverter() {
+        assertNull(factory.responseBodyConverter(ScheduledSession.class, NO_ANNOTATIONS, null));
+        // Configured, but has no lazily decoded fields
+        assertNull(factory.responseBodyConverter(UserSessionInfo.class, NO_ANNOTATIONS, null));
+        assertNotNull(factory.responseBodyConverter(Timeline.class, NO_ANNOTATIONS, null));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T convert(Class<T> type, String json) throws Exception {
+        Converter<ResponseBody, ?> converter = factory.responseBodyConverter(type, NO_ANNOTATIONS, null);
+        return (T) converter.convert(ResponseBody.create(JSON, json));
+    }
+
+    private static Object getFieldValue(Object object, String name) throws Exception {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+}
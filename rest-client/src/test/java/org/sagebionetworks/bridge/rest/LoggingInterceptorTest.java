@@ -0,0 +1,196 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Strings;
+import okhttp3.Interceptor.Chain;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+
+public class LoggingInterceptorTest {
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final String SIGN_IN_JSON = "{\"appId\":\"app\",\"password\":\"P@ss\\\"word\",\"email\":\"a@b.c\"}";
+    private static final String RESPONSE_JSON = "{\"sessionToken\":\"asdf\",\"firstName\":\"Dana\"}";
+
+    private Logger logger;
+    private Chain chain;
+    private Request request;
+
+    @Before
+    public void before() throws IOException {
+        logger = mock(Logger.class);
+        doReturn(true).when(logger).isDebugEnabled();
+
+        request = new Request.Builder().url("https://webservices.sagebridge.org/v3/auth/signIn")
+                .post(RequestBody.create(JSON, SIGN_IN_JSON)).build();
+        Response response = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(200)
+                .message("OK").body(ResponseBody.create(JSON, RESPONSE_JSON)).build();
+        chain = mock(Chain.class);
+        doReturn(request).when(chain).request();
+        doReturn(response).when(chain).proceed(request);
+    }
+
+    @Test
+    public void logsRedactedRequestAndResponse() throws IOException {
+        LoggingInterceptor interceptor = new LoggingInterceptor(LoggingSettings.DEFAULT, logger);
+
+        Response response = interceptor.intercept(chain);
+
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(logger, times(2)).debug(captor.capture());
+        String requestLog = captor.getAllValues().get(0);
+        assertTrue(requestLog.startsWith("REQUEST: POST https://webservices.sagebridge.org/v3/auth/signIn"));
+        assertTrue(requestLog.contains("BODY: {\"appId\":\"app\",\"password\":\"[REDACTED]\",\"email\":\"a@b.c\"}"));
+        String responseLog = captor.getAllValues().get(1);
+        assertTrue(responseLog.contains("CODE: 200"));
+        assertTrue(responseLog.contains("BODY: " + RESPONSE_JSON));
+
+        // The caller still reads the whole, original body
+        assertEquals(RESPONSE_JSON, response.body().string());
+    }
+
+    @Test
+    public void logsStructuredTruncatedLine() throws IOException {
+        LoggingInterceptor interceptor = new LoggingInterceptor(new LoggingSettings.Builder()
+                .withStructuredOutput(true).withMaxLoggedBytes(10).build(), logger);
+
+        Response response = interceptor.intercept(chain);
+
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(logger).debug(captor.capture());
+        String line = captor.getValue();
+        assertTrue(line, line.startsWith("method=POST path=/v3/auth/signIn status=200 latencyMs="));
+        assertTrue(line, line.contains(" requestBytes=" + SIGN_IN_JSON.length()));
+        assertTrue(line, line.contains(" responseBytes=" + RESPONSE_JSON.length()));
+        assertTrue(line, line.endsWith(" requestBody={\"appId\":\"...[TRUNCATED] "
+                + "responseBody={\"sessionT...[TRUNCATED]"));
+
+        assertEquals(RESPONSE_JSON, response.body().string());
+    }
+
+    @Test
+    public void logsTruncatedBodiesOfUnknownLength() throws IOException {
+        final AtomicLong written = new AtomicLong();
+        RequestBody requestBody = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                for (int i = 0; i < 1000; i++) {
+                    sink.writeUtf8(Strings.repeat("x", 1024));
+                    written.addAndGet(1024);
+                }
+            }
+        };
+        Request request = new Request.Builder().url("https://webservices.sagebridge.org/v3/participants")
+                .post(requestBody).build();
+        Response response = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(200)
+                .message("OK").body(ResponseBody.create(JSON, -1, new Buffer().writeUtf8(RESPONSE_JSON))).build();
+        doReturn(request).when(chain).request();
+        doReturn(response).when(chain).proceed(request);
+        LoggingInterceptor interceptor = new LoggingInterceptor(new LoggingSettings.Builder()
+                .withStructuredOutput(true).withMaxLoggedBytes(10).build(), logger);
+
+        interceptor.intercept(chain);
+
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(logger).debug(captor.capture());
+        String line = captor.getValue();
+        assertTrue(line, line.contains(" requestBytes=>10 (truncated) responseBytes=>10 (truncated) "));
+        // The request body stopped being written once there was more than was logged
+        assertTrue(written.get() < 1000 * 1024);
+    }
+
+    @Test
+    public void logsStartOfStreamedRequestBody() throws IOException {
+        List<String> value = Collections.nCopies(100000, "value");
+        RequestBody requestBody = new StreamingRequestBody(GsonJsonCodec.getDefault(), value, List.class, false);
+        Request request = new Request.Builder().url("https://webservices.sagebridge.org/v3/participants")
+                .post(requestBody).build();
+        doReturn(request).when(chain).request();
+        doReturn(chain.proceed(this.request)).when(chain).proceed(request);
+        LoggingInterceptor interceptor = new LoggingInterceptor(new LoggingSettings.Builder()
+                .withStructuredOutput(true).build(), logger);
+
+        interceptor.intercept(chain);
+
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(logger).debug(captor.capture());
+        String line = captor.getValue();
+        assertTrue(line, line.contains(" requestBytes=>" + LoggingInterceptor.MAX_LOGGED_STREAMED_BYTES
+                + " (truncated) "));
+        assertTrue(line, line.contains("\"value\",\"value\"...[TRUNCATED] responseBody="));
+    }
+
+    @Test
+    public void doesNotLogUnsampledEndpoints() throws IOException {
+        LoggingInterceptor interceptor = new LoggingInterceptor(new LoggingSettings.Builder()
+                .withSamplingRate("/AUTH/", 0.0).build(), logger);
+
+        Response response = interceptor.intercept(chain);
+
+        verify(logger, never()).debug(anyString());
+        assertSame(response, chain.proceed(request));
+    }
+
+    @Test
+    public void doesNotLogWhenDebugDisabled() throws IOException {
+        doReturn(false).when(logger).isDebugEnabled();
+        LoggingInterceptor interceptor = new LoggingInterceptor(LoggingSettings.DEFAULT, logger);
+
+        interceptor.intercept(chain);
+
+        verify(logger, never()).debug(anyString());
+        verify(chain).proceed(request);
+    }
+
+    @Test
+    public void redactsPasswordCutOffByTruncation() {
+        Buffer buffer = new Buffer().writeUtf8("{\"password\" : \"secr");
+
+        assertEquals("{\"password\" : \"[REDACTED]...[TRUNCATED]", LoggingInterceptor.redact(buffer, true));
+    }
+
+    @Test
+    public void redactsAllPasswords() {
+        Buffer buffer = new Buffer().writeUtf8("[{\"password\":\"a\"},{\"newPassword\":\"b\"},{\"password\":\"c\"}]");
+
+        assertEquals("[{\"password\":\"[REDACTED]\"},{\"newPassword\":\"b\"},{\"password\":\"[REDACTED]\"}]",
+                LoggingInterceptor.redact(buffer, false));
+    }
+
+    @Test
+    public void samplingRates() {
+        LoggingSettings settings = new LoggingSettings.Builder().withSamplingRate(0.25)
+                .withSamplingRate("/activityevents", 0.5).build();
+
+        assertEquals(0.5, settings.getSamplingRate("/v1/activityEvents/foo"), 0.0);
+        assertEquals(0.25, settings.getSamplingRate("/v3/participants/self"), 0.0);
+    }
+}
@@ -6,18 +6,25 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.sagebionetworks.bridge.rest.Tests.setVariableValueInObject;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import org.junit.Test;
 
 import org.sagebionetworks.bridge.rest.model.ClientInfo;
 import org.sagebionetworks.bridge.rest.model.ConsentStatus;
+import org.sagebionetworks.bridge.rest.model.UploadRequest;
 import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
@@ -217,6 +224,21 @@ public class RestUtilsTest {
         assertEquals(5, el.get("sdkVersion").getAsInt());
     }
     
+    @Test
+    public void toTypeConvertsTreesAndMaps() {
+        JsonObject json = new JsonObject();
+        json.addProperty("appName", "appName");
+        json.addProperty("appVersion", 10);
+        Map<String, Object> map = Maps.newHashMap();
+        map.put("appName", "appName");
+        map.put("appVersion", 10.0);
+        
+        ClientInfo expected = new ClientInfo().appName("appName").appVersion(10);
+        assertEquals(expected, RestUtils.toType(json, ClientInfo.class));
+        assertEquals(expected, RestUtils.toType(map, ClientInfo.class));
+        assertNull(RestUtils.toType(null, ClientInfo.class));
+    }
+    
     private Map<String,ConsentStatus> map(ConsentStatus status1, ConsentStatus status2) {
         Map<String,ConsentStatus> map = Maps.newHashMap();
         map.put(status1.getSubpopulationGuid(), status1);
@@ -233,6 +255,37 @@ public class RestUtilsTest {
         return status;
     }
     
+    @Test
+    public void getContentMd5MatchesInMemoryDigest() throws Exception {
+        // Larger than the digest buffer, and not a multiple of it
+        byte[] bytes = new byte[200 * 1024 + 17];
+        new Random(42).nextBytes(bytes);
+        File file = File.createTempFile("upload", ".zip");
+        try {
+            Files.write(bytes, file);
+            
+            String expected = Base64.encodeBase64String(DigestUtils.md5(bytes));
+            assertEquals(expected, RestUtils.getContentMd5(file));
+            
+            UploadRequest request = RestUtils.makeUploadRequestForFile(file);
+            assertEquals(expected, request.getContentMd5());
+            assertEquals(Long.valueOf(bytes.length), request.getContentLength());
+            assertEquals("application/zip", request.getContentType());
+        } finally {
+            file.delete();
+        }
+    }
+    
+    @Test
+    public void getContentMd5OfEmptyFile() throws Exception {
+        File file = File.createTempFile("upload", ".zip");
+        try {
+            assertEquals(Base64.encodeBase64String(DigestUtils.md5(new byte[0])), RestUtils.getContentMd5(file));
+        } finally {
+            file.delete();
+        }
+    }
+    
     private ConsentStatus optConsent(String guid, boolean isConsented, boolean isRecent) {
         ConsentStatus status = new ConsentStatus();
         setVariableValueInObject(status, "subpopulationGuid", guid);
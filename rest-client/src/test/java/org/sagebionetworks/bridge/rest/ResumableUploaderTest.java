@@ -0,0 +1,299 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import retrofit2.Call;
+import retrofit2.Response;
+
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.api.ParticipantFilesApi;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.model.ParticipantFile;
+import org.sagebionetworks.bridge.rest.model.UploadRequest;
+import org.sagebionetworks.bridge.rest.model.UploadSession;
+import org.sagebionetworks.bridge.rest.model.UploadValidationStatus;
+
+public class ResumableUploaderTest {
+
+    private HttpServer s3;
+    private volatile int failNextPuts;
+    private volatile int failureStatus;
+    private volatile byte[] storedBytes;
+    private volatile String storedMd5;
+    private AtomicInteger putCount;
+
+    private File directory;
+    private File file;
+    private byte[] bytes;
+    private ForConsentedUsersApi usersApi;
+    private AtomicInteger sessionCount;
+    private DateTime expires;
+    private ResumableUploader uploader;
+
+    @Before
+    public void before() throws Exception {
+        putCount = new AtomicInteger();
+        failureStatus = 500;
+        // A local stand-in for S3 that stores the body of each PUT, and can be told to fail.
+        s3 = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        s3.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                putCount.incrementAndGet();
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                try (InputStream in = exchange.getRequestBody()) {
+                    ByteStreams.copy(in, body);
+                }
+                if (failNextPuts > 0) {
+                    failNextPuts--;
+                    exchange.sendResponseHeaders(failureStatus, -1);
+                } else {
+                    storedBytes = body.toByteArray();
+                    storedMd5 = exchange.getRequestHeaders().getFirst("Content-MD5");
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                exchange.close();
+            }
+        });
+        s3.start();
+
+        directory = Files.createTempDir();
+        file = new File(directory, "archive.zip");
+        bytes = new byte[100 * 1024];
+        new Random(7).nextBytes(bytes);
+        Files.write(bytes, file);
+
+        usersApi = mock(ForConsentedUsersApi.class);
+        sessionCount = new AtomicInteger();
+        expires = DateTime.now().plusHours(1);
+        doAnswer(new Answer<Call<UploadSession>>() {
+            @Override
+            public Call<UploadSession> answer(InvocationOnMock invocation) throws Throwable {
+                int count = sessionCount.incrementAndGet();
+                UploadSession session = new UploadSession();
+                Tests.setVariableValueInObject(session, "id", "upload" + count);
+                Tests.setVariableValueInObject(session, "url", s3Url("upload" + count));
+                Tests.setVariableValueInObject(session, "expires", expires);
+                return makeCall(session);
+            }
+        }).when(usersApi).requestUploadSession(any(UploadRequest.class));
+        Call<UploadValidationStatus> completeCall = makeCall(new UploadValidationStatus());
+        doReturn(completeCall).when(usersApi).completeUploadSession(anyString(), eq(false), eq(false));
+
+        uploader = new ResumableUploader(new S3Uploader(new OkHttpClient(), null), null, 0, 1);
+    }
+
+    @After
+    public void after() {
+        s3.stop(0);
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void uploadsAndRemovesJournal() throws Exception {
+        UploadSession session = uploader.upload(usersApi, file);
+
+        assertEquals("upload1", session.getId());
+        assertArrayEquals(bytes, storedBytes);
+        assertEquals(RestUtils.getContentMd5(file), storedMd5);
+        verify(usersApi).completeUploadSession("upload1", false, false);
+        assertFalse(UploadJournal.journalFileFor(null, file).exists());
+    }
+
+    @Test
+    public void resumesWithSameUploadUrlAfterS3Failure() throws Exception {
+        failNextPuts = 1;
+        try {
+            uploader.upload(usersApi, file);
+            fail("Should have thrown exception");
+        } catch (BridgeSDKException e) {
+            assertEquals(500, e.getStatusCode());
+        }
+        assertTrue(UploadJournal.journalFileFor(null, file).exists());
+
+        UploadSession session = uploader.upload(usersApi, file);
+
+        // The session from the first attempt was reused.
+        assertEquals("upload1", session.getId());
+        assertEquals(1, sessionCount.get());
+        assertEquals(2, putCount.get());
+        assertArrayEquals(bytes, storedBytes);
+    }
+
+    @Test
+    public void resumesWithCompletionAfterUploadSucceeded() throws Exception {
+        @SuppressWarnings("unchecked")
+        Call<UploadValidationStatus> failingCall = mock(Call.class);
+        doThrow(new IOException("connection reset")).when(failingCall).execute();
+        Call<UploadValidationStatus> completeCall = makeCall(new UploadValidationStatus());
+        doReturn(failingCall).doReturn(completeCall).when(usersApi)
+                .completeUploadSession(anyString(), eq(false), eq(false));
+        try {
+            uploader.upload(usersApi, file);
+            fail("Should have thrown exception");
+        } catch (IOException e) {
+            // expected
+        }
+
+        UploadSession session = uploader.upload(usersApi, file);
+
+        // The file was not uploaded again, and the used upload URL is not returned.
+        assertEquals("upload1", session.getId());
+        assertNull(session.getUrl());
+        assertEquals(1, putCount.get());
+        assertEquals(1, sessionCount.get());
+        verify(usersApi, times(2)).completeUploadSession("upload1", false, false);
+    }
+
+    @Test
+    public void requestsNewSessionWhenUrlHasExpired() throws Exception {
+        expires = DateTime.now().minusMinutes(1);
+        failNextPuts = 1;
+        try {
+            uploader.upload(usersApi, file);
+            fail("Should have thrown exception");
+        } catch (BridgeSDKException e) {
+            // expected
+        }
+        expires = DateTime.now().plusHours(1);
+
+        UploadSession session = uploader.upload(usersApi, file);
+
+        assertEquals("upload2", session.getId());
+        verify(usersApi).completeUploadSession("upload2", false, false);
+        verify(usersApi, never()).completeUploadSession("upload1", false, false);
+    }
+
+    @Test
+    public void requestsNewSessionWhenS3RejectsUrl() throws Exception {
+        failureStatus = 403;
+        failNextPuts = 1;
+
+        UploadSession session = uploader.upload(usersApi, file);
+
+        assertEquals("upload2", session.getId());
+        assertEquals(2, putCount.get());
+        assertArrayEquals(bytes, storedBytes);
+    }
+
+    @Test
+    public void startsOverWhenFileChanges() throws Exception {
+        failNextPuts = 1;
+        try {
+            uploader.upload(usersApi, file);
+            fail("Should have thrown exception");
+        } catch (BridgeSDKException e) {
+            // expected
+        }
+        byte[] newBytes = "different contents".getBytes();
+        Files.write(newBytes, file);
+
+        UploadSession session = uploader.upload(usersApi, file);
+
+        assertEquals("upload2", session.getId());
+        assertArrayEquals(newBytes, storedBytes);
+        assertEquals(RestUtils.getContentMd5(file), storedMd5);
+    }
+
+    @Test
+    public void retriesTransientS3Failures() throws Exception {
+        uploader = new ResumableUploader(new S3Uploader(new OkHttpClient(), null), directory, 2, 1);
+        failNextPuts = 2;
+
+        uploader.upload(usersApi, file);
+
+        assertEquals(3, putCount.get());
+        assertArrayEquals(bytes, storedBytes);
+    }
+
+    @Test
+    public void resumesParticipantFileUpload() throws Exception {
+        ParticipantFilesApi filesApi = mock(ParticipantFilesApi.class);
+        ParticipantFile participantFile = new ParticipantFile().fileId("fileId").mimeType("image/png")
+                .uploadUrl(s3Url("participant-file"));
+        Call<ParticipantFile> createCall = makeCall(participantFile);
+        doReturn(createCall).when(filesApi).createParticipantFile(eq("fileId"), any(ParticipantFile.class));
+
+        failNextPuts = 1;
+        try {
+            uploader.uploadParticipantFile(filesApi, "fileId", file, "image/png");
+            fail("Should have thrown exception");
+        } catch (BridgeSDKException e) {
+            // expected
+        }
+        ParticipantFile result = uploader.uploadParticipantFile(filesApi, "fileId", file, "image/png");
+
+        assertEquals("fileId", result.getFileId());
+        assertArrayEquals(bytes, storedBytes);
+        verify(filesApi, times(1)).createParticipantFile(eq("fileId"), any(ParticipantFile.class));
+        assertFalse(UploadJournal.journalFileFor(null, file).exists());
+    }
+
+    @Test
+    public void journalKeepsSessionWithoutUrlOnceUploaded() throws Exception {
+        @SuppressWarnings("unchecked")
+        Call<UploadValidationStatus> failingCall = mock(Call.class);
+        doThrow(new IOException("connection reset")).when(failingCall).execute();
+        doReturn(failingCall).when(usersApi).completeUploadSession(anyString(), eq(false), eq(false));
+        try {
+            uploader.upload(usersApi, file);
+            fail("Should have thrown exception");
+        } catch (IOException e) {
+            // expected
+        }
+
+        String journal = Files.toString(UploadJournal.journalFileFor(null, file), StandardCharsets.UTF_8);
+        assertTrue(journal.contains("upload1"));
+        assertFalse(journal.contains("/bucket/upload1"));
+    }
+
+    private String s3Url(String key) {
+        return "http://localhost:" + s3.getAddress().getPort() + "/bucket/" + key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Call<T> makeCall(T body) throws IOException {
+        Call<T> call = mock(Call.class);
+        doReturn(Response.success(body)).when(call).execute();
+        return call;
+    }
+}
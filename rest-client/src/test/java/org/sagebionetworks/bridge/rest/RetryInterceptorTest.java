@@ -0,0 +1,219 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.google.common.util.concurrent.RateLimiter;
+import okhttp3.Interceptor;
+import okhttp3.Interceptor.Chain;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.internal.http.HttpDate;
+import org.junit.Test;
+
+public class RetryInterceptorTest {
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final String URL = "https://webservices.sagebridge.org/v3/participants/self/files/abc";
+
+    private static final Request GET = new Request.Builder().url(URL).build();
+    private static final Request POST = new Request.Builder().url(URL).post(RequestBody.create(JSON, "{}")).build();
+
+    @Test
+    public void retries429HonoringRetryAfterSeconds() throws IOException {
+        Chain chain = chain(POST, response(POST, 429, "2"), response(POST, 200, null));
+        TestRetryInterceptor interceptor = new TestRetryInterceptor(3, 100, 5000, null);
+
+        Response response = interceptor.intercept(chain);
+
+        assertEquals(200, response.code());
+        assertEquals(Collections.singletonList(2000L), interceptor.delays);
+        verify(chain, times(2)).proceed(POST);
+    }
+
+    @Test
+    public void honorsRetryAfterDate() throws IOException {
+        String date = HttpDate.format(new Date(System.currentTimeMillis() + 3000));
+        Chain chain = chain(GET, response(GET, 503, date), response(GET, 200, null));
+        TestRetryInterceptor interceptor = new TestRetryInterceptor(3, 100, 5000, null);
+
+        assertEquals(200, interceptor.intercept(chain).code());
+        long delay = interceptor.delays.get(0);
+        assertTrue("delay was " + delay, delay > 1000 && delay <= 3000);
+    }
+
+    @Test
+    public void retriesIdempotentCallWithJitteredBackoff() throws IOException {
+        Response lastResponse = response(GET, 503, null);
+        Chain chain = chain(GET, response(GET, 503, null), response(GET, 502, null), response(GET, 504, null),
+                lastResponse);
+        TestRetryInterceptor interceptor = new TestRetryInterceptor(3, 100, 250, null);
+
+        // Retries are used up, so the last error is returned to be mapped to an exception
+        assertSame(lastResponse, interceptor.intercept(chain));
+        verify(chain, times(4)).proceed(GET);
+        assertEquals(3, interceptor.delays.size());
+        assertTrue(interceptor.delays.get(0) <= 100);
+        assertTrue(interceptor.delays.get(1) <= 200);
+        assertTrue(interceptor.delays.get(2) <= 250);
+    }
+
+    @Test
+    public void doesNotRetryNonIdempotentCallOnServerError() throws IOException {
+        Response error = response(POST, 503, null);
+        Chain chain = chain(POST, error);
+        TestRetryInterceptor interceptor = new TestRetryInterceptor(3, 100, 5000, null);
+
+        assertSame(error, interceptor.intercept(chain));
+        verify(chain).proceed(POST);
+        assertTrue(interceptor.delays.isEmpty());
+    }
+
+    @Test
+    public void doesNotWaitLongerThanMaxDelay() throws IOException {
+        Response error = response(GET, 429, "120");
+        Chain chain = chain(GET, error);
+        TestRetryInterceptor interceptor = new TestRetryInterceptor(3, 100, 5000, null);
+
+        assertSame(error, interceptor.intercept(chain));
+        verify(chain).proceed(GET);
+        assertTrue(interceptor.delays.isEmpty());
+    }
+
+    @Test
+    public void acquiresPermitForEachAttempt() throws IOException {
+        RateLimiter rateLimiter = mock(RateLimiter.class);
+        Chain chain = chain(GET, response(GET, 429, "0"), response(GET, 200, null));
+        TestRetryInterceptor interceptor = new TestRetryInterceptor(3, 100, 5000, rateLimiter);
+
+        assertEquals(200, interceptor.intercept(chain).code());
+        verify(rateLimiter, times(2)).acquire();
+    }
+
+    @Test
+    public void apiClientProviderSharesRateLimiterAcrossItsClients() {
+        TransportSettings settings = new TransportSettings.Builder().withMaxRetries(2).withRateLimit(5.0).build();
+        ApiClientProvider provider = provider("test-app", settings);
+
+        RetryInterceptor first = getRetryInterceptor(provider);
+        RetryInterceptor second = getRetryInterceptor(provider);
+        RetryInterceptor otherProvider = getRetryInterceptor(provider("test-app", settings));
+
+        assertNotNull(first.getRateLimiter());
+        assertSame(first.getRateLimiter(), second.getRateLimiter());
+        assertTrue(first.getRateLimiter() != otherProvider.getRateLimiter());
+        assertEquals(5.0, first.getRateLimiter().getRate(), 0.001);
+
+        // No retry or rate limit settings, no interceptor
+        assertNull(getRetryInterceptor(provider("test-app", new TransportSettings.Builder().build())));
+    }
+
+    @Test
+    public void apiClientProvidersCanHaveDifferentRateLimits() {
+        RetryInterceptor three = getRetryInterceptor(provider("test-app",
+                new TransportSettings.Builder().withRateLimit(3.0).build()));
+        RetryInterceptor seven = getRetryInterceptor(provider("test-app",
+                new TransportSettings.Builder().withRateLimit(7.0).build()));
+
+        assertEquals(3.0, three.getRateLimiter().getRate(), 0.001);
+        assertEquals(7.0, seven.getRateLimiter().getRate(), 0.001);
+    }
+
+    @Test
+    public void transportSettingsFromConfig() {
+        Config config = new Config("/bridge-sdk.properties");
+        assertNull(TransportSettings.fromConfig(config));
+
+        config.set(Config.Props.MAX_RETRIES, "4");
+        config.set(Config.Props.RATE_LIMIT, "2.5");
+        TransportSettings settings = TransportSettings.fromConfig(config);
+
+        assertEquals(4, settings.getMaxRetries());
+        assertEquals(2.5, settings.getRateLimit(), 0.001);
+    }
+
+    @Test
+    public void transportSettingsFromConfigNamesInvalidProperty() {
+        Config config = new Config("/bridge-sdk.properties");
+        config.set(Config.Props.MAX_RETRIES, "four");
+        try {
+            TransportSettings.fromConfig(config);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid MAX_RETRIES value 'four': For input string: \"four\"", e.getMessage());
+        }
+
+        config.set(Config.Props.MAX_RETRIES, "4");
+        config.set(Config.Props.RATE_LIMIT, "-1");
+        try {
+            TransportSettings.fromConfig(config);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid RATE_LIMIT value '-1': requestsPerSecond must be positive", e.getMessage());
+        }
+    }
+
+    private static ApiClientProvider provider(String appId, TransportSettings settings) {
+        return new ApiClientProvider.Builder().withBaseUrl("https://webservices.sagebridge.org")
+                .withUserAgent("user-agent").withAcceptLanguage("en").withAppId(appId)
+                .withTransportSettings(settings).build();
+    }
+
+    private static RetryInterceptor getRetryInterceptor(ApiClientProvider provider) {
+        for (Interceptor interceptor : provider.getHttpClientBuilder(Collections.<Interceptor>emptyList(),
+                Collections.<Interceptor>emptyList()).interceptors()) {
+            if (interceptor instanceof RetryInterceptor) {
+                return (RetryInterceptor) interceptor;
+            }
+        }
+        return null;
+    }
+
+    private static Chain chain(Request request, Response response, Response... moreResponses) throws IOException {
+        Chain chain = mock(Chain.class);
+        doReturn(request).when(chain).request();
+        when(chain.proceed(request)).thenReturn(response, moreResponses);
+        return chain;
+    }
+
+    private static Response response(Request request, int code, String retryAfter) {
+        Response.Builder builder = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(code)
+                .message("status " + code).body(ResponseBody.create(JSON, "{}"));
+        if (retryAfter != null) {
+            builder.header(RetryInterceptor.RETRY_AFTER, retryAfter);
+        }
+        return builder.build();
+    }
+
+    private static class TestRetryInterceptor extends RetryInterceptor {
+        private final List<Long> delays = new ArrayList<>();
+
+        TestRetryInterceptor(int maxRetries, long retryBackoffMillis, long maxRetryDelayMillis,
+                RateLimiter rateLimiter) {
+            super(maxRetries, retryBackoffMillis, maxRetryDelayMillis, rateLimiter);
+        }
+
+        @Override
+        void sleep(long millis) {
+            delays.add(millis);
+        }
+    }
+}
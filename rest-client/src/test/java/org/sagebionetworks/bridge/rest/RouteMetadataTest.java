@@ -0,0 +1,166 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import okhttp3.Interceptor.Chain;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import retrofit2.Invocation;
+
+import org.sagebionetworks.bridge.rest.api.AuthenticationApi;
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.api.ParticipantsApi;
+import org.sagebionetworks.bridge.rest.model.SignIn;
+import org.sagebionetworks.bridge.rest.model.SignUp;
+import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
+
+public class RouteMetadataTest {
+
+    @Test
+    public void signIn() throws Exception {
+        RouteMetadata route = RouteMetadata.forMethod(AuthenticationApi.class.getMethod("signIn", SignIn.class));
+
+        assertFalse(route.isRequiresSession());
+        assertTrue(route.isAuthRoute());
+        assertTrue(route.isUpdatesSession());
+        assertFalse(route.isClearsSession());
+        assertFalse(route.isIdempotent());
+    }
+
+    @Test
+    public void signOut() throws Exception {
+        RouteMetadata route = RouteMetadata.forMethod(AuthenticationApi.class.getMethod("signOut"));
+
+        assertTrue(route.isRequiresSession());
+        assertTrue(route.isAuthRoute());
+        assertTrue(route.isClearsSession());
+    }
+
+    @Test
+    public void operationOutsideAuthApiRequiresSession() throws Exception {
+        // The spec doesn't declare security for this operation
+        RouteMetadata route = RouteMetadata.forMethod(ForConsentedUsersApi.class.getMethod("getActivityEvents"));
+
+        assertTrue(route.isRequiresSession());
+        assertFalse(route.isAuthRoute());
+        assertFalse(route.isUpdatesSession());
+        assertTrue(route.isIdempotent());
+    }
+
+    @Test
+    public void createUserDoesNotUpdateCallersSession() throws Exception {
+        RouteMetadata route = RouteMetadata.forMethod(ForAdminsApi.class.getMethod("createUser", SignUp.class));
+
+        assertTrue(route.isRequiresSession());
+        assertFalse(route.isUpdatesSession());
+    }
+
+    @Test
+    public void forRequest() throws Exception {
+        Method method = AuthenticationApi.class.getMethod("signOut");
+
+        assertSame(RouteMetadata.forMethod(method), RouteMetadata.forRequest(request(method, "v4/auth/signOut")));
+        assertNull(RouteMetadata.forRequest(new Request.Builder().url("https://ws.sagebridge.org/v4/auth/signOut")
+                .build()));
+        assertNull(RouteMetadata.forMethod(Object.class.getMethod("toString")));
+    }
+
+    @Test
+    public void authenticationHandlerUsesRoute() throws Exception {
+        UserSessionInfoProvider provider = mock(UserSessionInfoProvider.class);
+        UserSessionInfo session = new UserSessionInfo();
+        Tests.setVariableValueInObject(session, "sessionToken", "sessionToken");
+        doReturn(session).when(provider).retrieveSession();
+        AuthenticationHandler handler = new AuthenticationHandler(provider);
+
+        Request signIn = request(AuthenticationApi.class.getMethod("signIn", SignIn.class), "v3/auth/signIn");
+        assertNull(intercept(handler, signIn).header(HeaderInterceptor.BRIDGE_SESSION));
+
+        Request signOut = request(AuthenticationApi.class.getMethod("signOut"), "v4/auth/signOut");
+        assertEquals("sessionToken", intercept(handler, signOut).header(HeaderInterceptor.BRIDGE_SESSION));
+    }
+
+    @Test
+    public void authenticationHandlerOnlyMatchesUrlsOfRequestsWithoutRoute() throws Exception {
+        UserSessionInfoProvider provider = mock(UserSessionInfoProvider.class);
+        UserSessionInfo session = new UserSessionInfo();
+        Tests.setVariableValueInObject(session, "sessionToken", "sessionToken");
+        doReturn(session).when(provider).retrieveSession();
+        AuthenticationHandler handler = new AuthenticationHandler(provider);
+
+        // Generated calls follow their route, whatever the URL looks like
+        Request signIn = request(AuthenticationApi.class.getMethod("signIn", SignIn.class), "v3/auth/app");
+        assertNull(intercept(handler, signIn).header(HeaderInterceptor.BRIDGE_SESSION));
+
+        Request events = request(ForConsentedUsersApi.class.getMethod("getActivityEvents"),
+                "auth/v1/activityevents");
+        assertEquals("sessionToken", intercept(handler, events).header(HeaderInterceptor.BRIDGE_SESSION));
+
+        // Other requests fall back to the URL
+        Request changeApp = new Request.Builder().url("https://ws.sagebridge.org/v3/auth/app")
+                .post(RequestBody.create(null, new byte[0])).build();
+        assertEquals("sessionToken", intercept(handler, changeApp).header(HeaderInterceptor.BRIDGE_SESSION));
+
+        Request plainSignIn = new Request.Builder().url("https://ws.sagebridge.org/v3/auth/signIn")
+                .post(RequestBody.create(null, new byte[0])).build();
+        assertNull(intercept(handler, plainSignIn).header(HeaderInterceptor.BRIDGE_SESSION));
+    }
+
+    @Test
+    public void userSessionInterceptorClearsSessionOnlyForCallersSignOut() throws Exception {
+        UserSessionInfoProvider provider = mock(UserSessionInfoProvider.class);
+        UserSessionInterceptor interceptor = new UserSessionInterceptor(provider);
+
+        // An admin signing out another participant doesn't end the admin's session
+        Request other = request(ParticipantsApi.class.getMethod("signOutParticipant", String.class,
+                Boolean.class), "v3/participants/userId/signOut");
+        interceptor.intercept(chain(other));
+        verify(provider, never()).setSession(any(UserSessionInfo.class));
+
+        Request signOut = request(AuthenticationApi.class.getMethod("signOut"), "v4/auth/signOut");
+        interceptor.intercept(chain(signOut));
+        verify(provider).setSession(null);
+    }
+
+    private static Request request(Method method, String path) {
+        return new Request.Builder().url("https://ws.sagebridge.org/" + path)
+                .post(RequestBody.create(null, new byte[0]))
+                .tag(Invocation.class, Invocation.of(method, Collections.emptyList())).build();
+    }
+
+    private static Request intercept(AuthenticationHandler handler, Request request) throws Exception {
+        Chain chain = chain(request);
+        handler.intercept(chain);
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+        verify(chain).proceed(captor.capture());
+        return captor.getValue();
+    }
+
+    private static Chain chain(Request request) throws Exception {
+        Chain chain = mock(Chain.class);
+        doReturn(request).when(chain).request();
+        doReturn(new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(200).message("OK")
+                .body(ResponseBody.create(MediaType.parse("application/json"), "{}")).build())
+                .when(chain).proceed(any(Request.class));
+        return chain;
+    }
+}
@@ -0,0 +1,64 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.rest.model.SignIn;
+
+public class S3UploaderTest {
+
+    @Test
+    public void sharesTransportOfApiClientProvider() {
+        ApiClientProvider provider = new ApiClientProvider("https://webservices.sagebridge.org", "user-agent", "en",
+                "test-app");
+        S3Uploader uploader = provider.getS3Uploader();
+
+        assertSame(uploader, provider.getS3Uploader());
+        assertSame(provider.getRootHttpClient().connectionPool(), uploader.getUploadClient().connectionPool());
+        assertSame(provider.getRootHttpClient().connectionPool(), uploader.getHostedFileClient().connectionPool());
+        assertSame(provider.getRootHttpClient().dispatcher(), uploader.getUploadClient().dispatcher());
+        assertEquals(2, uploader.getUploadClient().interceptors().size());
+    }
+
+    @Test
+    public void defaultTimeouts() {
+        S3Uploader uploader = new S3Uploader(new OkHttpClient(), null);
+
+        assertEquals(S3Uploader.DEFAULT_UPLOAD_TIMEOUT_MILLIS, uploader.getUploadClient().writeTimeoutMillis());
+        assertEquals(S3Uploader.DEFAULT_HOSTED_FILE_TIMEOUT_MILLIS,
+                uploader.getHostedFileClient().writeTimeoutMillis());
+    }
+
+    @Test
+    public void timeoutsFromTransportSettings() {
+        TransportSettings settings = new TransportSettings.Builder().withS3Timeout(2, TimeUnit.MINUTES).build();
+        ApiClientProvider provider = new ApiClientProvider.Builder()
+                .withBaseUrl("https://webservices.sagebridge.org").withUserAgent("user-agent")
+                .withAcceptLanguage("en").withAppId("test-app").withTransportSettings(settings).build();
+        OkHttpClient client = provider.getS3Uploader().getUploadClient();
+
+        assertEquals(120000, client.connectTimeoutMillis());
+        assertEquals(120000, client.readTimeoutMillis());
+        assertEquals(120000, provider.getS3Uploader().getHostedFileClient().writeTimeoutMillis());
+    }
+
+    @Test
+    public void clientManagerExposesSharedUploader() {
+        ClientManager manager = new ClientManager.Builder().withSignIn(new SignIn().appId("test-app")
+                .email("email@email.com").password("password")).build();
+
+        assertSame(manager.getAuthenticatedClientProvider().getHttpClient().connectionPool(),
+                manager.getS3Uploader().getUploadClient().connectionPool());
+    }
+
+    @Test
+    public void getBaseUrl() {
+        assertEquals("https://org-sagebridge-upload.s3.amazonaws.com/",
+                S3Uploader.getBaseUrl("https://org-sagebridge-upload.s3.amazonaws.com/abc?X-Amz-Signature=def"));
+    }
+}
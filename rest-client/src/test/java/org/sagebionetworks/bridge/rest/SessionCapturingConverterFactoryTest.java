@@ -0,0 +1,131 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.lang.annotation.Annotation;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import org.sagebionetworks.bridge.rest.api.AuthenticationApi;
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.model.ConsentSignature;
+import org.sagebionetworks.bridge.rest.model.SignIn;
+import org.sagebionetworks.bridge.rest.model.SignUp;
+import org.sagebionetworks.bridge.rest.model.StudyParticipant;
+import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
+import org.sagebionetworks.bridge.rest.model.Withdrawal;
+
+public class SessionCapturingConverterFactoryTest {
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final String SESSION_JSON = "{\"sessionToken\":\"asdf\"}";
+
+    private UserSessionInfoProvider userSessionInfoProvider;
+    private Retrofit retrofit;
+
+    @Before
+    public void before() {
+        userSessionInfoProvider = mock(UserSessionInfoProvider.class);
+        retrofit = new Retrofit.Builder().baseUrl("https://webservices.sagebridge.org/")
+                .addConverterFactory(new SessionCapturingConverterFactory(userSessionInfoProvider))
+                .addConverterFactory(GsonJsonCodec.getDefault().getConverterFactory())
+                .build();
+    }
+
+    @Test
+    public void capturesSessionOfSignIn() throws Exception {
+        UserSessionInfo session = convert(AuthenticationApi.class.getMethod("signIn", SignIn.class)
+                .getAnnotations());
+
+        ArgumentCaptor<UserSessionInfo> captor = ArgumentCaptor.forClass(UserSessionInfo.class);
+        verify(userSessionInfoProvider).setSession(captor.capture());
+        assertEquals("asdf", captor.getValue().getSessionToken());
+        // The caller gets the same object, the body was only decoded once
+        assertTrue(session == captor.getValue());
+    }
+
+    @Test
+    public void capturesSessionOfParticipantSelfUpdate() throws Exception {
+        convert(ForConsentedUsersApi.class.getMethod("updateUsersParticipantRecord", StudyParticipant.class)
+                .getAnnotations());
+
+        verify(userSessionInfoProvider).setSession(any(UserSessionInfo.class));
+    }
+
+    @Test
+    public void capturesSessionOfConsentCreation() throws Exception {
+        convert(ForConsentedUsersApi.class.getMethod("createConsentSignature", String.class,
+                ConsentSignature.class).getAnnotations());
+
+        verify(userSessionInfoProvider).setSession(any(UserSessionInfo.class));
+    }
+
+    @Test
+    public void capturesSessionOfConsentWithdrawal() throws Exception {
+        convert(ForConsentedUsersApi.class.getMethod("withdrawConsentFromSubpopulation", String.class,
+                Withdrawal.class).getAnnotations());
+
+        verify(userSessionInfoProvider).setSession(any(UserSessionInfo.class));
+    }
+
+    @Test
+    public void doesNotCaptureSessionOfOtherRoutes() throws Exception {
+        // Creating a user returns that user's session, not the caller's
+        UserSessionInfo session = convert(ForAdminsApi.class.getMethod("createUser", SignUp.class)
+                .getAnnotations());
+
+        assertEquals("asdf", session.getSessionToken());
+        verify(userSessionInfoProvider, never()).setSession(any(UserSessionInfo.class));
+    }
+
+    @Test
+    public void ignoresOtherTypes() throws Exception {
+        SessionCapturingConverterFactory factory = new SessionCapturingConverterFactory(userSessionInfoProvider);
+        Annotation[] annotations = AuthenticationApi.class.getMethod("signIn", SignIn.class).getAnnotations();
+
+        assertNull(factory.responseBodyConverter(StudyParticipant.class, annotations, retrofit));
+    }
+
+    @Test
+    public void apiClientProviderCapturesSessionOfAuthenticatedClients() {
+        ApiClientProvider provider = new ApiClientProvider.Builder().withBaseUrl("https://developer.sagebridge.org")
+                .withUserAgent("user-agent").withAcceptLanguage("en").withAppId("test-app")
+                .withJsonCodec(GsonJsonCodec.getDefault()).build();
+
+        List<Converter.Factory> factories = provider.getRetrofit(provider.getRootHttpClient(),
+                userSessionInfoProvider).converterFactories();
+        assertTrue(containsSessionFactory(factories));
+
+        factories = provider.getRetrofit(provider.getRootHttpClient()).converterFactories();
+        assertFalse(containsSessionFactory(factories));
+    }
+
+    private boolean containsSessionFactory(List<Converter.Factory> factories) {
+        for (Converter.Factory factory : factories) {
+            if (factory instanceof SessionCapturingConverterFactory) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private UserSessionInfo convert(Annotation[] annotations) throws Exception {
+        Converter<ResponseBody, UserSessionInfo> converter = retrofit.responseBodyConverter(UserSessionInfo.class,
+                annotations);
+        return converter.convert(ResponseBody.create(JSON, SESSION_JSON));
+    }
+}
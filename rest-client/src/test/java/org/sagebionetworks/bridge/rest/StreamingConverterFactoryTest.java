@@ -0,0 +1,99 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.annotation.Annotation;
+import java.util.List;
+
+import com.google.common.collect.ImmutableMap;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import org.junit.Test;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import org.sagebionetworks.bridge.rest.model.ReportData;
+import org.sagebionetworks.bridge.rest.model.SignIn;
+
+public class StreamingConverterFactoryTest {
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private static final ReportData REPORT = new ReportData().date("2021-01-02")
+            .data(ImmutableMap.of("steps", 12000, "note", "café"));
+
+    @Test
+    public void streamsSelectedTypes() throws Exception {
+        StreamingConverterFactory factory = new StreamingConverterFactory(GsonJsonCodec.getDefault(),
+                new EncodingSettings.Builder().withStreamingRequestBodies(ReportData.class).build());
+
+        RequestBody body = convert(factory, REPORT);
+
+        assertTrue(body instanceof StreamingRequestBody);
+        assertEquals(StreamingRequestBody.MEDIA_TYPE, body.contentType());
+        assertEquals(-1L, body.contentLength());
+        assertEquals(RestUtils.GSON.toJson(REPORT), write(body));
+        // Can be written again if the request is retried
+        assertEquals(RestUtils.GSON.toJson(REPORT), write(body));
+
+        assertNull(factory.requestBodyConverter(SignIn.class, NO_ANNOTATIONS, NO_ANNOTATIONS, null));
+    }
+
+    @Test
+    public void streamsAllTypes() throws Exception {
+        StreamingConverterFactory factory = new StreamingConverterFactory(GsonJsonCodec.getDefault(),
+                new EncodingSettings.Builder().withStreamingRequestBodies().build());
+        SignIn signIn = new SignIn().appId("app").email("email@email.com").password("password");
+
+        assertEquals(RestUtils.GSON.toJson(signIn), write(convert(factory, signIn)));
+    }
+
+    @Test
+    public void measuresKnownContentLength() throws Exception {
+        StreamingConverterFactory factory = new StreamingConverterFactory(GsonJsonCodec.getDefault(),
+                new EncodingSettings.Builder().withStreamingRequestBodies(ReportData.class)
+                        .withKnownContentLength(true).build());
+
+        RequestBody body = convert(factory, REPORT);
+
+        long expected = RestUtils.GSON.toJson(REPORT).getBytes("UTF-8").length;
+        assertEquals(expected, body.contentLength());
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        assertEquals(expected, buffer.size());
+    }
+
+    @Test
+    public void apiClientProviderAddsFactoryBeforeCodec() {
+        JsonCodec codec = GsonJsonCodec.getDefault();
+        ApiClientProvider provider = new ApiClientProvider.Builder().withBaseUrl("https://developer.sagebridge.org")
+                .withUserAgent("user-agent").withAcceptLanguage("en").withAppId("test-app").withJsonCodec(codec)
+                .withEncodingSettings(new EncodingSettings.Builder().withStreamingRequestBodies().build()).build();
+
+        Retrofit retrofit = provider.getRetrofit(provider.getRootHttpClient());
+        List<Converter.Factory> factories = retrofit.converterFactories();
+
+        int streamingIndex = -1;
+        for (int i = 0; i < factories.size(); i++) {
+            if (factories.get(i) instanceof StreamingConverterFactory) {
+                streamingIndex = i;
+            }
+        }
+        assertTrue(streamingIndex >= 0);
+        assertTrue(streamingIndex < factories.indexOf(codec.getConverterFactory()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RequestBody convert(StreamingConverterFactory factory, Object value) throws Exception {
+        Converter<Object, RequestBody> converter = (Converter<Object, RequestBody>) factory.requestBodyConverter(
+                value.getClass(), NO_ANNOTATIONS, NO_ANNOTATIONS, null);
+        return converter.convert(value);
+    }
+
+    private static String write(RequestBody body) throws Exception {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readUtf8();
+    }
+}
@@ -0,0 +1,156 @@
+package org.sagebionetworks.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+
+import com.google.common.io.Files;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.rest.UploadJournal.State;
+
+public class UploadJournalTest {
+
+    private File root;
+    private File journalDirectory;
+    private File file1;
+    private File file2;
+
+    @Before
+    public void before() throws Exception {
+        root = Files.createTempDir();
+        journalDirectory = new File(root, "journals");
+        // Two files with the same name in different directories
+        file1 = new File(new File(root, "a"), "archive.zip");
+        file2 = new File(new File(root, "b"), "archive.zip");
+        for (File file : new File[] { journalDirectory, file1.getParentFile(), file2.getParentFile() }) {
+            assertTrue(file.mkdir());
+        }
+        Files.write("one".getBytes(), file1);
+        Files.write("two".getBytes(), file2);
+    }
+
+    @After
+    public void after() {
+        delete(root);
+    }
+
+    @Test
+    public void filesWithSameNameHaveSeparateJournals() throws Exception {
+        assertNotEquals(UploadJournal.journalFileFor(journalDirectory, file1),
+                UploadJournal.journalFileFor(journalDirectory, file2));
+
+        UploadJournal.open(journalDirectory, file1).put("uploadSession", "session1").save(State.REQUESTED);
+        UploadJournal.open(journalDirectory, file2).put("uploadSession", "session2").save(State.UPLOADED);
+
+        UploadJournal journal1 = UploadJournal.open(journalDirectory, file1);
+        assertEquals(State.REQUESTED, journal1.getState());
+        assertEquals("session1", journal1.get("uploadSession"));
+        UploadJournal journal2 = UploadJournal.open(journalDirectory, file2);
+        assertEquals(State.UPLOADED, journal2.getState());
+        assertEquals("session2", journal2.get("uploadSession"));
+    }
+
+    @Test
+    public void dropsExpiredValues() throws Exception {
+        UploadJournal.open(journalDirectory, file1).put("contentMd5", "md5")
+                .put("uploadUrl", "https://s3/expired", DateTime.now().minusMinutes(1))
+                .put("otherUrl", "https://s3/current", DateTime.now().plusHours(1)).save(State.REQUESTED);
+
+        UploadJournal journal = UploadJournal.open(journalDirectory, file1);
+
+        assertEquals("md5", journal.get("contentMd5"));
+        assertNull(journal.get("uploadUrl"));
+        assertEquals("https://s3/current", journal.get("otherUrl"));
+        // Also removed from the file on disk, not just from memory
+        String contents = Files.toString(journal.getJournalFile(), StandardCharsets.UTF_8);
+        assertFalse(contents.contains("expired"));
+    }
+
+    @Test
+    public void journalIsOnlyAccessibleByOwner() throws Exception {
+        // A leftover temporary file from an interrupted write is replaced
+        File tempFile = new File(UploadJournal.journalFileFor(journalDirectory, file1).getPath() + ".tmp");
+        Files.write("stale".getBytes(), tempFile);
+
+        UploadJournal journal = UploadJournal.open(journalDirectory, file1)
+                .put("uploadUrl", "https://s3/current", DateTime.now().plusHours(1));
+        journal.save(State.REQUESTED);
+
+        Path path = journal.getJournalFile().toPath();
+        if (java.nio.file.Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+                    java.nio.file.Files.getPosixFilePermissions(path));
+        }
+        assertFalse(tempFile.exists());
+        assertEquals("https://s3/current", UploadJournal.open(journalDirectory, file1).get("uploadUrl"));
+    }
+
+    @Test
+    public void restrictToOwnerContinuesWhenOtherAccessCannotBeRemoved() throws Exception {
+        // As on Windows, where there is no read permission to remove
+        File file = mock(File.class);
+        doReturn(false).when(file).setReadable(false, false);
+        doReturn(false).when(file).setWritable(false, false);
+        doReturn(true).when(file).setReadable(true, true);
+        doReturn(true).when(file).setWritable(true, true);
+
+        UploadJournal.restrictToOwner(file);
+
+        verify(file).setReadable(true, true);
+        verify(file).setWritable(true, true);
+    }
+
+    @Test(expected = IOException.class)
+    public void restrictToOwnerFailsWhenOwnerCannotWrite() throws Exception {
+        File file = mock(File.class);
+        doReturn(true).when(file).setReadable(anyBoolean(), anyBoolean());
+        doReturn(true).when(file).setWritable(false, false);
+        doReturn(false).when(file).setWritable(true, true);
+
+        UploadJournal.restrictToOwner(file);
+    }
+
+    @Test
+    public void cleanUpRemovesExpiredValuesAndOrphanedJournals() throws Exception {
+        UploadJournal.open(journalDirectory, file1)
+                .put("uploadUrl", "https://s3/expired", DateTime.now().minusMinutes(1)).save(State.REQUESTED);
+        UploadJournal orphan = UploadJournal.open(journalDirectory, file2);
+        orphan.save(State.REQUESTED);
+        assertTrue(file2.delete());
+
+        assertEquals(1, UploadJournal.cleanUp(journalDirectory).size());
+
+        assertFalse(orphan.getJournalFile().exists());
+        String contents = Files.toString(UploadJournal.journalFileFor(journalDirectory, file1),
+                StandardCharsets.UTF_8);
+        assertFalse(contents.contains("expired"));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
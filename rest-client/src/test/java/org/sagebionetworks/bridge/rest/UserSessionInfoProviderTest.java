@@ -1,16 +1,28 @@
 package org.sagebionetworks.bridge.rest;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -22,8 +34,10 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.sagebionetworks.bridge.rest.api.AuthenticationApi;
 import org.sagebionetworks.bridge.rest.exceptions.AuthenticationFailedException;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.rest.exceptions.ConsentRequiredException;
 import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.ConsentStatus;
 import org.sagebionetworks.bridge.rest.model.SignIn;
 import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
 
@@ -49,6 +63,12 @@ public class UserSessionInfoProviderTest {
     @Mock
     UserSessionInfoProvider.UserSessionInfoChangeListener changeListener;
 
+    @Mock
+    ScheduledExecutorService executor;
+
+    @Mock
+    ScheduledFuture<?> future;
+
     @Captor
     ArgumentCaptor<SignIn> reauthenticateRequestCaptor;
 
@@ -61,6 +81,8 @@ public class UserSessionInfoProviderTest {
 
     UserSessionInfoProvider provider;
 
+    AtomicLong nanos;
+
     @Before
     public void before() throws Exception {
         userSessionInfo = new UserSessionInfo();
@@ -72,6 +94,14 @@ public class UserSessionInfoProviderTest {
         provider = new UserSessionInfoProvider(authenticationApi, signIn.getAppId(), signIn.getEmail(),
                 signIn.getPhone(), signIn.getExternalId(), signIn.getPassword(), null,
                 Arrays.asList(changeListener));
+
+        nanos = new AtomicLong();
+        provider.setTicker(new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
     }
 
     @Test
@@ -275,8 +305,158 @@ public class UserSessionInfoProviderTest {
         assertEquals(newReauthToken, evenNewerSession.getReauthToken()); // check we wrote a new reauth token
     }
 
+    @Test
+    public void mergeReauthTokenKeepsRestOfNewSession() throws Exception {
+        UserSessionInfo previousSession = new UserSessionInfo();
+        Tests.setVariableValueInObject(previousSession, "reauthToken", "reauthToken");
+        ConsentStatus consentStatus = new ConsentStatus();
+        Tests.setVariableValueInObject(consentStatus, "consented", true);
+        UserSessionInfo session = new UserSessionInfo();
+        Tests.setVariableValueInObject(session, "firstName", "First");
+        Tests.setVariableValueInObject(session, "dataGroups", ImmutableList.of("group1"));
+        Tests.setVariableValueInObject(session, "sessionToken", "sessionToken");
+        Tests.setVariableValueInObject(session, "consentStatuses", ImmutableMap.of("subpop", consentStatus));
+        UserSessionInfo expected = RestUtils.GSON.fromJson(RestUtils.GSON.toJson(session), UserSessionInfo.class);
+        Tests.setVariableValueInObject(expected, "reauthToken", "reauthToken");
+
+        UserSessionInfo merged = UserSessionInfoProvider.mergeReauthToken(previousSession, session);
+
+        assertNotSame(session, merged);
+        assertEquals(expected, merged);
+        assertNull(session.getReauthToken());
+    }
+
     @Test
     public void mergeWithNullSession() {
         assertNull(UserSessionInfoProvider.mergeReauthToken(new UserSessionInfo(), null));
     }
+
+    @Test
+    public void refreshSessionIfStaleDoesNothingWhenSessionIsFresh() throws Exception {
+        Tests.setVariableValueInObject(userSessionInfo, "reauthToken", "reauthToken");
+        provider.startSessionRefresh(executor, 10, 0, TimeUnit.MINUTES);
+        provider.setSession(userSessionInfo);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(9));
+        provider.refreshSessionIfStale();
+
+        verify(authenticationApi, never()).reauthenticate(any(SignIn.class));
+    }
+
+    @Test
+    public void refreshSessionIfStaleReauthenticatesOldSession() throws Exception {
+        doReturn(call).when(authenticationApi).reauthenticate(any(SignIn.class));
+        doReturn(response).when(call).execute();
+        doReturn(userSessionInfo).when(response).body();
+
+        Tests.setVariableValueInObject(userSessionInfo, "reauthToken", "reauthToken");
+        provider.startSessionRefresh(executor, 10, 30, TimeUnit.MINUTES);
+        provider.setSession(userSessionInfo);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        provider.retrieveSession();
+        provider.refreshSessionIfStale();
+
+        verify(authenticationApi).reauthenticate(reauthenticateRequestCaptor.capture());
+        assertEquals("reauthToken", reauthenticateRequestCaptor.getValue().getReauthToken());
+
+        // The refreshed session is fresh again.
+        provider.refreshSessionIfStale();
+        verify(authenticationApi, times(1)).reauthenticate(any(SignIn.class));
+    }
+
+    @Test
+    public void failedRefreshKeepsSessionAndBacksOff() throws Exception {
+        // Without a password, falling back to sign in would clear the session
+        provider = new UserSessionInfoProvider(authenticationApi, "test-app", "email@email.com", null, null, null,
+                null, Arrays.asList(changeListener));
+        provider.setTicker(new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+        doReturn(call).when(authenticationApi).reauthenticate(any(SignIn.class));
+        doThrow(new BridgeServiceException("Service unavailable", "/v3/auth/reauth")).when(call).execute();
+
+        Tests.setVariableValueInObject(userSessionInfo, "reauthToken", "reauthToken");
+        provider.startSessionRefresh(executor, 10, 0, TimeUnit.MINUTES);
+        provider.setSession(userSessionInfo);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        refreshAndExpectFailure();
+        assertSame(userSessionInfo, provider.getSession());
+        verify(authenticationApi, never()).signInV4(any(SignIn.class));
+
+        // Not retried until the backoff of one minute has passed
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        provider.refreshSessionIfStale();
+        verify(authenticationApi, times(1)).reauthenticate(any(SignIn.class));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        refreshAndExpectFailure();
+        verify(authenticationApi, times(2)).reauthenticate(any(SignIn.class));
+
+        // The backoff doubles
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(90));
+        provider.refreshSessionIfStale();
+        verify(authenticationApi, times(2)).reauthenticate(any(SignIn.class));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        refreshAndExpectFailure();
+        verify(authenticationApi, times(3)).reauthenticate(any(SignIn.class));
+        assertSame(userSessionInfo, provider.getSession());
+    }
+
+    private void refreshAndExpectFailure() throws Exception {
+        try {
+            provider.refreshSessionIfStale();
+            fail("Should have thrown exception");
+        } catch (BridgeServiceException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void refreshBackoffIsCappedAtRefreshAge() {
+        long refreshAfterNanos = TimeUnit.MINUTES.toNanos(10);
+        assertEquals(TimeUnit.MINUTES.toNanos(1), UserSessionInfoProvider.refreshBackoffNanos(refreshAfterNanos, 1));
+        assertEquals(TimeUnit.MINUTES.toNanos(4), UserSessionInfoProvider.refreshBackoffNanos(refreshAfterNanos, 3));
+        assertEquals(refreshAfterNanos, UserSessionInfoProvider.refreshBackoffNanos(refreshAfterNanos, 5));
+        assertEquals(refreshAfterNanos, UserSessionInfoProvider.refreshBackoffNanos(refreshAfterNanos, 1000));
+    }
+
+    @Test
+    public void refreshSessionIfStaleSkipsIdleSession() throws Exception {
+        Tests.setVariableValueInObject(userSessionInfo, "reauthToken", "reauthToken");
+        provider.startSessionRefresh(executor, 10, 30, TimeUnit.MINUTES);
+        provider.setSession(userSessionInfo);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(31));
+        provider.refreshSessionIfStale();
+
+        verify(authenticationApi, never()).reauthenticate(any(SignIn.class));
+    }
+
+    @Test
+    public void refreshSessionIfStaleSkipsSessionWithoutReauthToken() throws Exception {
+        provider.startSessionRefresh(executor, 10, 0, TimeUnit.MINUTES);
+        provider.setSession(userSessionInfo);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        provider.refreshSessionIfStale();
+
+        verify(authenticationApi, never()).reauthenticate(any(SignIn.class));
+    }
+
+    @Test
+    public void startAndStopSessionRefresh() {
+        doReturn(future).when(executor).scheduleWithFixedDelay(any(Runnable.class), eq(60000L), eq(60000L),
+                eq(TimeUnit.MILLISECONDS));
+
+        provider.startSessionRefresh(executor, 10, 0, TimeUnit.MINUTES);
+        provider.stopSessionRefresh();
+
+        verify(future).cancel(false);
+    }
 }
@@ -0,0 +1,94 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.rest.RestUtils;
+
+public class ByteArrayToBase64TypeAdapterTest {
+
+    @Test
+    public void matchesStandardBase64() {
+        Random random = new Random(14);
+        for (int length = 0; length < 100; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            String base64 = BaseEncoding.base64().encode(bytes);
+
+            assertEquals(base64, ByteArrayToBase64TypeAdapter.encode(bytes));
+            assertArrayEquals(bytes, ByteArrayToBase64TypeAdapter.decode(base64));
+            // Padding is optional when reading
+            assertArrayEquals(bytes, ByteArrayToBase64TypeAdapter.decode(base64.replace("=", "")));
+        }
+    }
+
+    @Test
+    public void roundTripsLargeArrayWithGson() {
+        byte[] bytes = new byte[1024 * 1024 + 1];
+        new Random(14).nextBytes(bytes);
+
+        String json = RestUtils.GSON.toJson(new byte[][] { bytes, null });
+        byte[][] result = RestUtils.GSON.fromJson(json, byte[][].class);
+
+        // The same string value Gson writes for the base64 text (with its HTML-safe escaping of '=')
+        assertEquals("[" + RestUtils.GSON.toJson(BaseEncoding.base64().encode(bytes)) + ",null]", json);
+        assertArrayEquals(bytes, result[0]);
+        assertNull(result[1]);
+    }
+
+    @Test
+    public void writesToJsonTree() {
+        byte[] bytes = new byte[] { 1, 2, 3, 4 };
+        String base64 = BaseEncoding.base64().encode(bytes);
+
+        JsonElement element = RestUtils.toJSON(bytes);
+        assertEquals(new JsonPrimitive(base64), element);
+        assertEquals(new JsonPrimitive(base64), RestUtils.GSON.toJsonTree(bytes));
+
+        // Nested in a map, and read back through a tree
+        JsonObject object = RestUtils.toJSON(ImmutableMap.of("data", bytes)).getAsJsonObject();
+        assertEquals(base64, object.get("data").getAsString());
+        assertArrayEquals(bytes, RestUtils.GSON.fromJson(object.get("data"), byte[].class));
+    }
+
+    @Test
+    public void writesToJsonString() {
+        byte[] bytes = new byte[] { 1, 2, 3 };
+
+        assertEquals("\"AQID\"", RestUtils.GSON.toJson(bytes));
+        assertEquals("{\"data\":\"AQID\"}", RestUtils.GSON.toJson(ImmutableMap.of("data", bytes)));
+        assertArrayEquals(bytes, RestUtils.GSON.fromJson("\"AQID\"", byte[].class));
+    }
+
+    @Test
+    public void handlesNull() {
+        assertEquals("null", RestUtils.GSON.toJson(null, byte[].class));
+        assertNull(RestUtils.GSON.fromJson("null", byte[].class));
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void rejectsInvalidCharacters() {
+        ByteArrayToBase64TypeAdapter.decode("ab$d");
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void rejectsInvalidLength() {
+        ByteArrayToBase64TypeAdapter.decode("abcde");
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void rejectsMisplacedPadding() {
+        ByteArrayToBase64TypeAdapter.decode("ab=");
+    }
+}
@@ -0,0 +1,123 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.sagebionetworks.bridge.rest.Tests.setVariableValueInObject;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.rest.RestUtils;
+import org.sagebionetworks.bridge.rest.model.AccountStatus;
+import org.sagebionetworks.bridge.rest.model.DemographicValuesEnumValidationRules;
+import org.sagebionetworks.bridge.rest.model.EnrollmentInfo;
+import org.sagebionetworks.bridge.rest.model.Phone;
+import org.sagebionetworks.bridge.rest.model.Role;
+import org.sagebionetworks.bridge.rest.model.SharingScope;
+import org.sagebionetworks.bridge.rest.model.StudyParticipant;
+import org.sagebionetworks.bridge.rest.model.SurveyQuestion;
+
+public class GeneratedTypeAdapterFactoryTest {
+
+    private static final GeneratedTypeAdapterFactory FACTORY = new GeneratedTypeAdapterFactory(
+            StudyParticipant.class.getPackage().getName());
+
+    private static final Gson REFLECTIVE_GSON = new GsonBuilder()
+            .registerTypeAdapter(byte[].class, new ByteArrayToBase64TypeAdapter())
+            .registerTypeAdapter(LocalDate.class, new LocalDateTypeAdapter())
+            .registerTypeAdapter(DateTime.class, new DateTimeTypeAdapter())
+            .create();
+
+    @Test
+    public void createsGeneratedAdapterForModels() {
+        assertTrue(FACTORY.create(REFLECTIVE_GSON, TypeToken.get(StudyParticipant.class))
+                instanceof StudyParticipant.GsonAdapter);
+        // Subclasses have their own adapters
+        assertTrue(FACTORY.create(REFLECTIVE_GSON, TypeToken.get(SurveyQuestion.class))
+                instanceof SurveyQuestion.GsonAdapter);
+    }
+
+    @Test
+    public void leavesOtherTypesToGson() {
+        assertNull(FACTORY.create(REFLECTIVE_GSON, TypeToken.get(SharingScope.class)));
+        assertNull(FACTORY.create(REFLECTIVE_GSON, TypeToken.get(DemographicValuesEnumValidationRules.class)));
+        assertNull(FACTORY.create(REFLECTIVE_GSON, TypeToken.get(String.class)));
+    }
+
+    @Test
+    public void matchesReflectiveSerialization() {
+        StudyParticipant participant = makeParticipant();
+
+        String json = RestUtils.GSON.toJson(participant);
+
+        assertEquals(REFLECTIVE_GSON.toJson(participant), json);
+        assertEquals(participant, RestUtils.GSON.fromJson(json, StudyParticipant.class));
+        assertEquals(REFLECTIVE_GSON.fromJson(json, StudyParticipant.class),
+                RestUtils.GSON.fromJson(json, StudyParticipant.class));
+    }
+
+    @Test
+    public void skipsUnknownFieldsAndReadsNulls() {
+        String json = "{\"firstName\":\"First\",\"unknown\":{\"a\":[1,2]},\"notifyByEmail\":null,\"roles\":null}";
+
+        StudyParticipant participant = RestUtils.GSON.fromJson(json, StudyParticipant.class);
+
+        assertEquals("First", participant.getFirstName());
+        assertNull(participant.isNotifyByEmail());
+        assertNull(participant.getRoles());
+        assertEquals(REFLECTIVE_GSON.fromJson(json, StudyParticipant.class), participant);
+    }
+
+    @Test
+    public void readsNullModel() {
+        assertNull(RestUtils.GSON.fromJson("null", StudyParticipant.class));
+        assertEquals("null", RestUtils.GSON.toJson(null, StudyParticipant.class));
+    }
+
+    @Test
+    public void readsFieldsIntoInstance() throws IOException {
+        @SuppressWarnings("unchecked")
+        ObjectReader<SurveyQuestion> reader = (ObjectReader<SurveyQuestion>) FACTORY.create(REFLECTIVE_GSON,
+                TypeToken.get(SurveyQuestion.class));
+        SurveyQuestion question = reader.newInstance();
+
+        // Fields of the subtype and of its superclass are both read
+        assertTrue(reader.read(question, "prompt", new JsonReader(new StringReader("\"Prompt\""))));
+        assertTrue(reader.read(question, "identifier", new JsonReader(new StringReader("\"id\""))));
+        assertFalse(reader.read(question, "unknown", new JsonReader(new StringReader("1"))));
+        assertTrue(reader.setString(question, "type", "SurveyQuestion"));
+        assertFalse(reader.setString(question, "uiHint", "textfield"));
+
+        assertEquals("Prompt", question.getPrompt());
+        assertEquals("id", question.getIdentifier());
+        assertEquals("SurveyQuestion", question.getType());
+        assertNull(question.getUiHint());
+    }
+
+    private static StudyParticipant makeParticipant() {
+        StudyParticipant participant = new StudyParticipant().firstName("First").lastName("Last")
+                .email("email@example.com").phone(new Phone().number("4082588569").regionCode("US"))
+                .sharingScope(SharingScope.SPONSORS_AND_PARTNERS).status(AccountStatus.ENABLED)
+                .roles(ImmutableList.of(Role.DEVELOPER, Role.RESEARCHER))
+                .dataGroups(ImmutableList.of("group1", "group2"))
+                .attributes(ImmutableMap.of("key", "value"))
+                .clientData(ImmutableMap.of("answer", 42.0, "list", ImmutableList.of("a", "b")));
+        EnrollmentInfo enrollment = new EnrollmentInfo();
+        setVariableValueInObject(enrollment, "externalId", "ext1");
+        setVariableValueInObject(participant, "enrollments", ImmutableMap.of("study1", enrollment));
+        setVariableValueInObject(participant, "createdOn", DateTime.parse("2020-05-06T07:08:09.123Z"));
+        return participant;
+    }
+}
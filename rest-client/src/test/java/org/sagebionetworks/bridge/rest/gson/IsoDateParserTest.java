@@ -0,0 +1,87 @@
+package org.sagebionetworks.bridge.rest.gson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.rest.RestUtils;
+
+public class IsoDateParserTest {
+
+    private static final DateTimeFormatter JODA = ISODateTimeFormat.dateTime().withOffsetParsed();
+
+    @Test
+    public void matchesJodaForBridgeTimestamps() {
+        Random random = new Random(13);
+        for (int i = 0; i < 2000; i++) {
+            // Offsets in quarter hours, from -12:00 to +14:00
+            DateTimeZone zone = DateTimeZone.forOffsetMillis((random.nextInt(105) - 48) * 15 * 60 * 1000);
+            DateTime dateTime = new DateTime(random.nextLong() % (300L * 365 * 24 * 60 * 60 * 1000), zone);
+            String value = JODA.print(dateTime);
+
+            DateTime parsed = IsoDateParser.parseDateTime(value);
+
+            assertEquals(value, JODA.parseDateTime(value), parsed);
+            assertEquals(value, parsed.toString());
+        }
+    }
+
+    @Test
+    public void parsesUtc() {
+        DateTime parsed = IsoDateParser.parseDateTime("2016-02-29T23:59:59.999Z");
+
+        assertEquals(JODA.parseDateTime("2016-02-29T23:59:59.999Z"), parsed);
+        assertSame(DateTimeZone.UTC, parsed.getZone());
+        assertSame(DateTimeZone.UTC, IsoDateParser.parseDateTime("2016-02-29T23:59:59.999+00:00").getZone());
+        assertEquals(JODA.parseDateTime("2016-02-29T23:59:59.999-00:00"),
+                IsoDateParser.parseDateTime("2016-02-29T23:59:59.999-00:00"));
+    }
+
+    @Test
+    public void reusesZonesForOffsets() {
+        DateTime first = IsoDateParser.parseDateTime("2015-10-03T22:23:46.123+05:30");
+        DateTime second = IsoDateParser.parseDateTime("2019-01-01T00:00:00.000+05:30");
+
+        assertSame(first.getZone(), second.getZone());
+        assertEquals(DateTimeZone.forOffsetHoursMinutes(5, 30), first.getZone());
+    }
+
+    @Test
+    public void leavesOtherShapesToJoda() {
+        assertNull(IsoDateParser.parseDateTime("2015-10-03T22:23:46+04:00"));
+        assertNull(IsoDateParser.parseDateTime("2015-10-03T22:23:46.123456Z"));
+        assertNull(IsoDateParser.parseDateTime("2015-10-03T22:23:46.123+0400"));
+        assertNull(IsoDateParser.parseDateTime("2015-10-03 22:23:46.123Z"));
+        assertNull(IsoDateParser.parseDateTime("2015-10-03T22:23:46.12xZ"));
+        assertNull(IsoDateParser.parseDateTime("2015-02-29T22:23:46.123Z"));
+        assertNull(IsoDateParser.parseDateTime("2015-10-03T24:00:00.000Z"));
+        assertNull(IsoDateParser.parseDateTime("2015-10-03T22:23:46.123+19:00"));
+        assertNull(IsoDateParser.parseLocalDate("2015-10-3"));
+        assertNull(IsoDateParser.parseLocalDate("2015-13-03"));
+        assertNull(IsoDateParser.parseLocalDate("2015-10"));
+
+        // The adapters still accept these through Joda
+        assertEquals(DateTime.parse("2015-10-03T22:23:46.123456Z"),
+                RestUtils.GSON.fromJson("\"2015-10-03T22:23:46.123456Z\"", DateTime.class));
+        assertEquals(new LocalDate(2015, 10, 1), RestUtils.GSON.fromJson("\"2015-10\"", LocalDate.class));
+    }
+
+    @Test
+    public void matchesJodaForLocalDates() {
+        LocalDate date = new LocalDate(1999, 1, 1);
+        for (int i = 0; i < 3000; i++) {
+            String value = date.toString();
+            assertEquals(value, LocalDate.parse(value), IsoDateParser.parseLocalDate(value));
+            date = date.plusDays(1);
+        }
+    }
+}
@@ -1,22 +1,43 @@
 package org.sagebionetworks.bridge.rest.gson;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import org.sagebionetworks.bridge.rest.RestUtils;
+import org.sagebionetworks.bridge.rest.Tests;
+import org.sagebionetworks.bridge.rest.model.Criteria;
+import org.sagebionetworks.bridge.rest.model.CriteriaScheduleStrategy;
+import org.sagebionetworks.bridge.rest.model.ScheduleStrategy;
+import org.sagebionetworks.bridge.rest.model.StringConstraints;
+import org.sagebionetworks.bridge.rest.model.Survey;
 import org.sagebionetworks.bridge.rest.model.SurveyElement;
 import org.sagebionetworks.bridge.rest.model.SurveyInfoScreen;
 import org.sagebionetworks.bridge.rest.model.SurveyQuestion;
+import org.sagebionetworks.bridge.rest.model.UIHint;
 
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.bind.JsonTreeWriter;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
 @RunWith(PowerMockRunner.class)
@@ -55,4 +76,214 @@ public class RuntimeTypeAdapterFactoryTest {
         typeAdapter.write(writer, question);
         assertTrue(outputWriter.toString().contains("\"type\":\"SurveyQuestion\""));
     }
+    
+    @Test
+    public void readsSubtypeWhenTypeIsFirst() {
+        String json = "{\"type\":\"SurveyQuestion\",\"guid\":\"GUID\",\"title\":\"Title\","
+                + "\"unknownField\":{\"a\":[1,2,3]},"
+                + "\"constraints\":{\"type\":\"StringConstraints\",\"maxLength\":10,\"required\":true}}";
+        
+        SurveyElement element = RestUtils.GSON.fromJson(json, SurveyElement.class);
+        
+        assertTrue(element instanceof SurveyQuestion);
+        SurveyQuestion question = (SurveyQuestion) element;
+        assertEquals("GUID", question.getGuid());
+        assertEquals("Title", question.getTitle());
+        assertEquals("SurveyQuestion", question.getType());
+        assertEquals(Integer.valueOf(10), ((StringConstraints) question.getConstraints()).getMaxLength());
+        assertEquals(Boolean.TRUE, question.getConstraints().isRequired());
+        assertEquals("StringConstraints", question.getConstraints().getType());
+    }
+    
+    @Test
+    public void readsSubtypeWhenTypeIsNotFirst() {
+        String json = "{\"guid\":\"GUID\",\"title\":\"Title\",\"type\":\"SurveyQuestion\",\"prompt\":\"Prompt\"}";
+        
+        SurveyQuestion question = (SurveyQuestion) RestUtils.GSON.fromJson(json, SurveyElement.class);
+        
+        assertEquals("GUID", question.getGuid());
+        assertEquals("Title", question.getTitle());
+        assertEquals("Prompt", question.getPrompt());
+    }
+    
+    @Test
+    public void readsNestedMaps() {
+        String json = "{\"type\":\"CriteriaScheduleStrategy\",\"scheduleCriteria\":[{\"criteria\":"
+                + "{\"minAppVersions\":{\"Android\":10,\"iPhone OS\":4},\"allOfGroups\":[\"a\"]}}]}";
+        
+        ScheduleStrategy strategy = RestUtils.GSON.fromJson(json, ScheduleStrategy.class);
+        
+        Criteria criteria = ((CriteriaScheduleStrategy) strategy).getScheduleCriteria().get(0).getCriteria();
+        assertEquals(Integer.valueOf(10), criteria.getMinAppVersions().get("Android"));
+        assertEquals(Integer.valueOf(4), criteria.getMinAppVersions().get("iPhone OS"));
+    }
+    
+    @Test
+    public void matchesTreeBasedDecodingForLargeSurvey() {
+        Survey survey = makeSurvey(500);
+        String json = RestUtils.GSON.toJson(survey);
+        
+        Survey streamed = RestUtils.GSON.fromJson(json, Survey.class);
+        
+        assertEquals(survey, streamed);
+        assertEquals(json, RestUtils.GSON.toJson(streamed));
+        // Each element decodes the same as decoding its concrete type directly
+        JsonArray elements = new JsonParser().parse(json).getAsJsonObject().getAsJsonArray("elements");
+        for (int i = 0; i < elements.size(); i++) {
+            Class<? extends SurveyElement> type = (i % 10 == 0) ? SurveyInfoScreen.class : SurveyQuestion.class;
+            assertEquals(RestUtils.GSON.fromJson(elements.get(i), type), streamed.getElements().get(i));
+        }
+    }
+    
+    @Test
+    public void writesLabelInPlaceOfTypeField() {
+        SurveyQuestion question = new SurveyQuestion();
+        question.setGuid("GUID");
+        Tests.setVariableValueInObject(question, "type", "Wrong");
+        
+        JsonObject json = RestUtils.GSON.toJsonTree(question, SurveyElement.class).getAsJsonObject();
+        
+        assertEquals("SurveyQuestion", json.get("type").getAsString());
+        assertEquals("GUID", json.get("guid").getAsString());
+        
+        // ... and adds it if it's missing.
+        Tests.setVariableValueInObject(question, "type", null);
+        json = RestUtils.GSON.toJsonTree(question, SurveyElement.class).getAsJsonObject();
+        assertEquals("SurveyQuestion", json.get("type").getAsString());
+    }
+    
+    @Test
+    public void readsSubtypeFieldsThroughGeneratedAdapter() {
+        final List<String> namesRead = new ArrayList<>();
+        TypeAdapterFactory recordingFactory = new TypeAdapterFactory() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+                if (type.getRawType() != SurveyQuestion.class) {
+                    return null;
+                }
+                return (TypeAdapter<T>) new RecordingAdapter(new SurveyQuestion.GsonAdapter(gson), namesRead);
+            }
+        };
+        Gson gson = new GsonBuilder().registerTypeAdapterFactory(recordingFactory)
+                .registerTypeAdapterFactory(FACTORY).create();
+        String json = "{\"guid\":\"GUID\",\"type\":\"SurveyQuestion\",\"title\":\"Title\"}";
+
+        SurveyQuestion question = (SurveyQuestion) gson.fromJson(json, SurveyElement.class);
+
+        assertEquals(ImmutableList.of("type", "guid", "title"), namesRead);
+        assertEquals("GUID", question.getGuid());
+        assertEquals("Title", question.getTitle());
+        assertEquals("SurveyQuestion", question.getType());
+    }
+
+    @Test
+    public void readsSubtypeWithReflectiveAdapters() {
+        Gson gson = new GsonBuilder().registerTypeAdapterFactory(FACTORY).create();
+        String json = "{\"guid\":\"GUID\",\"type\":\"SurveyQuestion\",\"title\":\"Title\"}";
+
+        SurveyQuestion question = (SurveyQuestion) gson.fromJson(json, SurveyElement.class);
+
+        assertEquals("GUID", question.getGuid());
+        assertEquals("Title", question.getTitle());
+        assertEquals("SurveyQuestion", question.getType());
+    }
+
+    @Test
+    public void writesSurveyToJsonTree() {
+        Survey survey = makeSurvey(20);
+
+        assertEquals(new JsonParser().parse(RestUtils.GSON.toJson(survey)), RestUtils.toJSON(survey));
+        assertEquals(survey, RestUtils.toType(RestUtils.toJSON(survey), Survey.class));
+    }
+
+    @Test
+    public void writesRawJsonToJsonTree() throws IOException {
+        JsonTreeWriter tree = new JsonTreeWriter();
+        JsonWriter writer = new LabelWritingJsonWriter(tree, "type", "SurveyQuestion");
+
+        writer.beginObject().name("type").jsonValue("{\"a\":1}").name("constraints").jsonValue("{\"b\":[1,2.5]}")
+                .name("guid").jsonValue(null).endObject();
+
+        JsonObject json = tree.get().getAsJsonObject();
+        assertEquals("SurveyQuestion", json.get("type").getAsString());
+        assertEquals(new JsonParser().parse("{\"b\":[1,2.5]}"), json.get("constraints"));
+        assertTrue(json.has("guid"));
+        assertEquals(3, json.size());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void missingTypeThrows() {
+        RestUtils.GSON.fromJson("{\"guid\":\"GUID\"}", SurveyElement.class);
+    }
+    
+    @Test(expected = JsonParseException.class)
+    public void unknownTypeThrows() {
+        RestUtils.GSON.fromJson("{\"type\":\"Unknown\",\"guid\":\"GUID\"}", SurveyElement.class);
+    }
+    
+    static Survey makeSurvey(int elementCount) {
+        Survey survey = new Survey().guid("survey-guid").name("Survey").identifier("survey");
+        for (int i = 0; i < elementCount; i++) {
+            if (i % 10 == 0) {
+                SurveyInfoScreen screen = new SurveyInfoScreen();
+                screen.setGuid("guid" + i);
+                screen.setIdentifier("screen" + i);
+                screen.setTitle("Screen " + i);
+                screen.setPrompt("Prompt " + i);
+                survey.addElementsItem(screen);
+            } else {
+                SurveyQuestion question = new SurveyQuestion();
+                question.setGuid("guid" + i);
+                question.setIdentifier("question" + i);
+                question.setTitle("Question " + i);
+                question.setPrompt("What is the answer to question " + i + "?");
+                question.setUiHint(UIHint.TEXTFIELD);
+                StringConstraints constraints = new StringConstraints();
+                constraints.setMaxLength(i);
+                constraints.setRequired(i % 2 == 0);
+                question.setConstraints(constraints);
+                survey.addElementsItem(question);
+            }
+        }
+        return survey;
+    }
+
+    private static class RecordingAdapter extends TypeAdapter<SurveyQuestion>
+            implements ObjectReader<SurveyQuestion> {
+        private final SurveyQuestion.GsonAdapter delegate;
+        private final List<String> namesRead;
+
+        RecordingAdapter(SurveyQuestion.GsonAdapter delegate, List<String> namesRead) {
+            this.delegate = delegate;
+            this.namesRead = namesRead;
+        }
+
+        @Override
+        public void write(JsonWriter out, SurveyQuestion value) throws IOException {
+            delegate.write(out, value);
+        }
+
+        @Override
+        public SurveyQuestion read(JsonReader in) throws IOException {
+            return delegate.read(in);
+        }
+
+        @Override
+        public SurveyQuestion newInstance() {
+            return delegate.newInstance();
+        }
+
+        @Override
+        public boolean read(SurveyQuestion instance, String name, JsonReader in) throws IOException {
+            namesRead.add(name);
+            return delegate.read(instance, name, in);
+        }
+
+        @Override
+        public boolean setString(SurveyQuestion instance, String name, String value) {
+            namesRead.add(name);
+            return delegate.setString(instance, name, value);
+        }
+    }
 }